@@ -9,28 +9,59 @@
 package it.unibo.alchemist.core.implementations;
 
 import gnu.trove.impl.Constants;
+import gnu.trove.list.TDoubleList;
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TLongArrayList;
 import gnu.trove.map.TObjectIntMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.stack.TIntStack;
+import gnu.trove.stack.array.TIntArrayStack;
 import it.unibo.alchemist.core.interfaces.Scheduler;
 import it.unibo.alchemist.model.interfaces.Reaction;
-import it.unibo.alchemist.model.interfaces.Time;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * This class implements the indexed priority queue through an Array.
+ * Reactions whose putative time is infinite are parked outside of the
+ * heap, and get back into it as soon as they are updated to a finite time.
+ * Simultaneous reactions are returned in FIFO order: ties are broken by the order
+ * in which the reactions got their current putative time (when added, or when
+ * updated to a different time), regardless of the shape of the heap.
+ * This order is part of the reproducibility of simulations, and it differs from the
+ * one of the previous versions, which kept infinite reactions in the heap and broke ties
+ * depending on its shape: simulations where reactions happen at the very same time
+ * (e.g., driven by {@link it.unibo.alchemist.model.interfaces.TimeDistribution}s with the
+ * same period and phase) remain reproducible for a given seed, but do not replicate
+ * the trajectories obtained with those versions.
  * 
  * @param <T> concentration type
  */
 public final class ArrayIndexedPriorityQueue<T> implements Scheduler<T> {
 
     private static final long serialVersionUID = 8064379974084348391L;
+    /**
+     * Groups of reactions smaller than this fraction of the heap are updated one by one,
+     * larger ones trigger a rebuild of the heap.
+     */
+    private static final int REBUILD_FRACTION = 8;
 
     private final TObjectIntMap<Reaction<T>> indexes =
             new TObjectIntHashMap<>(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, -1);
-    private final List<Time> times = new ArrayList<>();
+    private final TDoubleList times = new TDoubleArrayList();
+    /*
+     * Tie breakers, increasing with the order in which the reactions got their current time
+     */
+    private final TLongList sequence = new TLongArrayList();
     private final List<Reaction<T>> tree = new ArrayList<>();
+    private final Set<Reaction<T>> parked = new LinkedHashSet<>();
+    private long nextSequence;
 
     private static int getParent(final int i) {
         if (i == 0) {
@@ -41,8 +72,17 @@ public final class ArrayIndexedPriorityQueue<T> implements Scheduler<T> {
 
     @Override
     public void addReaction(final Reaction<T> r) {
+        if (isInfinite(r.getTauAsDouble())) {
+            parked.add(r);
+        } else {
+            addToHeap(r);
+        }
+    }
+
+    private void addToHeap(final Reaction<T> r) {
         tree.add(r);
-        times.add(r.getTau());
+        times.add(r.getTauAsDouble());
+        sequence.add(nextSequence++);
         final int index = tree.size() - 1;
         indexes.put(r, index);
         updateEffectively(r, index);
@@ -50,24 +90,20 @@ public final class ArrayIndexedPriorityQueue<T> implements Scheduler<T> {
 
     private void down(final Reaction<T> r, final int i) {
         int index = i;
-        final Time newTime = r.getTau();
+        final double newTime = times.get(i);
+        final long newSequence = sequence.get(i);
         while (true) {
             int minIndex = 2 * index + 1;
             if (minIndex > tree.size() - 1) {
                 return;
             }
-            Time minTime = times.get(minIndex);
             Reaction<T> min = tree.get(minIndex);
             final int right = minIndex + 1;
-            if (right < tree.size()) {
-                final Time rr = times.get(right);
-                if (rr.compareTo(minTime) < 0) {
-                    min = tree.get(right);
-                    minIndex = right;
-                    minTime = rr;
-                }
+            if (right < tree.size() && precedes(right, minIndex)) {
+                min = tree.get(right);
+                minIndex = right;
             }
-            if (newTime.compareTo(minTime) > 0) {
+            if (precedes(minIndex, newTime, newSequence)) {
                 swap(index, r, minIndex, min);
                 index = minIndex;
             } else {
@@ -81,25 +117,62 @@ public final class ArrayIndexedPriorityQueue<T> implements Scheduler<T> {
         Reaction<T> res = null;
         if (!tree.isEmpty()) {
             res = tree.get(0);
+        } else if (!parked.isEmpty()) {
+            res = parked.iterator().next();
         }
         return res;
     }
 
+    /**
+     * All the reactions sharing the time of the root are connected to the root
+     * through reactions with the very same time (heap property), hence only
+     * the subtree of simultaneous reactions gets visited.
+     */
+    @Override
+    public List<Reaction<T>> getNextBatch() {
+        if (tree.isEmpty()) {
+            return parked.isEmpty() ? Collections.emptyList() : new ArrayList<>(parked);
+        }
+        final double first = times.get(0);
+        final List<Reaction<T>> result = new ArrayList<>();
+        final TIntStack toVisit = new TIntArrayStack();
+        toVisit.push(0);
+        while (toVisit.size() > 0) {
+            final int index = toVisit.pop();
+            if (index < tree.size() && times.get(index) == first) {
+                result.add(tree.get(index));
+                toVisit.push(2 * index + 1);
+                toVisit.push(2 * index + 2);
+            }
+        }
+        result.sort(Comparator.comparingLong(reaction -> sequence.get(indexes.get(reaction))));
+        return result;
+    }
+
     @Override
     public void removeReaction(final Reaction<T> r) {
+        if (!parked.remove(r)) {
+            removeFromHeap(r);
+        }
+    }
+
+    private void removeFromHeap(final Reaction<T> r) {
         final int index = indexes.get(r);
         final int last = tree.size() - 1;
         if (index == last) {
             tree.remove(index);
             indexes.remove(r);
-            times.remove(index);
+            times.removeAt(index);
+            sequence.removeAt(index);
         } else {
             final Reaction<T> swapped = tree.get(last);
             indexes.put(swapped, index);
             tree.set(index, swapped);
-            times.set(index, swapped.getTau());
+            times.set(index, times.get(last));
+            sequence.set(index, sequence.get(last));
             tree.remove(last);
-            times.remove(last);
+            times.removeAt(last);
+            sequence.removeAt(last);
             indexes.remove(r);
             updateEffectively(swapped, index);
         }
@@ -110,9 +183,31 @@ public final class ArrayIndexedPriorityQueue<T> implements Scheduler<T> {
         indexes.put(r2, i1);
         tree.set(i1, r2);
         tree.set(i2, r1);
-        final Time t = times.get(i1);
+        final double t = times.get(i1);
         times.set(i1, times.get(i2));
         times.set(i2, t);
+        final long s = sequence.get(i1);
+        sequence.set(i1, sequence.get(i2));
+        sequence.set(i2, s);
+    }
+
+    /*
+     * Whether the reaction at the first index comes before the one at the second index
+     */
+    private boolean precedes(final int first, final int second) {
+        return precedes(first, times.get(second), sequence.get(second));
+    }
+
+    private boolean precedes(final int index, final double time, final long order) {
+        final double indexTime = times.get(index);
+        return indexTime < time || indexTime == time && sequence.get(index) < order;
+    }
+
+    /**
+     * @return the number of scheduled reactions, including those whose putative time is infinite
+     */
+    int size() {
+        return tree.size() + parked.size();
     }
 
     @Override
@@ -138,12 +233,13 @@ public final class ArrayIndexedPriorityQueue<T> implements Scheduler<T> {
     private boolean up(final Reaction<T> r, final int i) {
         int index = i;
         int parentIndex = getParent(index);
-        final Time newTime = r.getTau();
+        final double newTime = times.get(i);
+        final long newSequence = sequence.get(i);
         if (parentIndex == -1) {
             return false;
         } else {
             Reaction<T> parent = tree.get(parentIndex);
-            if (newTime.compareTo(times.get(parentIndex)) >= 0) {
+            if (!precedes(i, parentIndex)) {
                 return false;
             } else {
                 do {
@@ -154,7 +250,7 @@ public final class ArrayIndexedPriorityQueue<T> implements Scheduler<T> {
                         return true;
                     }
                     parent = tree.get(parentIndex);
-                } while (newTime.compareTo(times.get(parentIndex)) < 0);
+                } while (!precedes(parentIndex, newTime, newSequence));
                 return true;
             }
         }
@@ -169,10 +265,62 @@ public final class ArrayIndexedPriorityQueue<T> implements Scheduler<T> {
     @Override
     public void updateReaction(final Reaction<T> r) {
         final int index = indexes.get(r);
+        final double tau = r.getTauAsDouble();
         if (index != indexes.getNoEntryValue()) {
-            times.set(index, r.getTau());
-            updateEffectively(r, index);
+            if (isInfinite(tau)) {
+                removeFromHeap(r);
+                parked.add(r);
+            } else if (tau != times.get(index)) {
+                times.set(index, tau);
+                sequence.set(index, nextSequence++);
+                updateEffectively(r, index);
+            }
+        } else if (!isInfinite(tau) && parked.remove(r)) {
+            addToHeap(r);
+        }
+    }
+
+    /**
+     * Large groups of reactions (e.g., all those executed in a synchronous round) get their
+     * times refreshed in place, and the heap is then rebuilt bottom-up in linear time,
+     * instead of sifting every reaction separately.
+     */
+    @Override
+    public void updateReactions(final List<Reaction<T>> reactions) {
+        if (reactions.size() * REBUILD_FRACTION < tree.size()) {
+            for (final Reaction<T> r : reactions) {
+                updateReaction(r);
+            }
+            return;
         }
+        for (final Reaction<T> r : reactions) {
+            final int index = indexes.get(r);
+            final double tau = r.getTauAsDouble();
+            if (index != indexes.getNoEntryValue()) {
+                if (tau != times.get(index)) {
+                    times.set(index, tau);
+                    sequence.set(index, nextSequence++);
+                }
+            } else if (!isInfinite(tau) && parked.remove(r)) {
+                tree.add(r);
+                times.add(tau);
+                sequence.add(nextSequence++);
+                indexes.put(r, tree.size() - 1);
+            }
+        }
+        for (int i = tree.size() / 2 - 1; i >= 0; i--) {
+            down(tree.get(i), i);
+        }
+        for (final Reaction<T> r : reactions) {
+            if (isInfinite(r.getTauAsDouble()) && indexes.containsKey(r)) {
+                removeFromHeap(r);
+                parked.add(r);
+            }
+        }
+    }
+
+    private static boolean isInfinite(final double time) {
+        return time == Double.POSITIVE_INFINITY;
     }
 
 }
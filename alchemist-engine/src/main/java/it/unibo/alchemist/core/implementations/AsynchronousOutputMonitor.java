@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.implementations;
+
+import it.unibo.alchemist.boundary.interfaces.OutputMonitor;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Position;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import it.unibo.alchemist.model.interfaces.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * An {@link OutputMonitor} decorator that lets the decorated monitor run on its own thread, so that slow monitors
+ * (e.g., exporters writing on disk or graphical interfaces) do not throttle the simulation.
+ *
+ * The simulation publishes a record for each event into a bounded ring buffer, and returns immediately;
+ * a dedicated thread consumes the records and forwards them, in order, to the decorated monitor.
+ * Records are preallocated and recycled, so publishing allocates nothing. When the buffer is full, the
+ * {@link Backpressure} policy decides whether the simulation waits or some step records get discarded;
+ * initialization and termination are never discarded, and the simulation waits for the decorated monitor
+ * to process the termination.
+ *
+ * As the simulation keeps running while the decorated monitor works, the live environment
+ * would be read and modified concurrently: the decorated monitor receives instead a snapshot, taken on the
+ * simulation thread by a snapshot function, by default {@link #serializedCopy()}. Snapshots can be expensive,
+ * and are usually paired with a sampling interval; {@link UnaryOperator#identity()} can be provided explicitly
+ * only for monitors that never read the environment they receive.
+ *
+ * @param <T> concentration type
+ * @param <P> {@link Position} type
+ */
+public final class AsynchronousOutputMonitor<T, P extends Position<? extends P>> implements OutputMonitor<T, P> {
+
+    /**
+     * Default number of records the buffer can hold.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+    private static final long serialVersionUID = 1L;
+    private static final Logger L = LoggerFactory.getLogger(AsynchronousOutputMonitor.class);
+
+    /**
+     * What to do when a step is done and the buffer is full.
+     */
+    public enum Backpressure {
+        /**
+         * The simulation waits for the decorated monitor to consume a record.
+         */
+        BLOCK,
+        /**
+         * The oldest pending step record is discarded.
+         */
+        DROP_OLDEST,
+        /**
+         * The new step record is discarded.
+         */
+        DROP_NEWEST
+    }
+
+    private enum Kind { INITIALIZED, STEP, FINISHED }
+
+    private final OutputMonitor<T, P> delegate;
+    private final Backpressure backpressure;
+    private final long samplingInterval;
+    private final UnaryOperator<Environment<T, P>> snapshot;
+    private final Record<T, P>[] ring;
+    private final Lock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+    private int head;
+    private int count;
+    private long dropped;
+    private boolean done;
+    private transient Thread consumer;
+    private Throwable failure;
+
+    /**
+     * Decorates the provided monitor with a buffer of {@link #DEFAULT_CAPACITY} records,
+     * blocking the simulation when it is full, and passing it a {@link #serializedCopy()} of the environment
+     * at every step.
+     *
+     * @param delegate the monitor to run asynchronously
+     */
+    public AsynchronousOutputMonitor(final OutputMonitor<T, P> delegate) {
+        this(delegate, DEFAULT_CAPACITY, Backpressure.BLOCK, 1, serializedCopy());
+    }
+
+    /**
+     * @param delegate the monitor to run asynchronously
+     * @param capacity the maximum number of records waiting to be consumed
+     * @param backpressure what to do when the buffer is full
+     * @param samplingInterval only steps multiple of this interval are published
+     * @param snapshot the function used (on the simulation thread) to obtain the environment to publish, which
+     *                 must not be modified by the simulation afterwards: {@link UnaryOperator#identity()} is
+     *                 only safe if the decorated monitor never reads the environment
+     */
+    @SuppressWarnings("unchecked")
+    public AsynchronousOutputMonitor(
+            final OutputMonitor<T, P> delegate,
+            final int capacity,
+            final Backpressure backpressure,
+            final long samplingInterval,
+            final UnaryOperator<Environment<T, P>> snapshot
+    ) {
+        if (capacity < 1 || samplingInterval < 1) {
+            throw new IllegalArgumentException("Capacity (" + capacity + ") and sampling interval ("
+                    + samplingInterval + ") must be positive");
+        }
+        this.delegate = Objects.requireNonNull(delegate);
+        this.backpressure = Objects.requireNonNull(backpressure);
+        this.samplingInterval = samplingInterval;
+        this.snapshot = Objects.requireNonNull(snapshot);
+        ring = new Record[capacity];
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new Record<>();
+        }
+    }
+
+    @Override
+    public void initialized(final Environment<T, P> environment) {
+        lock.lock();
+        try {
+            if (consumer == null || done) {
+                done = false;
+                failure = null;
+                consumer = new Thread(this::consume, "async-" + delegate.getClass().getSimpleName());
+                consumer.setDaemon(true);
+                consumer.start();
+            }
+        } finally {
+            lock.unlock();
+        }
+        publish(Kind.INITIALIZED, environment, null, null, 0);
+    }
+
+    @Override
+    public void stepDone(final Environment<T, P> environment, final Reaction<T> reaction, final Time time, final long step) {
+        if (step % samplingInterval == 0) {
+            publish(Kind.STEP, environment, reaction, time, step);
+        }
+    }
+
+    @Override
+    public void finished(final Environment<T, P> environment, final Time time, final long step) {
+        lock.lock();
+        try {
+            if (consumer == null) {
+                // Never initialized: nothing is pending
+                delegate.finished(environment, time, step);
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        publish(Kind.FINISHED, environment, null, time, step);
+        lock.lock();
+        try {
+            while (!done) {
+                drained.awaitUninterruptibly();
+            }
+            if (dropped > 0) {
+                L.info("{} step records were discarded by {}", dropped, this);
+            }
+            if (failure != null) {
+                throw new IllegalStateException(delegate + " failed while running asynchronously", failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of step records discarded so far because of backpressure
+     */
+    public long getDropped() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void publish(
+            final Kind kind,
+            final Environment<T, P> environment,
+            final Reaction<T> reaction,
+            final Time time,
+            final long step
+    ) {
+        final Environment<T, P> published = snapshot.apply(environment);
+        lock.lock();
+        try {
+            if (count == ring.length) {
+                if (kind == Kind.STEP && backpressure == Backpressure.DROP_NEWEST) {
+                    dropped++;
+                    return;
+                }
+                if (kind == Kind.STEP && backpressure == Backpressure.DROP_OLDEST && ring[head].kind == Kind.STEP) {
+                    ring[head].clear();
+                    head = (head + 1) % ring.length;
+                    count--;
+                    dropped++;
+                }
+                while (count == ring.length) {
+                    notFull.awaitUninterruptibly();
+                }
+            }
+            ring[(head + count) % ring.length].set(kind, published, reaction, time, step);
+            count++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void consume() {
+        boolean finished = false;
+        while (!finished) {
+            final Kind kind;
+            final Environment<T, P> environment;
+            final Reaction<T> reaction;
+            final Time time;
+            final long step;
+            lock.lock();
+            try {
+                while (count == 0) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                final Record<T, P> record = ring[head];
+                kind = record.kind;
+                environment = record.environment;
+                reaction = record.reaction;
+                time = record.time;
+                step = record.step;
+                record.clear();
+                head = (head + 1) % ring.length;
+                count--;
+                notFull.signal();
+            } finally {
+                lock.unlock();
+            }
+            finished = kind == Kind.FINISHED;
+            if (failure == null) {
+                try {
+                    switch (kind) {
+                        case INITIALIZED:
+                            delegate.initialized(environment);
+                            break;
+                        case STEP:
+                            delegate.stepDone(environment, reaction, time, step);
+                            break;
+                        default:
+                            delegate.finished(environment, time, step);
+                    }
+                } catch (RuntimeException | Error e) { // NOPMD: the failure is reported to the simulation thread
+                    L.error("{} failed, discarding its next events", delegate, e);
+                    failure = e;
+                }
+            }
+        }
+        lock.lock();
+        try {
+            done = true;
+            drained.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param <T> concentration type
+     * @param <P> {@link Position} type
+     * @return a snapshot function producing a deep copy of the environment via Java serialization.
+     *         Transient parts of the environment (e.g., the incarnation) are not copied.
+     */
+    public static <T, P extends Position<? extends P>> UnaryOperator<Environment<T, P>> serializedCopy() {
+        return environment -> {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+                output.writeObject(environment);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                @SuppressWarnings("unchecked")
+                final Environment<T, P> copy = (Environment<T, P>) input.readObject();
+                return copy;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + delegate + ", " + backpressure + "]";
+    }
+
+    private static final class Record<T, P extends Position<? extends P>> implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private Kind kind;
+        private Environment<T, P> environment;
+        private Reaction<T> reaction;
+        private Time time;
+        private long step;
+
+        private void set(
+                final Kind kind,
+                final Environment<T, P> environment,
+                final Reaction<T> reaction,
+                final Time time,
+                final long step
+        ) {
+            this.kind = kind;
+            this.environment = environment;
+            this.reaction = reaction;
+            this.time = time;
+            this.step = step;
+        }
+
+        private void clear() {
+            set(null, null, null, null, 0);
+        }
+    }
+
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.implementations;
+
+import it.unibo.alchemist.core.interfaces.Scheduler;
+import it.unibo.alchemist.model.interfaces.Reaction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * A calendar queue (R. Brown, 1988) implementation of {@link Scheduler}.
+ *
+ * Reactions are hashed by their putative time into "days" of fixed width, and each day is stored
+ * in a bucket, as a list sorted by time; buckets are reused cyclically ("years").
+ * The number of buckets follows the number of reactions, and the day width is re-estimated
+ * on the average separation of the next reactions to execute every time the calendar gets resized.
+ * As reactions are updated, the distribution of their times may drift away from the one the width
+ * was estimated on: if locating the earliest reaction or inserting a rescheduled one starts requiring
+ * long scans, the calendar is rebuilt with the same number of buckets and a fresh width estimate.
+ * Insertion, update and removal run in O(1) amortized time when reaction times are well spread,
+ * making this scheduler preferable to {@link ArrayIndexedPriorityQueue} for very large
+ * reaction populations.
+ *
+ * Reactions that are not going to be executed (infinite putative time) are kept aside, and
+ * returned only if no other reaction is available.
+ *
+ * @param <T> concentration type
+ */
+public final class CalendarQueue<T> implements Scheduler<T> {
+
+    private static final int MINIMUM_BUCKETS = 2;
+    private static final int WIDTH_SAMPLE = 25;
+    private static final double WIDTH_SCALE = 3;
+    /**
+     * Average number of entries or days visited per update above which the width gets re-estimated.
+     */
+    private static final int MAXIMUM_AVERAGE_SCAN = 4;
+
+    private final Map<Reaction<T>, Entry<T>> entries = new HashMap<>();
+    private final Set<Reaction<T>> parked = new LinkedHashSet<>();
+    private Entry<T>[] heads = newBuckets(MINIMUM_BUCKETS);
+    private Entry<T>[] tails = newBuckets(MINIMUM_BUCKETS);
+    private int mask = MINIMUM_BUCKETS - 1;
+    private double width = 1;
+    private int size;
+    /*
+     * No scheduled (finite) reaction happens before this day
+     */
+    private long firstDay = Long.MAX_VALUE;
+    private Entry<T> cachedMinimum;
+    /*
+     * Updates since the last check on the scan lengths, and entries or days visited in the meanwhile
+     */
+    private int updates;
+    private long scanned;
+
+    @Override
+    public void addReaction(final Reaction<T> r) {
+        final Entry<T> entry = new Entry<>(r);
+        entries.put(r, entry);
+        insert(entry);
+        if (size > 2 * heads.length) {
+            resize(2 * heads.length);
+        }
+    }
+
+    @Override
+    public Reaction<T> getNext() {
+        final Entry<T> minimum = minimum();
+        if (minimum == null) {
+            return parked.isEmpty() ? null : parked.iterator().next();
+        }
+        return minimum.reaction;
+    }
+
+    /**
+     * Simultaneous reactions fall in the same day, and are contiguous in its bucket.
+     */
+    @Override
+    public List<Reaction<T>> getNextBatch() {
+        final Entry<T> minimum = minimum();
+        if (minimum == null) {
+            return parked.isEmpty() ? Collections.emptyList() : new ArrayList<>(parked);
+        }
+        final List<Reaction<T>> result = new ArrayList<>();
+        for (Entry<T> entry = minimum; entry != null && entry.time == minimum.time; entry = entry.next) {
+            result.add(entry.reaction);
+        }
+        return result;
+    }
+
+    @Override
+    public void removeReaction(final Reaction<T> r) {
+        final Entry<T> entry = entries.remove(r);
+        if (entry == null) {
+            throw new IllegalArgumentException(r + " is not scheduled");
+        }
+        unlink(entry);
+        if (size < heads.length / 2 && heads.length > MINIMUM_BUCKETS) {
+            resize(heads.length / 2);
+        }
+    }
+
+    @Override
+    public void updateReaction(final Reaction<T> r) {
+        final Entry<T> entry = entries.get(r);
+        if (entry != null) {
+            unlink(entry);
+            insert(entry);
+            if (++updates >= heads.length) {
+                if (scanned > (long) MAXIMUM_AVERAGE_SCAN * updates) {
+                    resize(heads.length);
+                }
+                updates = 0;
+                scanned = 0;
+            }
+        }
+    }
+
+    private long dayOf(final double time) {
+        return (long) Math.floor(time / width);
+    }
+
+    private void insert(final Entry<T> entry) {
+        entry.time = entry.reaction.getTauAsDouble();
+        if (entry.time == Double.POSITIVE_INFINITY) {
+            entry.bucket = -1;
+            parked.add(entry.reaction);
+            return;
+        }
+        entry.day = dayOf(entry.time);
+        entry.bucket = (int) (entry.day & mask);
+        /*
+         * New reactions are usually scheduled after the existing ones: scan from the tail
+         */
+        Entry<T> previous = tails[entry.bucket];
+        while (previous != null && previous.time > entry.time) {
+            previous = previous.previous;
+            scanned++;
+        }
+        entry.previous = previous;
+        if (previous == null) {
+            entry.next = heads[entry.bucket];
+            heads[entry.bucket] = entry;
+        } else {
+            entry.next = previous.next;
+            previous.next = entry;
+        }
+        if (entry.next == null) {
+            tails[entry.bucket] = entry;
+        } else {
+            entry.next.previous = entry;
+        }
+        size++;
+        firstDay = Math.min(firstDay, entry.day);
+        if (cachedMinimum != null && entry.time < cachedMinimum.time) {
+            cachedMinimum = entry;
+        }
+    }
+
+    private void unlink(final Entry<T> entry) {
+        if (entry.bucket < 0) {
+            parked.remove(entry.reaction);
+            return;
+        }
+        if (entry.previous == null) {
+            heads[entry.bucket] = entry.next;
+        } else {
+            entry.previous.next = entry.next;
+        }
+        if (entry.next == null) {
+            tails[entry.bucket] = entry.previous;
+        } else {
+            entry.next.previous = entry.previous;
+        }
+        entry.previous = null;
+        entry.next = null;
+        size--;
+        if (entry == cachedMinimum) {
+            cachedMinimum = null;
+        }
+    }
+
+    private Entry<T> minimum() {
+        if (cachedMinimum == null && size > 0) {
+            long day = firstDay;
+            for (int i = 0; i < heads.length && cachedMinimum == null; i++, day++) {
+                final Entry<T> head = heads[(int) (day & mask)];
+                if (head != null && head.day <= day) {
+                    cachedMinimum = head;
+                }
+                scanned++;
+            }
+            if (cachedMinimum == null) {
+                /*
+                 * Sparse calendar: no reaction in the next year, direct search among the bucket heads
+                 */
+                scanned += heads.length;
+                for (final Entry<T> head : heads) {
+                    if (head != null && (cachedMinimum == null || head.time < cachedMinimum.time)) {
+                        cachedMinimum = head;
+                    }
+                }
+            }
+            firstDay = cachedMinimum.day;
+        }
+        return cachedMinimum;
+    }
+
+    private void resize(final int buckets) {
+        final List<Entry<T>> scheduled = new ArrayList<>(size);
+        for (final Entry<T> head : heads) {
+            for (Entry<T> entry = head; entry != null; entry = entry.next) {
+                scheduled.add(entry);
+            }
+        }
+        width = estimateWidth(scheduled);
+        heads = newBuckets(buckets);
+        tails = newBuckets(buckets);
+        mask = buckets - 1;
+        size = 0;
+        firstDay = Long.MAX_VALUE;
+        cachedMinimum = null;
+        for (final Entry<T> entry : scheduled) {
+            entry.previous = null;
+            entry.next = null;
+            insert(entry);
+        }
+        updates = 0;
+        scanned = 0;
+    }
+
+    /*
+     * Three times the average separation of the earliest reactions, ignoring outliers
+     */
+    private double estimateWidth(final List<Entry<T>> scheduled) {
+        final PriorityQueue<Double> earliest = new PriorityQueue<>(WIDTH_SAMPLE + 1, Collections.reverseOrder());
+        for (final Entry<T> entry : scheduled) {
+            earliest.add(entry.time);
+            if (earliest.size() > WIDTH_SAMPLE) {
+                earliest.poll();
+            }
+        }
+        final double[] times = earliest.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+        final double[] separations = new double[Math.max(0, times.length - 1)];
+        for (int i = 0; i < separations.length; i++) {
+            separations[i] = times[i + 1] - times[i];
+        }
+        final double average = Arrays.stream(separations).average().orElse(0);
+        final double filtered = Arrays.stream(separations)
+            .filter(separation -> separation <= 2 * average)
+            .average()
+            .orElse(0);
+        final double estimate = WIDTH_SCALE * filtered;
+        return estimate > 0 && Double.isFinite(estimate) ? estimate : width;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Entry<T>[] newBuckets(final int buckets) {
+        return (Entry<T>[]) new Entry<?>[buckets];
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[buckets=" + heads.length + ", width=" + width
+            + ", scheduled=" + size + ", parked=" + parked.size() + ']';
+    }
+
+    private static final class Entry<T> {
+        private final Reaction<T> reaction;
+        private double time;
+        private long day;
+        private int bucket;
+        private Entry<T> previous;
+        private Entry<T> next;
+
+        private Entry(final Reaction<T> reaction) {
+            this.reaction = reaction;
+        }
+    }
+
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.implementations;
+
+import it.unibo.alchemist.core.interfaces.Scheduler;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Position;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import it.unibo.alchemist.model.interfaces.Time;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.util.FastMath;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An {@link Engine} implementing the composition-rejection variant of Gillespie's stochastic simulation
+ * algorithm (A. Slepoy, A. P. Thompson, S. J. Plimpton, 2008), meant for large chemical networks whose
+ * rates span many orders of magnitude.
+ *
+ * Every reaction is considered a Markovian jump process whose propensity is its {@link Reaction#getRate() rate},
+ * and reactions are grouped by the binary order of magnitude of their propensity.
+ * At each step, the simulation time advances by an exponentially distributed interval depending on the
+ * total rate, a group is selected with probability proportional to its total rate, and a reaction is
+ * selected within the group by rejection sampling, which requires less than two attempts on average.
+ * Selection takes constant time with respect to the number of reactions, and the reactions depending on
+ * the executed one only need to be moved among the groups when their rate changes, instead of getting
+ * their putative time rescheduled in a priority queue.
+ *
+ * The reactions are updated as in {@link Engine}, so that their rates are kept current, but their putative times
+ * are ignored. This engine should not be used with non-Markovian reactions (e.g., those driven by a Dirac comb).
+ *
+ * @param <T> concentration type
+ * @param <P> {@link Position} type
+ */
+public final class CompositionRejectionEngine<T, P extends Position<? extends P>> extends Engine<T, P> {
+
+    private final PropensityGroups<T> groups;
+    private final RandomGenerator random;
+
+    /**
+     * Builds a simulation selecting the reactions by composition-rejection.
+     *
+     * @param e
+     *            the environment at the initial time
+     * @param maxSteps
+     *            the maximum number of steps to do
+     * @param t
+     *            the maximum time to reach
+     * @param random
+     *            the {@link RandomGenerator} used to select the reactions and the time intervals
+     */
+    public CompositionRejectionEngine(
+            final Environment<T, P> e,
+            final long maxSteps,
+            final Time t,
+            final RandomGenerator random
+    ) {
+        this(e, maxSteps, t, new PropensityGroups<>(random), random);
+    }
+
+    private CompositionRejectionEngine(
+            final Environment<T, P> e,
+            final long maxSteps,
+            final Time t,
+            final PropensityGroups<T> groups,
+            final RandomGenerator random
+    ) {
+        super(e, maxSteps, t, groups);
+        this.groups = groups;
+        this.random = Objects.requireNonNull(random);
+    }
+
+    @Override
+    protected void doStep() {
+        final double totalRate = groups.getTotalRate();
+        if (totalRate == 0) {
+            terminate();
+        } else {
+            final Reaction<T> mu = groups.select(totalRate);
+            final double interval = -FastMath.log1p(-random.nextDouble()) / totalRate;
+            advanceTimeTo(new SampledTime(getTime().toDouble() + interval));
+            if (checkConditions(mu)) {
+                fire(mu);
+                updateDependencies(mu);
+            }
+            rescheduleAndNotify(mu);
+        }
+        completeStep();
+    }
+
+    /**
+     * Updates the reaction, and moves it among the groups according to its new propensity, whether or not its
+     * putative time changed.
+     *
+     * @param r the reaction depending on the one just executed
+     */
+    @Override
+    protected void updateReaction(final Reaction<T> r) {
+        r.update(getTime(), false, getEnvironment());
+        groups.updateReaction(r);
+    }
+
+    private static <T> double propensityOf(final Reaction<T> reaction) {
+        return reaction.getRate();
+    }
+
+    /**
+     * A point in time drawn by the engine.
+     */
+    private static final class SampledTime implements Time {
+
+        private static final long serialVersionUID = 1L;
+        private final double time;
+
+        private SampledTime(final double time) {
+            this.time = time;
+        }
+
+        @Override
+        public boolean isInfinite() {
+            return time == Double.POSITIVE_INFINITY;
+        }
+
+        @Override
+        public Time times(final double var) {
+            return new SampledTime(time * var);
+        }
+
+        @Override
+        public Time minus(final Time dt) {
+            return new SampledTime(time - dt.toDouble());
+        }
+
+        @Override
+        public Time plus(final Time dt) {
+            return new SampledTime(time + dt.toDouble());
+        }
+
+        @Override
+        public double toDouble() {
+            return time;
+        }
+
+        @Override
+        public int compareTo(final Time o) {
+            return Double.compare(time, o.toDouble());
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof Time && ((Time) obj).toDouble() == time;
+        }
+
+        @Override
+        public int hashCode() {
+            return Double.hashCode(time);
+        }
+
+        @Override
+        public String toString() {
+            return Double.toString(time);
+        }
+    }
+
+    /**
+     * Reactions grouped by the binary exponent of their propensity: the propensities of the reactions in the group
+     * of exponent e are in [2^e, 2^(e+1)). Reactions with a null propensity belong to no group.
+     * The {@link Engine} notifies every addition and removal through the {@link Scheduler} interface, and the
+     * reactions that may have changed propensity are notified as updates.
+     *
+     * @param <T> concentration type
+     */
+    private static final class PropensityGroups<T> implements Scheduler<T> {
+
+        private static final int OFFSET = -Double.MIN_EXPONENT + 1;
+        private final RandomGenerator random;
+        private final Map<Reaction<T>, Member<T>> members = new HashMap<>();
+        private final Group<T>[] groups = newGroups(Double.MAX_EXPONENT + OFFSET + 1);
+        /*
+         * Non-empty groups, whose number is bounded by the orders of magnitude spanned by the rates
+         */
+        private final List<Group<T>> active = new ArrayList<>();
+
+        private PropensityGroups(final RandomGenerator random) {
+            this.random = random;
+        }
+
+        private double getTotalRate() {
+            double total = 0;
+            for (int i = 0; i < active.size(); i++) {
+                total += active.get(i).sum;
+            }
+            return total;
+        }
+
+        private Reaction<T> select(final double totalRate) {
+            double target = random.nextDouble() * totalRate;
+            Group<T> group = active.get(active.size() - 1);
+            for (int i = 0; i < active.size() - 1; i++) {
+                target -= active.get(i).sum;
+                if (target < 0) {
+                    group = active.get(i);
+                    break;
+                }
+            }
+            while (true) {
+                final Member<T> candidate = group.members.get(random.nextInt(group.members.size()));
+                if (random.nextDouble() * group.bound < candidate.rate) {
+                    return candidate.reaction;
+                }
+            }
+        }
+
+        @Override
+        public void addReaction(final Reaction<T> r) {
+            final Member<T> member = new Member<>(r);
+            members.put(r, member);
+            insert(member);
+        }
+
+        /**
+         * @return a reaction selected with probability proportional to its rate, or null if all rates are zero
+         */
+        @Override
+        public Reaction<T> getNext() {
+            final double totalRate = getTotalRate();
+            return totalRate == 0 ? null : select(totalRate);
+        }
+
+        @Override
+        public void removeReaction(final Reaction<T> r) {
+            final Member<T> member = members.remove(r);
+            if (member == null) {
+                throw new IllegalArgumentException(r + " is not scheduled");
+            }
+            extract(member);
+        }
+
+        @Override
+        public void updateReaction(final Reaction<T> r) {
+            final Member<T> member = members.get(r);
+            if (member != null) {
+                final double rate = propensityOf(r);
+                if (member.group != null && rate > 0 && exponentOf(rate) == member.group.exponent) {
+                    member.group.sum += rate - member.rate;
+                    member.rate = rate;
+                } else {
+                    extract(member);
+                    insert(member);
+                }
+            }
+        }
+
+        private void insert(final Member<T> member) {
+            member.rate = propensityOf(member.reaction);
+            if (member.rate < 0 || Double.isNaN(member.rate) || Double.isInfinite(member.rate)) {
+                throw new IllegalStateException(member.reaction + " has an invalid propensity: " + member.rate);
+            }
+            if (member.rate > 0) {
+                final int exponent = exponentOf(member.rate);
+                Group<T> group = groups[exponent + OFFSET];
+                if (group == null) {
+                    group = new Group<>(exponent);
+                    groups[exponent + OFFSET] = group;
+                }
+                if (group.members.isEmpty()) {
+                    active.add(group);
+                }
+                member.group = group;
+                member.index = group.members.size();
+                group.members.add(member);
+                group.sum += member.rate;
+            }
+        }
+
+        private void extract(final Member<T> member) {
+            final Group<T> group = member.group;
+            if (group != null) {
+                final int last = group.members.size() - 1;
+                final Member<T> moved = group.members.remove(last);
+                if (moved != member) {
+                    moved.index = member.index;
+                    group.members.set(member.index, moved);
+                }
+                if (group.members.isEmpty()) {
+                    // Also clears the rounding errors accumulated in the sum
+                    group.sum = 0;
+                    active.remove(group);
+                } else {
+                    group.sum -= member.rate;
+                }
+                member.group = null;
+            }
+        }
+
+        private static int exponentOf(final double rate) {
+            return Math.getExponent(rate);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Group<T>[] newGroups(final int size) {
+            return (Group<T>[]) new Group<?>[size];
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "[groups=" + active.size() + ", reactions=" + members.size() + ']';
+        }
+    }
+
+    private static final class Group<T> {
+        private final int exponent;
+        private final double bound;
+        private final List<Member<T>> members = new ArrayList<>();
+        private double sum;
+
+        private Group(final int exponent) {
+            this.exponent = exponent;
+            this.bound = Math.scalb(1.0, exponent + 1);
+        }
+    }
+
+    private static final class Member<T> {
+        private final Reaction<T> reaction;
+        private double rate;
+        private Group<T> group;
+        private int index;
+
+        private Member(final Reaction<T> reaction) {
+            this.reaction = reaction;
+        }
+    }
+
+}
@@ -8,7 +8,6 @@
 package it.unibo.alchemist.core.implementations;
 
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Sets;
 import it.unibo.alchemist.boundary.interfaces.OutputMonitor;
 import it.unibo.alchemist.core.interfaces.DependencyGraph;
 import it.unibo.alchemist.core.interfaces.Scheduler;
@@ -22,18 +21,23 @@ import it.unibo.alchemist.model.interfaces.Node;
 import it.unibo.alchemist.model.interfaces.Position;
 import it.unibo.alchemist.model.interfaces.Reaction;
 import it.unibo.alchemist.model.interfaces.Time;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.danilopianini.util.ListSet;
 import org.jooq.lambda.fi.lang.CheckedRunnable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayDeque;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.Queue;
-import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
@@ -43,9 +47,11 @@ import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
-import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static it.unibo.alchemist.core.interfaces.Status.PAUSED;
 import static it.unibo.alchemist.core.interfaces.Status.RUNNING;
@@ -60,7 +66,7 @@ import static it.unibo.alchemist.core.interfaces.Status.TERMINATED;
  * @param <P>
  *            {@link Position} type
  */
-public final class Engine<T, P extends Position<? extends P>> implements Simulation<T, P> {
+public class Engine<T, P extends Position<? extends P>> implements Simulation<T, P> {
 
     private static final Logger L = LoggerFactory.getLogger(Engine.class);
     private static final int ALL_PERMITS = Integer.MAX_VALUE;
@@ -68,19 +74,48 @@ public final class Engine<T, P extends Position<? extends P>> implements Simulat
     private final ImmutableMap<Status, SynchBox> statusLocks = Arrays.stream(Status.values())
             .collect(ImmutableMap.toImmutableMap(Function.identity(), it -> new SynchBox()));
     private final BlockingQueue<CheckedRunnable> commands = new LinkedBlockingQueue<>();
-    private final Queue<Update> afterExecutionUpdates = new ArrayDeque<>();
+    /*
+     * Topological changes notified by the environment are recorded in pooled update records:
+     * the first pendingUpdates of the pool are valid, and get recycled once applied.
+     */
+    private final List<Update> updatePool = new ArrayList<>();
+    /*
+     * Reactions already re-evaluated in the current step (or command), in order:
+     * each reaction gets updated at most once per step.
+     */
+    private final ReactionBuffer<T> stepUpdates = new ReactionBuffer<>();
     private final Environment<T, P> environment;
     private final DependencyGraph<T> dependencyGraph;
     private final Scheduler<T> scheduler;
     private final Time finalTime;
+    private final double finalTimeAsDouble;
     private final Semaphore monitorLock = new Semaphore(ALL_PERMITS);
-    private final List<OutputMonitor<T, P>> monitors = new LinkedList<>();
+    private final List<OutputMonitor<T, P>> monitors = new ArrayList<>();
     private final long finalStep;
+    private final Consumer<Reaction<T>> reactionUpdater = reaction -> {
+        if (stepUpdates.add(reaction)) {
+            updateReaction(reaction);
+        }
+    };
+    private final Consumer<Reaction<T>> stepUpdatesCollector = stepUpdates::add;
+    private final Consumer<Reaction<T>> fanOutCounter = reaction -> fanOut++;
+    /*
+     * Reactions being executed through tryFireConcurrently, whose topological changes get recorded
+     */
+    private final AtomicInteger concurrentExecutions = new AtomicInteger();
+    private final ThreadLocal<DeferredChanges<T>> deferredChanges = new ThreadLocal<>();
     private volatile Status status = Status.INIT;
     private Optional<Throwable> error = Optional.empty();
     private Time currentTime = Time.ZERO;
+    private double currentTimeAsDouble;
     private long currentStep;
+    private int pendingUpdates;
+    private int fanOut;
+    private boolean stepping;
+    private boolean resumed;
+    private boolean completed;
     private Thread myThread;
+    private EngineProfiler profiler;
 
     /**
      * Builds a simulation for a given environment. By default it uses a
@@ -124,13 +159,41 @@ public final class Engine<T, P extends Position<? extends P>> implements Simulat
      *            the maximum time to reach
      */
     public Engine(final Environment<T, P> e, final long maxSteps, final Time t) {
+        this(e, maxSteps, t, new ArrayIndexedPriorityQueue<>());
+    }
+
+    /**
+     * Builds a simulation for a given environment, using the provided
+     * {@link Scheduler} to organize the reactions. The scheduler must be
+     * empty, as the reactions of the environment are added to it once the
+     * simulation gets started.
+     *
+     * @param e
+     *            the environment at the initial time
+     * @param maxSteps
+     *            the maximum number of steps to do
+     * @param t
+     *            the maximum time to reach
+     * @param scheduler
+     *            the {@link Scheduler} to use
+     */
+    public Engine(final Environment<T, P> e, final long maxSteps, final Time t, final Scheduler<T> scheduler) {
         L.trace("Engine created");
         environment = e;
         environment.setSimulation(this);
-        dependencyGraph = new JGraphTDependencyGraph<>(environment);
-        scheduler = new ArrayIndexedPriorityQueue<>();
+        dependencyGraph = new CompactDependencyGraph<>(environment);
+        this.scheduler = Objects.requireNonNull(scheduler);
         this.finalStep = maxSteps;
         this.finalTime = t;
+        this.finalTimeAsDouble = t.toDouble();
+    }
+
+    private Engine(final Snapshot<T, P> snapshot, final long maxSteps, final Time t, final Scheduler<T> scheduler) {
+        this(snapshot.environment, maxSteps, t, scheduler);
+        currentTime = snapshot.time;
+        currentTimeAsDouble = currentTime.toDouble();
+        currentStep = snapshot.step;
+        resumed = snapshot.initialized;
     }
 
     /**
@@ -149,12 +212,133 @@ public final class Engine<T, P extends Position<? extends P>> implements Simulat
     }
 
     @Override
-    public void addOutputMonitor(final OutputMonitor<T, P> op) {
+    public final void addOutputMonitor(final OutputMonitor<T, P> op) {
         monitorLock.acquireUninterruptibly(ALL_PERMITS);
         monitors.add(op);
         monitorLock.release(ALL_PERMITS);
     }
 
+    @Override
+    public final void checkpoint(final OutputStream output) throws IOException {
+        if (status != Status.INIT && status != TERMINATED) {
+            checkCaller();
+            if (stepping) {
+                throw new IllegalStateException("Checkpoints can not be taken in the middle of a step, use schedule()");
+            }
+            if (hasUncommittedExecutions()) {
+                throw new IllegalStateException("Checkpoints can not be taken while reactions executed in advance "
+                        + "are being committed");
+            }
+        }
+        final GZIPOutputStream compressed = new GZIPOutputStream(output);
+        final ObjectOutputStream objects = new ObjectOutputStream(compressed);
+        objects.writeObject(new Snapshot<>(environment, currentTime, currentStep, status != Status.INIT));
+        objects.flush();
+        compressed.finish();
+    }
+
+    /**
+     * Resumes a simulation from a snapshot written by {@link #checkpoint(OutputStream)},
+     * organizing the reactions with an {@link ArrayIndexedPriorityQueue}.
+     * The stream is not closed.
+     *
+     * @param input
+     *            the stream to read the snapshot from
+     * @param maxSteps
+     *            the maximum number of steps to do (including those performed before the snapshot)
+     * @param t
+     *            the maximum time to reach
+     * @param <T>
+     *            concentration type
+     * @param <P>
+     *            {@link Position} type
+     * @return a new simulation, starting from the time and step of the snapshot
+     * @throws IOException if the snapshot cannot be read
+     */
+    public static <T, P extends Position<? extends P>> Engine<T, P> resume(
+            final InputStream input,
+            final long maxSteps,
+            final Time t
+    ) throws IOException {
+        return resume(input, maxSteps, t, new ArrayIndexedPriorityQueue<>());
+    }
+
+    /**
+     * Resumes a simulation from a snapshot written by {@link #checkpoint(OutputStream)}.
+     * The stream is not closed.
+     *
+     * @param input
+     *            the stream to read the snapshot from
+     * @param maxSteps
+     *            the maximum number of steps to do (including those performed before the snapshot)
+     * @param t
+     *            the maximum time to reach
+     * @param scheduler
+     *            the {@link Scheduler} to use, it must be empty
+     * @param <T>
+     *            concentration type
+     * @param <P>
+     *            {@link Position} type
+     * @return a new simulation, starting from the time and step of the snapshot
+     * @throws IOException if the snapshot cannot be read
+     */
+    public static <T, P extends Position<? extends P>> Engine<T, P> resume(
+            final InputStream input,
+            final long maxSteps,
+            final Time t,
+            final Scheduler<T> scheduler
+    ) throws IOException {
+        return read(new ObjectInputStream(new GZIPInputStream(input)), maxSteps, t, scheduler);
+    }
+
+    /**
+     * Resumes a simulation from a snapshot written by {@link #checkpoint(OutputStream)},
+     * reseeding every {@link RandomGenerator} found in the snapshot: multiple simulations
+     * forked from the same snapshot with different seeds share their history up to the
+     * snapshot, and then evolve independently. The stream is not closed.
+     *
+     * @param input
+     *            the stream to read the snapshot from
+     * @param maxSteps
+     *            the maximum number of steps to do (including those performed before the snapshot)
+     * @param t
+     *            the maximum time to reach
+     * @param scheduler
+     *            the {@link Scheduler} to use, it must be empty
+     * @param seed
+     *            the seed from which the new seeds of the random generators are derived
+     * @param <T>
+     *            concentration type
+     * @param <P>
+     *            {@link Position} type
+     * @return a new simulation, starting from the time and step of the snapshot
+     * @throws IOException if the snapshot cannot be read
+     */
+    public static <T, P extends Position<? extends P>> Engine<T, P> fork(
+            final InputStream input,
+            final long maxSteps,
+            final Time t,
+            final Scheduler<T> scheduler,
+            final long seed
+    ) throws IOException {
+        return read(new ReseedingInputStream(new GZIPInputStream(input), seed), maxSteps, t, scheduler);
+    }
+
+    private static <T, P extends Position<? extends P>> Engine<T, P> read(
+            final ObjectInputStream objects,
+            final long maxSteps,
+            final Time t,
+            final Scheduler<T> scheduler
+    ) throws IOException {
+        try {
+            @SuppressWarnings("unchecked")
+            final Snapshot<T, P> snapshot = (Snapshot<T, P>) objects.readObject();
+            return new Engine<>(snapshot, maxSteps, t, scheduler);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Not a valid simulation snapshot", e);
+        }
+    }
+
     private void checkCaller() {
         if (!Thread.currentThread().equals(myThread)) {
             throw new IllegalMonitorStateException("This method must get called from the simulation thread.");
@@ -177,42 +361,249 @@ public final class Engine<T, P extends Position<? extends P>> implements Simulat
         });
     }
 
-    private void doStep() {
+    /**
+     * Executes a single simulation step: the next reaction is retrieved from
+     * the {@link Scheduler}, executed (if its conditions allow it), and then
+     * rescheduled along with every reaction depending on it. Subclasses can
+     * override this method to provide different execution strategies, relying
+     * on the protected methods of this class to reproduce the phases of a
+     * step.
+     */
+    protected void doStep() {
         final Reaction<T> mu = scheduler.getNext();
         if (mu == null) {
             this.newStatus(TERMINATED);
             L.info("No more reactions.");
         } else {
-            final Time t = mu.getTau();
-            if (t.compareTo(currentTime) < 0) {
-                throw new IllegalStateException(mu + "\nis scheduled in the past at time " + t
-                        + ", current time is " + currentTime
-                        + ". Problem occurred at step " + currentStep);
+            advanceTimeTo(mu);
+            if (checkConditions(mu)) {
+                fire(mu);
+                updateDependencies(mu);
             }
-            currentTime = t;
-            if (mu.canExecute()) {
-                /*
-                 * This must be taken before execution, because the reaction
-                 * might remove itself (or its node) from the environment.
-                 */
-                mu.getConditions().forEach(it.unibo.alchemist.model.interfaces.Condition::reactionReady);
-                mu.execute();
-                Set<Reaction<T>> toUpdate = dependencyGraph.outboundDependencies(mu);
-                if (!afterExecutionUpdates.isEmpty()) {
-                    afterExecutionUpdates.forEach(Update::performChanges);
-                    afterExecutionUpdates.clear();
-                    toUpdate = Sets.union(toUpdate, dependencyGraph.outboundDependencies(mu));
-                }
-                toUpdate.forEach(this::updateReaction);
-            }
-            mu.update(currentTime, true, environment);
-            scheduler.updateReaction(mu);
-            monitorLock.acquireUninterruptibly();
-            for (final OutputMonitor<T, P> m : monitors) {
-                m.stepDone(environment, mu, currentTime, currentStep);
+            rescheduleAndNotify(mu);
+        }
+        completeStep();
+    }
+
+    /**
+     * Moves the simulation time forward to the time at which the provided
+     * reaction is scheduled.
+     *
+     * @param mu the reaction about to get executed
+     * @throws IllegalStateException if the reaction is scheduled in the past
+     */
+    protected final void advanceTimeTo(final Reaction<T> mu) {
+        final double t = mu.getTauAsDouble();
+        if (t < currentTimeAsDouble) {
+            throw new IllegalStateException(mu + "\nis scheduled in the past at time " + mu.getTau()
+                    + ", current time is " + currentTime
+                    + ". Problem occurred at step " + currentStep);
+        }
+        currentTime = mu.getTau();
+        currentTimeAsDouble = t;
+    }
+
+    /**
+     * Moves the simulation time forward to the provided time. Meant for
+     * engines that do not follow the putative times of the reactions.
+     *
+     * @param time the new simulation time
+     * @throws IllegalArgumentException if the time is in the past
+     */
+    protected final void advanceTimeTo(final Time time) {
+        final double t = time.toDouble();
+        if (t < currentTimeAsDouble) {
+            throw new IllegalArgumentException("Cannot go back in time from " + currentTime + " to " + time
+                    + ". Problem occurred at step " + currentStep);
+        }
+        currentTime = time;
+        currentTimeAsDouble = t;
+    }
+
+    /**
+     * Checks whether the conditions of the provided reaction allow its
+     * execution.
+     *
+     * @param mu the reaction about to get executed
+     * @return true if the reaction can be executed
+     */
+    protected final boolean checkConditions(final Reaction<T> mu) {
+        if (profiler == null) {
+            return mu.canExecute();
+        }
+        final long start = System.nanoTime();
+        final boolean result = mu.canExecute();
+        profiler.conditionsChecked(mu, System.nanoTime() - start, result);
+        return result;
+    }
+
+    /**
+     * Executes the provided reaction, without checking whether its conditions
+     * are satisfied, and without updating any other reaction.
+     *
+     * @param mu the reaction to execute
+     */
+    protected final void fire(final Reaction<T> mu) {
+        final long start = profiler == null ? 0 : System.nanoTime();
+        /*
+         * This must be taken before execution, because the reaction
+         * might remove itself (or its node) from the environment.
+         */
+        mu.getConditions().forEach(it.unibo.alchemist.model.interfaces.Condition::reactionReady);
+        mu.execute();
+        if (profiler != null) {
+            profiler.actionsExecuted(mu, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Checks the conditions of the provided reaction and, if they allow it, executes it, as
+     * {@link #checkConditions(Reaction)} and {@link #fire(Reaction)} do. Unlike them, this method
+     * can be called by threads other than the simulation thread, and by multiple threads at once, as long as
+     * the reactions executed concurrently neither depend on each other nor write on the same nodes: the
+     * topological changes notified during the execution are not applied, but recorded in the returned
+     * {@link DeferredChanges}, which must be passed to {@link #applyDeferredChanges(DeferredChanges)} on the
+     * simulation thread before updating the dependencies of the reaction.
+     *
+     * @param mu the reaction to execute
+     * @return the changes recorded during the execution, or null if the conditions did not allow it
+     */
+    protected final DeferredChanges<T> tryFireConcurrently(final Reaction<T> mu) {
+        final DeferredChanges<T> changes = new DeferredChanges<>();
+        deferredChanges.set(changes);
+        concurrentExecutions.incrementAndGet();
+        try {
+            if (checkConditions(mu)) {
+                fire(mu);
+                return changes;
             }
-            monitorLock.release();
+            return null;
+        } finally {
+            concurrentExecutions.decrementAndGet();
+            deferredChanges.remove();
+        }
+    }
+
+    /**
+     * Enqueues the topological changes recorded by {@link #tryFireConcurrently(Reaction)}, as if they were
+     * notified by the simulation thread: they get applied by the next
+     * {@link #updateDependencies(Reaction)}.
+     *
+     * @param changes the recorded changes
+     */
+    protected final void applyDeferredChanges(final DeferredChanges<T> changes) {
+        checkCaller();
+        for (int i = 0; i < changes.types.size(); i++) {
+            enqueueUpdate(changes.types.get(i), changes.sources.get(i), changes.targets.get(i));
+        }
+    }
+
+    /**
+     * Engines executing reactions before their turn (see {@link #tryFireConcurrently(Reaction)}) must
+     * return true as long as some of those reactions did not complete their step: checkpoints are forbidden in
+     * the meanwhile, as the state of the environment is ahead of the state of the {@link Scheduler}.
+     *
+     * @return true if some reactions have been executed, but not yet rescheduled
+     */
+    protected boolean hasUncommittedExecutions() {
+        return false;
+    }
+
+    /**
+     * Updates all the reactions depending on the provided (just executed)
+     * reaction, also applying the topological changes it caused. Reactions
+     * already updated in the current step are not updated again. If the provided
+     * reaction depends on itself, it gets updated as any other dependent reaction,
+     * before being rescheduled through {@link #rescheduleAndNotify(Reaction)}.
+     *
+     * @param mu the reaction that has been executed
+     */
+    protected final void updateDependencies(final Reaction<T> mu) {
+        EngineEvents.DependencyUpdate event = null;
+        if (profiler != null) {
+            event = new EngineEvents.DependencyUpdate();
+            event.begin();
+            fanOut = 0;
+            dependencyGraph.forEachOutboundDependency(mu, fanOutCounter);
+            profiler.dependenciesUpdated(mu, fanOut);
+        }
+        if (pendingUpdates == 0) {
+            dependencyGraph.forEachOutboundDependency(mu, reactionUpdater);
+        } else {
+            final int alreadyUpdated = stepUpdates.size();
+            // Reactions depending on mu both before and after the topological changes
+            dependencyGraph.forEachOutboundDependency(mu, stepUpdatesCollector);
+            performPendingChanges();
+            dependencyGraph.forEachOutboundDependency(mu, stepUpdatesCollector);
+            updateCollectedReactions(alreadyUpdated);
+        }
+        if (event != null) {
+            event.complete(mu.getClass(), fanOut);
         }
+    }
+
+    /**
+     * Computes the next execution time of the provided (just processed)
+     * reaction, updates the {@link Scheduler}, and notifies the
+     * {@link OutputMonitor}s.
+     *
+     * @param mu the reaction processed in the current step
+     */
+    protected final void rescheduleAndNotify(final Reaction<T> mu) {
+        mu.update(currentTime, true, environment);
+        scheduler.updateReaction(mu);
+        notifyStepDone(mu);
+    }
+
+    /**
+     * Computes the next execution time of all the provided reactions,
+     * processed together at the current time, and updates the
+     * {@link Scheduler} once for all of them. The {@link OutputMonitor}s are
+     * not notified: {@link #notifyStepDone(Reaction)} and
+     * {@link #completeStep()} must be called for each reaction.
+     *
+     * @param reactions the reactions processed at the current time
+     */
+    protected final void rescheduleAll(final List<Reaction<T>> reactions) {
+        for (int i = 0; i < reactions.size(); i++) {
+            reactions.get(i).update(currentTime, true, environment);
+        }
+        scheduler.updateReactions(reactions);
+    }
+
+    /**
+     * Notifies the {@link OutputMonitor}s that the provided reaction has been
+     * processed in the current step.
+     *
+     * @param mu the reaction processed in the current step
+     */
+    protected final void notifyStepDone(final Reaction<T> mu) {
+        monitorLock.acquireUninterruptibly();
+        if (profiler == null) {
+            notifyMonitors(mu);
+        } else {
+            final EngineEvents.MonitorDispatch event = new EngineEvents.MonitorDispatch();
+            event.begin();
+            final long start = System.nanoTime();
+            notifyMonitors(mu);
+            profiler.monitorsNotified(System.nanoTime() - start);
+            event.complete(monitors.size());
+        }
+        monitorLock.release();
+    }
+
+    private void notifyMonitors(final Reaction<T> mu) {
+        for (int i = 0; i < monitors.size(); i++) {
+            monitors.get(i).stepDone(environment, mu, currentTime, currentStep);
+        }
+    }
+
+    /**
+     * Concludes the current step, checking the termination conditions and
+     * increasing the step counter.
+     */
+    protected final void completeStep() {
+        stepUpdates.clear();
         if (environment.isTerminated()) {
             newStatus(TERMINATED);
             L.info("Termination condition reached.");
@@ -221,62 +612,102 @@ public final class Engine<T, P extends Position<? extends P>> implements Simulat
     }
 
     private void finalizeConstructor() {
+        final List<Reaction<T>> reactions = new ArrayList<>();
         for (final Node<T> n : environment) {
-            for (final Reaction<T> r : n.getReactions()) {
-                scheduleReaction(r);
+            reactions.addAll(n.getReactions());
+        }
+        dependencyGraph.createAllDependencies(reactions);
+        for (final Reaction<T> r : reactions) {
+            if (!resumed) {
+                // Resumed reactions already have their putative times
+                r.initializationComplete(currentTime, environment);
+            }
+            scheduler.addReaction(r);
+        }
+    }
+
+    /**
+     * Enables the collection of execution statistics and the emission of
+     * Java Flight Recorder events for steps, dependency updates, topology
+     * updates and output monitor notifications. Engines that are not
+     * profiled pay no cost.
+     *
+     * @return the {@link EngineProfiler} collecting the statistics
+     * @throws IllegalStateException if the simulation has already started
+     */
+    public final EngineProfiler enableProfiling() {
+        if (profiler == null) {
+            if (status != Status.INIT) {
+                throw new IllegalStateException("Profiling must be enabled before the simulation starts");
             }
+            profiler = new EngineProfiler();
         }
+        return profiler;
+    }
+
+    /**
+     * @return the {@link EngineProfiler} of this engine, or an empty optional if profiling is not enabled
+     */
+    public final Optional<EngineProfiler> getProfiler() {
+        return Optional.ofNullable(profiler);
     }
 
     /**
      * @return the dependency graph
      */
-    public DependencyGraph<T> getDependencyGraph() {
+    public final DependencyGraph<T> getDependencyGraph() {
         return dependencyGraph;
     }
 
+    /**
+     * @return the scheduler
+     */
+    protected final Scheduler<T> getScheduler() {
+        return scheduler;
+    }
+
     @Override
-    public Environment<T, P> getEnvironment() {
+    public final Environment<T, P> getEnvironment() {
         return environment;
     }
 
     @Override
-    public Optional<Throwable> getError() {
+    public final Optional<Throwable> getError() {
         return error;
     }
 
     @Override
-    public long getFinalStep() {
+    public final long getFinalStep() {
         return finalStep;
     }
 
     @Override
-    public Time getFinalTime() {
+    public final Time getFinalTime() {
         return finalTime;
     }
 
     @Override
-    public Status getStatus() {
+    public final Status getStatus() {
         return status;
     }
 
     @Override
-    public long getStep() {
+    public final long getStep() {
         return currentStep;
     }
 
     @Override
-    public Time getTime() {
+    public final Time getTime() {
         return currentTime;
     }
 
     @Override
-    public void goToStep(final long step) {
+    public final void goToStep(final long step) {
         pauseWhen(() -> getStep() >= step);
     }
 
     @Override
-    public void goToTime(final Time t) {
+    public final void goToTime(final Time t) {
         pauseWhen(() -> getTime().compareTo(t) >= 0);
     }
 
@@ -294,15 +725,13 @@ public final class Engine<T, P extends Position<? extends P>> implements Simulat
     }
 
     @Override
-    public void neighborAdded(final Node<T> node, final Node<T> n) {
-        checkCaller();
-        afterExecutionUpdates.add(new NeigborAdded(node, n));
+    public final void neighborAdded(final Node<T> node, final Node<T> n) {
+        notifyChange(UpdateType.NEIGHBOR_ADDED, node, n);
     }
 
     @Override
-    public void neighborRemoved(final Node<T> node, final Node<T> n) {
-        checkCaller();
-        afterExecutionUpdates.add(new NeigborRemoved(node, n));
+    public final void neighborRemoved(final Node<T> node, final Node<T> n) {
+        notifyChange(UpdateType.NEIGHBOR_REMOVED, node, n);
     }
 
     private void newStatus(final Status next) {
@@ -315,88 +744,137 @@ public final class Engine<T, P extends Position<? extends P>> implements Simulat
     }
 
     @Override
-    public void nodeAdded(final Node<T> node) {
-        checkCaller();
-        afterExecutionUpdates.add(new Addition(node));
+    public final void nodeAdded(final Node<T> node) {
+        notifyChange(UpdateType.ADDITION, node, null);
     }
 
     @Override
-    public void nodeMoved(final Node<T> node) {
-        checkCaller();
-        afterExecutionUpdates.add(new Movement(node));
+    public final void nodeMoved(final Node<T> node) {
+        notifyChange(UpdateType.MOVEMENT, node, null);
     }
 
     @Override
-    public void nodeRemoved(final Node<T> node, final Neighborhood<T> oldNeighborhood) {
-        checkCaller();
-        afterExecutionUpdates.add(new Removal(node));
+    public final void nodeRemoved(final Node<T> node, final Neighborhood<T> oldNeighborhood) {
+        notifyChange(UpdateType.REMOVAL, node, null);
     }
 
     @Override
-    public void pause() {
+    public final void pause() {
         newStatus(PAUSED);
     }
 
     @Override
-    public void play() {
+    public final void play() {
         newStatus(RUNNING);
     }
 
-    private Stream<Reaction<T>> reactionsToUpdateAfterExecution() {
-        return afterExecutionUpdates.stream()
-            .flatMap(Update::getReactionsToUpdate)
-            .distinct();
+    private void notifyChange(final UpdateType type, final Node<T> source, final Node<T> target) {
+        if (concurrentExecutions.get() > 0) {
+            final DeferredChanges<T> changes = deferredChanges.get();
+            if (changes != null) {
+                changes.record(type, source, target);
+                return;
+            }
+        }
+        checkCaller();
+        enqueueUpdate(type, source, target);
+    }
+
+    private void enqueueUpdate(final UpdateType type, final Node<T> source, final Node<T> target) {
+        if (pendingUpdates == updatePool.size()) {
+            updatePool.add(new Update());
+        }
+        updatePool.get(pendingUpdates++).set(type, source, target);
+    }
+
+    private void performPendingChanges() {
+        if (profiler == null) {
+            applyPendingChanges();
+        } else {
+            final EngineEvents.TopologyUpdate event = new EngineEvents.TopologyUpdate();
+            event.begin();
+            final int changes = pendingUpdates;
+            final long start = System.nanoTime();
+            applyPendingChanges();
+            profiler.topologyUpdated(changes, System.nanoTime() - start);
+            event.complete(changes);
+        }
+    }
+
+    private void applyPendingChanges() {
+        for (int i = 0; i < pendingUpdates; i++) {
+            final Update update = updatePool.get(i);
+            update.performChanges();
+            update.set(null, null, null);
+        }
+        pendingUpdates = 0;
+    }
+
+    private void updateCollectedReactions(final int from) {
+        for (int i = from; i < stepUpdates.size(); i++) {
+            updateReaction(stepUpdates.get(i));
+        }
     }
 
     private void processCommand(final CheckedRunnable command) throws Throwable {
         command.run();
         // Update all reactions before applying dependency graph updates
-        final Set<Reaction<T>> updated = new LinkedHashSet<>();
-        reactionsToUpdateAfterExecution().forEach(r -> {
-            updated.add(r);
-            updateReaction(r);
-        });
+        for (int i = 0; i < pendingUpdates; i++) {
+            updatePool.get(i).collectReactionsToUpdate();
+        }
+        updateCollectedReactions(0);
         // Now update the dependency graph as needed
-        afterExecutionUpdates.forEach(Update::performChanges);
-        afterExecutionUpdates.clear();
-        // Now update the new reactions
-        reactionsToUpdateAfterExecution().forEach(r -> {
-            if (!updated.contains(r)) {
-                updateReaction(r);
-            }
-        });
+        performPendingChanges();
+        stepUpdates.clear();
     }
 
     @Override
-    public void removeOutputMonitor(final OutputMonitor<T, P> op) {
+    public final void removeOutputMonitor(final OutputMonitor<T, P> op) {
         monitorLock.acquireUninterruptibly(ALL_PERMITS);
         monitors.remove(op);
         monitorLock.release(ALL_PERMITS);
     }
 
     @Override
-    public void run() {
+    public final void run() {
+        runSlice(Long.MAX_VALUE);
+    }
+
+    /**
+     * Runs the simulation for at most the provided number of steps, and then
+     * returns, so that the calling thread can do something else in the
+     * meanwhile (e.g., run a slice of another simulation). The first slice
+     * initializes the simulation, and the slice during which the simulation
+     * terminates notifies the {@link OutputMonitor}s. Slices can get executed
+     * by different threads, as long as they are not executed concurrently and
+     * their executions are ordered by a happens-before relation (as it is the
+     * case for tasks submitted in sequence to an executor). Running a single
+     * slice of unbounded size is equivalent to {@link #run()}.
+     *
+     * @param steps
+     *            the maximum number of steps to perform
+     * @return true if the simulation is not over, and another slice should
+     *         be run
+     */
+    public final boolean runSlice(final long steps) {
         synchronized (environment) {
-            myThread = Thread.currentThread();
-            finalizeConstructor();
-            status = Status.READY;
-            final long currentThread = Thread.currentThread().getId();
-            L.trace("Thread {} started running.", currentThread);
-            monitorLock.acquireUninterruptibly();
-            for (final OutputMonitor<T, P> m : monitors) {
-                m.initialized(environment);
+            if (completed) {
+                return false;
             }
-            monitorLock.release();
+            myThread = Thread.currentThread();
             try {
+                if (status == Status.INIT) {
+                    initialize();
+                }
                 while (status.equals(Status.READY)) {
                     idleProcessSingleCommand();
                 }
-                while (status != TERMINATED && currentStep < finalStep && currentTime.compareTo(finalTime) < 0) {
+                for (long slice = 0; slice < steps && !isOver(); slice++) {
                     while (!commands.isEmpty()) {
                         processCommand(commands.poll());
                     }
                     if (status.equals(RUNNING)) {
-                        doStep();
+                        step();
                     }
                     while (status.equals(PAUSED)) {
                         idleProcessSingleCommand();
@@ -405,7 +883,9 @@ public final class Engine<T, P extends Position<? extends P>> implements Simulat
             } catch (Throwable e) { // NOPMD: forced by CheckedRunnable
                 error = Optional.of(e);
                 L.error("The simulation engine crashed.", e);
-            } finally {
+            }
+            if (error.isPresent() || isOver()) {
+                completed = true;
                 status = TERMINATED;
                 commands.clear();
                 monitorLock.acquireUninterruptibly();
@@ -414,7 +894,38 @@ public final class Engine<T, P extends Position<? extends P>> implements Simulat
                 }
                 monitorLock.release();
             }
+            return !completed;
+        }
+    }
+
+    private void initialize() {
+        finalizeConstructor();
+        status = Status.READY;
+        final long currentThread = Thread.currentThread().getId();
+        L.trace("Thread {} started running.", currentThread);
+        monitorLock.acquireUninterruptibly();
+        for (final OutputMonitor<T, P> m : monitors) {
+            m.initialized(environment);
         }
+        monitorLock.release();
+    }
+
+    private boolean isOver() {
+        return status == TERMINATED || currentStep >= finalStep || currentTimeAsDouble >= finalTimeAsDouble;
+    }
+
+    private void step() {
+        stepping = true;
+        if (profiler == null) {
+            doStep();
+        } else {
+            final EngineEvents.Step event = new EngineEvents.Step();
+            event.begin();
+            final long firstStep = currentStep;
+            doStep();
+            event.complete(firstStep, currentStep - firstStep, currentTimeAsDouble);
+        }
+        stepping = false;
     }
 
     private void pauseWhen(final BooleanSupplier condition) {
@@ -443,7 +954,7 @@ public final class Engine<T, P extends Position<? extends P>> implements Simulat
     }
 
     @Override
-    public void schedule(final CheckedRunnable r) {
+    public final void schedule(final CheckedRunnable r) {
         if (getStatus().equals(TERMINATED)) {
             throw new IllegalStateException("This simulation is terminated and can not get resumed.");
         }
@@ -457,149 +968,193 @@ public final class Engine<T, P extends Position<? extends P>> implements Simulat
     }
 
     @Override
-    public void terminate() {
+    public final void terminate() {
         newStatus(TERMINATED);
     }
 
     @Override
-    public String toString() {
+    public final String toString() {
         return getClass().getSimpleName() + " t: " + getTime() + ", s: " + getStep();
     }
 
-    private void updateReaction(final Reaction<T> r) {
-        final Time t = r.getTau();
+    /**
+     * Updates a reaction depending on the one just executed, and notifies the {@link Scheduler} if its putative
+     * time changed. Engines that do not follow the putative times of the reactions can override this method.
+     *
+     * @param r the reaction to update
+     */
+    protected void updateReaction(final Reaction<T> r) {
+        final double t = r.getTauAsDouble();
         r.update(currentTime, false, environment);
-        if (!r.getTau().equals(t)) {
+        if (r.getTauAsDouble() != t) {
             scheduler.updateReaction(r);
         }
     }
 
     @Override
-    public Status waitFor(final Status next, final long timeout, final TimeUnit tu) {
+    public final Status waitFor(final Status next, final long timeout, final TimeUnit tu) {
         return statusLocks.get(next).waitFor(next, timeout, tu);
     }
 
-    // CHECKSTYLE: FinalClassCheck OFF
-    private class Update {
-        private final Node<T> source;
-
-        private Update(final Node<T> source) {
-            this.source = source;
-        }
-
-        public final Stream<Reaction<T>> getReactionsRelatedTo(final Node<T> source, final Neighborhood<T> neighborhood) {
-            return Stream.of(
-                    source.getReactions().stream(),
-                    neighborhood.getNeighbors().stream()
-                            .flatMap(node -> node.getReactions().stream())
-                            .filter(it -> it.getInputContext() == Context.NEIGHBORHOOD),
-                    dependencyGraph.globalInputContextReactions().stream())
-                .reduce(Stream.empty(), Stream::concat);
-        }
-
-        public Stream<Reaction<T>> getReactionsToUpdate() {
-            return Stream.empty();
-        }
-
-        public void performChanges() { }
-
-        protected final Node<T> getSource() {
-            return source;
-        }
-    }
-
-    private final class Movement extends Update {
-
-        private Movement(final Node<T> source) {
-            super(source);
-        }
-
-        @Override
-        public Stream<Reaction<T>> getReactionsToUpdate() {
-            return getReactionsRelatedTo(getSource(), environment.getNeighborhood(getSource()))
-                    .filter(it -> it.getInboundDependencies().stream()
-                            .anyMatch(dependency -> dependency.dependsOn(Dependency.MOVEMENT)));
+    private static final class Snapshot<T, P extends Position<? extends P>> implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final Environment<T, P> environment;
+        private final Time time;
+        private final long step;
+        private final boolean initialized;
+
+        private Snapshot(final Environment<T, P> environment, final Time time, final long step, final boolean initialized) {
+            this.environment = environment;
+            this.time = time;
+            this.step = step;
+            this.initialized = initialized;
         }
-
     }
 
-    private final class Removal extends Update {
+    private static final class ReseedingInputStream extends ObjectInputStream {
+        private final long seed;
+        private int generators;
 
-        private Removal(final Node<T> source) {
-            super(source);
+        private ReseedingInputStream(final InputStream input, final long seed) throws IOException {
+            super(input);
+            this.seed = seed;
+            enableResolveObject(true);
         }
 
         @Override
-        public void performChanges() {
-            for (final Reaction<T> r : getSource().getReactions()) {
-                dependencyGraph.removeDependencies(r);
-                scheduler.removeReaction(r);
+        protected Object resolveObject(final Object obj) {
+            if (obj instanceof RandomGenerator) {
+                // Distinct generators get distinct seeds, in the (deterministic) deserialization order
+                ((RandomGenerator) obj).setSeed(new int[] { (int) seed, (int) (seed >>> 32), generators });
+                generators++;
             }
+            return obj;
         }
     }
 
-    private final class Addition extends Update {
-        private Addition(final Node<T> source) {
-            super(source);
-        }
-        @Override
-        public void performChanges() {
-            getSource().getReactions().forEach(Engine.this::scheduleReaction);
+    private enum UpdateType { ADDITION, MOVEMENT, NEIGHBOR_ADDED, NEIGHBOR_REMOVED, REMOVAL }
+
+    /**
+     * The topological changes notified while executing a reaction through
+     * {@link Engine#tryFireConcurrently(Reaction)}, in notification order.
+     *
+     * @param <T> concentration type
+     */
+    protected static final class DeferredChanges<T> {
+        private final List<UpdateType> types = new ArrayList<>();
+        private final List<Node<T>> sources = new ArrayList<>();
+        private final List<Node<T>> targets = new ArrayList<>();
+
+        private void record(final UpdateType type, final Node<T> source, final Node<T> target) {
+            types.add(type);
+            sources.add(source);
+            targets.add(target);
         }
     }
 
-    private class NeighborhoodChanged extends Update {
-
-        private final Node<T> target;
+    /**
+     * A pooled record of a topological change, referring to the source node and, for
+     * neighborhood changes, to the target node.
+     */
+    private final class Update {
+        private UpdateType type;
+        private Node<T> source;
+        private Node<T> target;
 
-        private NeighborhoodChanged(final Node<T> source, final Node<T> target) {
-            super(source);
+        private void set(final UpdateType type, final Node<T> source, final Node<T> target) {
+            this.type = type;
+            this.source = source;
             this.target = target;
         }
 
-        public Node<T> getTarget() {
-            return target;
+        /**
+         * Collects the reactions that must be updated because of this change.
+         */
+        private void collectReactionsToUpdate() {
+            switch (type) {
+                case MOVEMENT:
+                    collectMovementDependent(source.getReactions(), false);
+                    final ListSet<? extends Node<T>> neighbors = environment.getNeighborhood(source).getNeighbors();
+                    for (int i = 0; i < neighbors.size(); i++) {
+                        collectMovementDependent(neighbors.get(i).getReactions(), true);
+                    }
+                    collectMovementDependent(dependencyGraph.globalInputContextReactions(), false);
+                    break;
+                case NEIGHBOR_ADDED:
+                case NEIGHBOR_REMOVED:
+                    // source, target, and all their neighbors are candidates.
+                    collectNeighborhoodDependent(source);
+                    collectNeighborhoodDependent(target);
+                    collectNeighborhoodDependentNeighbors(source);
+                    collectNeighborhoodDependentNeighbors(target);
+                    // Global reactions
+                    final ListSet<Reaction<T>> globals = dependencyGraph.globalInputContextReactions();
+                    for (int i = 0; i < globals.size(); i++) {
+                        stepUpdates.add(globals.get(i));
+                    }
+                    break;
+                default:
+            }
         }
 
-        @Override
-        public Stream<Reaction<T>> getReactionsToUpdate() {
-            return Stream.of(
-                    Stream.concat(
-                            // source, target, and all their neighbors are candidates.
-                            Stream.of(getSource(), target),
-                            Stream.of(environment.getNeighborhood(getSource()), environment.getNeighborhood(getTarget()))
-                                .flatMap(it -> it.getNeighbors().stream()))
-                        .distinct()
-                        .flatMap(it -> it.getReactions().stream())
-                        .filter(it -> it.getInputContext() == Context.NEIGHBORHOOD),
-                        // Global reactions
-                    dependencyGraph.globalInputContextReactions().stream())
-                .reduce(Stream.empty(), Stream::concat);
+        private void collectMovementDependent(final List<Reaction<T>> reactions, final boolean neighborhoodOnly) {
+            for (int i = 0; i < reactions.size(); i++) {
+                final Reaction<T> reaction = reactions.get(i);
+                if ((!neighborhoodOnly || reaction.getInputContext() == Context.NEIGHBORHOOD)
+                        && dependsOnMovement(reaction)) {
+                    stepUpdates.add(reaction);
+                }
+            }
         }
-    }
-
-    private final class NeigborAdded extends NeighborhoodChanged {
 
-        private NeigborAdded(final Node<T> source, final Node<T> target) {
-            super(source, target);
+        private void collectNeighborhoodDependentNeighbors(final Node<T> node) {
+            final ListSet<? extends Node<T>> neighbors = environment.getNeighborhood(node).getNeighbors();
+            for (int i = 0; i < neighbors.size(); i++) {
+                collectNeighborhoodDependent(neighbors.get(i));
+            }
         }
 
-        @Override
-        public void performChanges() {
-            dependencyGraph.addNeighbor(getSource(), getTarget());
+        private void collectNeighborhoodDependent(final Node<T> node) {
+            final List<Reaction<T>> reactions = node.getReactions();
+            for (int i = 0; i < reactions.size(); i++) {
+                final Reaction<T> reaction = reactions.get(i);
+                if (reaction.getInputContext() == Context.NEIGHBORHOOD) {
+                    stepUpdates.add(reaction);
+                }
+            }
         }
-    }
-
-    private final class NeigborRemoved extends NeighborhoodChanged {
 
-        private NeigborRemoved(final Node<T> source, final Node<T> target) {
-            super(source, target);
+        private void performChanges() {
+            switch (type) {
+                case ADDITION:
+                    source.getReactions().forEach(Engine.this::scheduleReaction);
+                    break;
+                case REMOVAL:
+                    for (final Reaction<T> r : source.getReactions()) {
+                        dependencyGraph.removeDependencies(r);
+                        scheduler.removeReaction(r);
+                        stepUpdates.forget(r);
+                    }
+                    break;
+                case NEIGHBOR_ADDED:
+                    dependencyGraph.addNeighbor(source, target);
+                    break;
+                case NEIGHBOR_REMOVED:
+                    dependencyGraph.removeNeighbor(source, target);
+                    break;
+                default:
+            }
         }
+    }
 
-        @Override
-        public void performChanges() {
-            dependencyGraph.removeNeighbor(getSource(), getTarget());
+    private static boolean dependsOnMovement(final Reaction<?> reaction) {
+        final ListSet<? extends Dependency> dependencies = reaction.getInboundDependencies();
+        for (int i = 0; i < dependencies.size(); i++) {
+            if (dependencies.get(i).dependsOn(Dependency.MOVEMENT)) {
+                return true;
+            }
         }
+        return false;
     }
 
     private final class SynchBox {
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.implementations;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events emitted by a profiled {@link Engine}. They show up in recordings under the
+ * "Alchemist" category, and are only created when profiling is enabled (see {@link Engine#enableProfiling()}).
+ */
+final class EngineEvents {
+
+    private static final String CATEGORY = "Alchemist";
+
+    private EngineEvents() {
+    }
+
+    /**
+     * A simulation step (or, for the {@link ParallelEngine}, a group of simultaneous steps).
+     */
+    @Name("it.unibo.alchemist.Step")
+    @Label("Simulation Step")
+    @Category(CATEGORY)
+    static final class Step extends Event {
+        @Label("First Step")
+        private long firstStep;
+        @Label("Steps")
+        @Description("Number of steps performed")
+        private long steps;
+        @Label("Simulation Time")
+        private double time;
+
+        void complete(final long firstStep, final long steps, final double time) {
+            this.firstStep = firstStep;
+            this.steps = steps;
+            this.time = time;
+            commit();
+        }
+    }
+
+    /**
+     * The update of the reactions depending on an executed one.
+     */
+    @Name("it.unibo.alchemist.DependencyUpdate")
+    @Label("Dependency Update")
+    @Category(CATEGORY)
+    static final class DependencyUpdate extends Event {
+        @Label("Reaction Class")
+        private String reaction;
+        @Label("Fan-out")
+        @Description("Number of outbound dependencies of the executed reaction")
+        private int fanOut;
+
+        void complete(final Class<?> reaction, final int fanOut) {
+            this.reaction = reaction.getName();
+            this.fanOut = fanOut;
+            commit();
+        }
+    }
+
+    /**
+     * The application of the topological changes (node additions, movements, removals and neighborhood changes)
+     * to the dependency graph.
+     */
+    @Name("it.unibo.alchemist.TopologyUpdate")
+    @Label("Topology Update")
+    @Category(CATEGORY)
+    static final class TopologyUpdate extends Event {
+        @Label("Changes")
+        private int changes;
+
+        void complete(final int changes) {
+            this.changes = changes;
+            commit();
+        }
+    }
+
+    /**
+     * The notification of a step to the output monitors.
+     */
+    @Name("it.unibo.alchemist.MonitorDispatch")
+    @Label("Monitor Dispatch")
+    @Category(CATEGORY)
+    static final class MonitorDispatch extends Event {
+        @Label("Monitors")
+        private int monitors;
+
+        void complete(final int monitors) {
+            this.monitors = monitors;
+            commit();
+        }
+    }
+
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.implementations;
+
+import it.unibo.alchemist.model.interfaces.Reaction;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects, for each class of reaction, how many times it got executed, how many times its conditions
+ * prevented the execution, the average number of reactions depending on it, and the time spent evaluating
+ * its conditions and running its actions.
+ *
+ * An instance is obtained through {@link Engine#enableProfiling()}; engines that are not profiled
+ * do not create one, and do not pay any cost. Counters can be safely read while the simulation is running
+ * (e.g., by an {@link it.unibo.alchemist.boundary.interfaces.OutputMonitor}).
+ */
+public final class EngineProfiler implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final String ROW_FORMAT = "%-40s %12s %12s %10s %14s %14s%n";
+    private final Map<Class<?>, ReactionStatistics> statistics = new ConcurrentHashMap<>();
+    private final LongAdder topologyChanges = new LongAdder();
+    private final LongAdder topologyTime = new LongAdder();
+    private final LongAdder monitorTime = new LongAdder();
+
+    EngineProfiler() {
+    }
+
+    void conditionsChecked(final Reaction<?> reaction, final long nanos, final boolean satisfied) {
+        final ReactionStatistics stats = statisticsOf(reaction);
+        stats.conditionsTime.add(nanos);
+        if (!satisfied) {
+            stats.failedChecks.increment();
+        }
+    }
+
+    void actionsExecuted(final Reaction<?> reaction, final long nanos) {
+        final ReactionStatistics stats = statisticsOf(reaction);
+        stats.actionsTime.add(nanos);
+        stats.executions.increment();
+    }
+
+    void dependenciesUpdated(final Reaction<?> reaction, final int fanOut) {
+        final ReactionStatistics stats = statisticsOf(reaction);
+        stats.dependencyUpdates.increment();
+        stats.fanOut.add(fanOut);
+    }
+
+    void topologyUpdated(final int changes, final long nanos) {
+        topologyChanges.add(changes);
+        topologyTime.add(nanos);
+    }
+
+    void monitorsNotified(final long nanos) {
+        monitorTime.add(nanos);
+    }
+
+    private ReactionStatistics statisticsOf(final Reaction<?> reaction) {
+        final Class<?> type = reaction.getClass();
+        final ReactionStatistics stats = statistics.get(type);
+        return stats == null ? statistics.computeIfAbsent(type, it -> new ReactionStatistics()) : stats;
+    }
+
+    /**
+     * @return a read-only view of the statistics collected so far, by class of reaction
+     */
+    public Map<Class<?>, ReactionStatistics> getStatistics() {
+        return Collections.unmodifiableMap(statistics);
+    }
+
+    /**
+     * @return the number of topological changes (node additions, movements, removals and neighborhood changes)
+     *         applied to the dependency graph
+     */
+    public long getTopologyChanges() {
+        return topologyChanges.sum();
+    }
+
+    /**
+     * @return the time spent applying topological changes to the dependency graph, in nanoseconds
+     */
+    public long getTopologyTime() {
+        return topologyTime.sum();
+    }
+
+    /**
+     * @return the time spent notifying the output monitors, in nanoseconds
+     */
+    public long getMonitorTime() {
+        return monitorTime.sum();
+    }
+
+    /**
+     * @return a human readable table of the statistics, with the most expensive reactions first
+     */
+    public String summary() {
+        final StringBuilder result = new StringBuilder(String.format(Locale.ROOT, ROW_FORMAT,
+                "Reaction", "Executions", "Failures", "Fan-out", "Conditions ms", "Actions ms"));
+        statistics.entrySet().stream()
+                .sorted(Comparator.comparingLong(
+                        (Map.Entry<Class<?>, ReactionStatistics> it) -> it.getValue().getTotalTime()).reversed())
+                .forEach(it -> {
+                    final ReactionStatistics stats = it.getValue();
+                    result.append(String.format(Locale.ROOT, ROW_FORMAT,
+                            it.getKey().getSimpleName(),
+                            stats.getExecutions(),
+                            stats.getFailedChecks(),
+                            String.format(Locale.ROOT, "%.2f", stats.getAverageFanOut()),
+                            TimeUnit.NANOSECONDS.toMillis(stats.getConditionsTime()),
+                            TimeUnit.NANOSECONDS.toMillis(stats.getActionsTime())));
+                });
+        return result
+                .append("Topology changes: ").append(getTopologyChanges())
+                .append(", applied in ").append(TimeUnit.NANOSECONDS.toMillis(getTopologyTime())).append(" ms")
+                .append(System.lineSeparator())
+                .append("Output monitors: ").append(TimeUnit.NANOSECONDS.toMillis(getMonitorTime())).append(" ms")
+                .toString();
+    }
+
+    @Override
+    public String toString() {
+        return summary();
+    }
+
+    /**
+     * Statistics about a class of reactions.
+     */
+    public static final class ReactionStatistics implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder failedChecks = new LongAdder();
+        private final LongAdder dependencyUpdates = new LongAdder();
+        private final LongAdder fanOut = new LongAdder();
+        private final LongAdder conditionsTime = new LongAdder();
+        private final LongAdder actionsTime = new LongAdder();
+
+        private ReactionStatistics() {
+        }
+
+        /**
+         * @return the number of times the reactions got executed
+         */
+        public long getExecutions() {
+            return executions.sum();
+        }
+
+        /**
+         * @return the number of times the reactions were scheduled, but their conditions prevented the execution
+         */
+        public long getFailedChecks() {
+            return failedChecks.sum();
+        }
+
+        /**
+         * @return the average number of reactions depending on the executed ones
+         */
+        public double getAverageFanOut() {
+            final long updates = dependencyUpdates.sum();
+            return updates == 0 ? 0 : fanOut.sum() / (double) updates;
+        }
+
+        /**
+         * @return the time spent evaluating the conditions, in nanoseconds
+         */
+        public long getConditionsTime() {
+            return conditionsTime.sum();
+        }
+
+        /**
+         * @return the time spent running the actions, in nanoseconds
+         */
+        public long getActionsTime() {
+            return actionsTime.sum();
+        }
+
+        /**
+         * @return the time spent in conditions and actions, in nanoseconds
+         */
+        public long getTotalTime() {
+            return getConditionsTime() + getActionsTime();
+        }
+
+        @Override
+        public String toString() {
+            return "executions=" + getExecutions() + ", failures=" + getFailedChecks()
+                    + ", fan-out=" + getAverageFanOut()
+                    + ", conditions=" + getConditionsTime() + "ns, actions=" + getActionsTime() + "ns";
+        }
+    }
+
+}
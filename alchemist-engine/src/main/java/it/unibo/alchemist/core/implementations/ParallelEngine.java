@@ -0,0 +1,486 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.implementations;
+
+import com.google.common.collect.Sets;
+import it.unibo.alchemist.core.interfaces.Scheduler;
+import it.unibo.alchemist.core.interfaces.Status;
+import it.unibo.alchemist.model.interfaces.Action;
+import it.unibo.alchemist.model.interfaces.Context;
+import it.unibo.alchemist.model.interfaces.Dependency;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Position;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import it.unibo.alchemist.model.interfaces.Time;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An {@link Engine} that executes concurrently the simultaneous reactions that are independent of each other.
+ *
+ * At each step, all the reactions scheduled at the time of the next one are retrieved from the scheduler.
+ * Those that are neither connected to other simultaneous reactions in the dependency graph nor write on the
+ * same nodes of any other simultaneous reaction are executed in advance, in parallel. Each of them is then
+ * committed as a separate step (dependency update, rescheduling and monitor notification), in the same order
+ * the sequential {@link Engine} would have used, interleaved with the sequential execution of the remaining
+ * simultaneous reactions and with the processing of the commands. Reactions executed in advance are always
+ * committed, even if a command changes their putative time in the meanwhile, unless a command removes their node.
+ * If any of the simultaneous reactions has a global context, or has an {@link Action} that
+ * {@link Action#mayChangeTopology() may change the topology} of the environment, the whole step is performed
+ * sequentially.
+ *
+ * The evolution is the same of the sequential engine for the same seed, provided that:
+ * <ul>
+ * <li>reactions do not share random generators, which must be declared through
+ * {@link #declareIndependentRandomGenerators()} (e.g., when the simulation file enables random streams):
+ * until then, every reaction is executed sequentially;</li>
+ * <li>nodes tolerate concurrent access to distinct molecules.</li>
+ * </ul>
+ * {@link it.unibo.alchemist.boundary.interfaces.OutputMonitor}s are notified on the simulation thread when each
+ * reaction is committed, hence they observe the same steps, times and reactions, in the same order, of the
+ * sequential engine. However, a reaction executed in advance changes the environment before the steps preceding
+ * its own are committed: within a batch of simultaneous reactions, monitors may observe the effects of those
+ * not yet committed. Once the batch is over, the environment is the same of the sequential engine.
+ *
+ * With {@link #enableSynchronousRounds()}, simultaneous reactions whose time distributions are all
+ * {@link it.unibo.alchemist.model.interfaces.TimeDistribution#isPeriodic() periodic} (as it is the case for
+ * aggregate programs driven by Dirac combs with the same phase) are instead processed as a single round:
+ * the independent ones are executed in parallel and the others sequentially, then the reactions depending
+ * on any of them are updated once per round, and all of them are rescheduled at once.
+ *
+ * @param <T> concentration type
+ * @param <P> {@link Position} type
+ */
+public final class ParallelEngine<T, P extends Position<? extends P>> extends Engine<T, P> {
+
+    /**
+     * Batches of independent reactions smaller than this size are executed sequentially.
+     */
+    private static final int MINIMUM_BATCH = 2;
+    /**
+     * Maximum number of reactions executed by a single fork/join task.
+     */
+    private static final int TASK_SIZE = 16;
+    private final ForkJoinPool pool;
+    /*
+     * Reactions executed in advance and not yet committed, with the changes they caused (null if not executed)
+     */
+    private final Map<Reaction<T>, DeferredChanges<T>> staged = new IdentityHashMap<>();
+    /*
+     * The reactions executed in advance, in the order the scheduler returned them
+     */
+    private final Queue<Reaction<T>> stagedOrder = new ArrayDeque<>();
+    private Time stagedTime;
+    private boolean synchronousRounds;
+    private boolean independentRandomGenerators;
+
+    /**
+     * Builds a parallel simulation running on the common {@link ForkJoinPool}.
+     *
+     * @param e
+     *            the environment at the initial time
+     * @param t
+     *            the maximum time to reach
+     */
+    public ParallelEngine(final Environment<T, P> e, final Time t) {
+        this(e, Long.MAX_VALUE, t);
+    }
+
+    /**
+     * Builds a parallel simulation running on the common {@link ForkJoinPool}.
+     *
+     * @param e
+     *            the environment at the initial time
+     * @param maxSteps
+     *            the maximum number of steps to do
+     * @param t
+     *            the maximum time to reach
+     */
+    public ParallelEngine(final Environment<T, P> e, final long maxSteps, final Time t) {
+        this(e, maxSteps, t, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Builds a parallel simulation running on the provided {@link ForkJoinPool}.
+     *
+     * @param e
+     *            the environment at the initial time
+     * @param maxSteps
+     *            the maximum number of steps to do
+     * @param t
+     *            the maximum time to reach
+     * @param pool
+     *            the pool where independent reactions get executed
+     */
+    public ParallelEngine(final Environment<T, P> e, final long maxSteps, final Time t, final ForkJoinPool pool) {
+        this(e, maxSteps, t, new ArrayIndexedPriorityQueue<>(), pool);
+    }
+
+    /**
+     * Builds a parallel simulation running on the provided {@link ForkJoinPool}
+     * and organizing the reactions with the provided {@link Scheduler}.
+     *
+     * @param e
+     *            the environment at the initial time
+     * @param maxSteps
+     *            the maximum number of steps to do
+     * @param t
+     *            the maximum time to reach
+     * @param scheduler
+     *            the {@link Scheduler} to use
+     * @param pool
+     *            the pool where independent reactions get executed
+     */
+    public ParallelEngine(
+            final Environment<T, P> e,
+            final long maxSteps,
+            final Time t,
+            final Scheduler<T> scheduler,
+            final ForkJoinPool pool
+    ) {
+        super(e, maxSteps, t, scheduler);
+        this.pool = Objects.requireNonNull(pool);
+    }
+
+    @Override
+    protected void doStep() {
+        if (!staged.isEmpty()) {
+            commitNext();
+            return;
+        }
+        if (!synchronousRounds && !independentRandomGenerators) {
+            super.doStep();
+            return;
+        }
+        final List<Reaction<T>> simultaneous = getScheduler().getNextBatch();
+        if (simultaneous.size() < MINIMUM_BATCH
+                || simultaneous.get(0).getTauAsDouble() >= getFinalTime().toDouble()
+                || getFinalStep() - getStep() < simultaneous.size()) {
+            super.doStep();
+        } else if (synchronousRounds && isRound(simultaneous)) {
+            executeRound(simultaneous);
+        } else if (!independentRandomGenerators) {
+            super.doStep();
+        } else {
+            final List<Reaction<T>> independent = independentReactions(simultaneous);
+            if (independent.size() < MINIMUM_BATCH) {
+                super.doStep();
+            } else {
+                executeInAdvance(independent);
+                commitNext();
+            }
+        }
+    }
+
+    /**
+     * Declares that the reactions do not share random generators with each other (as it is the case when the
+     * simulation file enables random streams), allowing the concurrent execution of independent reactions.
+     * Without this declaration, reactions executed concurrently could draw from the same generator in an
+     * unpredictable order, hence every reaction is executed sequentially.
+     *
+     * @throws IllegalStateException if the simulation has already started
+     */
+    public void declareIndependentRandomGenerators() {
+        if (getStatus() != Status.INIT) {
+            throw new IllegalStateException("Random generators must be declared independent before the simulation starts");
+        }
+        independentRandomGenerators = true;
+    }
+
+    /**
+     * Enables the processing of simultaneous periodic reactions as synchronous rounds. Within a round, a
+     * reaction does not see the dependency updates caused by the other reactions of the round (it still sees
+     * their effects on the environment), and conflicting reactions are executed in the order in which the
+     * {@link Scheduler} returns them, hence the evolution may differ from the one of the sequential engine
+     * when simultaneous reactions write on the same nodes. Output monitors observe the state reached at the end of
+     * the round for every reaction of the round, and commands are processed between rounds. Independent reactions
+     * are executed in parallel only if {@link #declareIndependentRandomGenerators() declared}.
+     *
+     * @throws IllegalStateException if the simulation has already started
+     */
+    public void enableSynchronousRounds() {
+        if (getStatus() != Status.INIT) {
+            throw new IllegalStateException("Synchronous rounds must be enabled before the simulation starts");
+        }
+        synchronousRounds = true;
+    }
+
+    private static boolean isRound(final List<? extends Reaction<?>> simultaneous) {
+        for (final Reaction<?> reaction : simultaneous) {
+            if (!reaction.getTimeDistribution().isPeriodic() || isExclusive(reaction)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void executeRound(final List<Reaction<T>> round) {
+        advanceTimeTo(round.get(0));
+        final List<Reaction<T>> independent = independentReactions(round);
+        final List<Reaction<T>> ordered = new ArrayList<>(round.size());
+        ordered.addAll(independent);
+        if (independent.size() < round.size()) {
+            final Set<Reaction<T>> parallel = Sets.newIdentityHashSet();
+            parallel.addAll(independent);
+            for (final Reaction<T> reaction : round) {
+                if (!parallel.contains(reaction)) {
+                    ordered.add(reaction);
+                }
+            }
+        }
+        final List<DeferredChanges<T>> changes = new ArrayList<>(Collections.nCopies(ordered.size(), null));
+        final boolean[] executed = new boolean[ordered.size()];
+        int sequential = 0;
+        if (independentRandomGenerators && independent.size() >= MINIMUM_BATCH) {
+            pool.invoke(new Execution(ordered, changes, 0, independent.size()));
+            sequential = independent.size();
+        }
+        for (int i = 0; i < ordered.size(); i++) {
+            if (i < sequential) {
+                executed[i] = changes.get(i) != null;
+            } else if (checkConditions(ordered.get(i))) {
+                fire(ordered.get(i));
+                executed[i] = true;
+            }
+        }
+        // Reactions already updated in this round are not updated again
+        for (int i = 0; i < ordered.size(); i++) {
+            if (changes.get(i) != null) {
+                applyDeferredChanges(changes.get(i));
+            }
+            if (executed[i]) {
+                updateDependencies(ordered.get(i));
+            }
+        }
+        rescheduleAll(ordered);
+        for (final Reaction<T> reaction : ordered) {
+            notifyStepDone(reaction);
+            completeStep();
+        }
+    }
+
+    private List<Reaction<T>> independentReactions(final List<Reaction<T>> simultaneous) {
+        final Set<Reaction<T>> batch = Sets.newIdentityHashSet();
+        batch.addAll(simultaneous);
+        final Set<Reaction<T>> conflicting = Sets.newIdentityHashSet();
+        final Map<Node<T>, Reaction<T>> writers = new HashMap<>();
+        for (final Reaction<T> reaction : simultaneous) {
+            if (isExclusive(reaction)) {
+                return List.of();
+            }
+            for (final Reaction<T> dependent : getDependencyGraph().outboundDependencies(reaction)) {
+                if (dependent != reaction && batch.contains(dependent)) {
+                    conflicting.add(reaction);
+                    conflicting.add(dependent);
+                }
+            }
+            claim(writers, conflicting, reaction.getNode(), reaction);
+            if (reaction.getOutputContext() == Context.NEIGHBORHOOD) {
+                for (final Node<T> neighbor : getEnvironment().getNeighborhood(reaction.getNode())) {
+                    claim(writers, conflicting, neighbor, reaction);
+                }
+            }
+        }
+        final List<Reaction<T>> result = new ArrayList<>(simultaneous.size() - conflicting.size());
+        for (final Reaction<T> reaction : simultaneous) {
+            if (!conflicting.contains(reaction)) {
+                result.add(reaction);
+            }
+        }
+        return result;
+    }
+
+    private void executeInAdvance(final List<Reaction<T>> independent) {
+        final List<DeferredChanges<T>> changes = new ArrayList<>(Collections.nCopies(independent.size(), null));
+        pool.invoke(new Execution(independent, changes, 0, independent.size()));
+        stagedTime = independent.get(0).getTau();
+        for (int i = 0; i < independent.size(); i++) {
+            staged.put(independent.get(i), changes.get(i));
+        }
+        stagedOrder.addAll(independent);
+    }
+
+    /*
+     * Commits the next reaction if it has been executed in advance, otherwise performs a regular step
+     */
+    private void commitNext() {
+        final Reaction<T> next = getScheduler().getNext();
+        if (next == null || next.getTauAsDouble() != stagedTime.toDouble()) {
+            /*
+             * The reactions executed in advance are no longer the next ones (e.g., a command changed their
+             * putative times): they changed the environment anyway, hence they get committed in order. Only those
+             * whose node has been removed left the simulation, and get dropped.
+             */
+            final Reaction<T> pending = nextStaged();
+            if (pending == null) {
+                super.doStep();
+            } else {
+                advanceTimeTo(stagedTime);
+                commit(pending);
+            }
+        } else if (staged.containsKey(next)) {
+            advanceTimeTo(next);
+            commit(next);
+        } else {
+            for (final Reaction<T> executed : staged.keySet()) {
+                if (!isRemoved(executed.getNode()) && interfere(next, executed)) {
+                    throw new IllegalStateException(next + "\ngot scheduled at time " + next.getTau()
+                            + " after the simultaneous reaction\n" + executed + "\nhas been executed in advance,"
+                            + " but they interfere: the evolution would differ from the sequential one");
+                }
+            }
+            super.doStep();
+        }
+    }
+
+    private void commit(final Reaction<T> executed) {
+        final DeferredChanges<T> changes = staged.remove(executed);
+        if (staged.isEmpty()) {
+            stagedOrder.clear();
+        }
+        if (changes != null) {
+            applyDeferredChanges(changes);
+            updateDependencies(executed);
+        }
+        rescheduleAndNotify(executed);
+        completeStep();
+    }
+
+    /*
+     * The first reaction executed in advance and not yet committed whose node is still in the environment
+     */
+    private Reaction<T> nextStaged() {
+        while (!stagedOrder.isEmpty()) {
+            final Reaction<T> candidate = stagedOrder.poll();
+            if (staged.containsKey(candidate)) {
+                if (!isRemoved(candidate.getNode())) {
+                    return candidate;
+                }
+                staged.remove(candidate);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected boolean hasUncommittedExecutions() {
+        for (final Reaction<T> executed : staged.keySet()) {
+            if (!isRemoved(executed.getNode())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Depending on the implementation, environments either return null or throw for unknown ids
+     */
+    private boolean isRemoved(final Node<T> node) {
+        try {
+            return getEnvironment().getNodeByID(node.getId()) != node;
+        } catch (final IllegalArgumentException e) {
+            return true;
+        }
+    }
+
+    private boolean interfere(final Reaction<T> first, final Reaction<T> second) {
+        if (isExclusive(first)
+                || getDependencyGraph().outboundDependencies(first).contains(second)
+                || getDependencyGraph().outboundDependencies(second).contains(first)) {
+            return true;
+        }
+        final Map<Node<T>, Reaction<T>> writers = new HashMap<>();
+        final Set<Reaction<T>> conflicting = Sets.newIdentityHashSet();
+        for (final Reaction<T> reaction : List.of(first, second)) {
+            claim(writers, conflicting, reaction.getNode(), reaction);
+            if (reaction.getOutputContext() == Context.NEIGHBORHOOD) {
+                for (final Node<T> neighbor : getEnvironment().getNeighborhood(reaction.getNode())) {
+                    claim(writers, conflicting, neighbor, reaction);
+                }
+            }
+        }
+        return !conflicting.isEmpty();
+    }
+
+    /*
+     * Environments are not thread safe: reactions that may change their topology are never executed concurrently
+     */
+    private static boolean isExclusive(final Reaction<?> reaction) {
+        if (reaction.getInputContext() == Context.GLOBAL
+                || reaction.getOutputContext() == Context.GLOBAL
+                || reaction.getOutboundDependencies().contains(Dependency.MOVEMENT)
+                || reaction.getOutboundDependencies().contains(Dependency.EVERYTHING)) {
+            return true;
+        }
+        for (final Action<?> action : reaction.getActions()) {
+            if (action.mayChangeTopology()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <T> void claim(
+            final Map<Node<T>, Reaction<T>> writers,
+            final Set<Reaction<T>> conflicting,
+            final Node<T> node,
+            final Reaction<T> reaction
+    ) {
+        final Reaction<T> previous = writers.putIfAbsent(node, reaction);
+        if (previous != null && previous != reaction) {
+            conflicting.add(previous);
+            conflicting.add(reaction);
+        }
+    }
+
+    private final class Execution extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final List<Reaction<T>> reactions;
+        private final List<DeferredChanges<T>> changes;
+        private final int from;
+        private final int to;
+
+        private Execution(
+                final List<Reaction<T>> reactions,
+                final List<DeferredChanges<T>> changes,
+                final int from,
+                final int to
+        ) {
+            this.reactions = reactions;
+            this.changes = changes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TASK_SIZE) {
+                for (int i = from; i < to; i++) {
+                    changes.set(i, tryFireConcurrently(reactions.get(i)));
+                }
+            } else {
+                final int middle = (from + to) >>> 1;
+                invokeAll(new Execution(reactions, changes, from, middle), new Execution(reactions, changes, middle, to));
+            }
+        }
+    }
+
+}
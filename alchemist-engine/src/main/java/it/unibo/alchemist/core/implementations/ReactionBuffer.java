@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.implementations;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import it.unibo.alchemist.model.interfaces.Reaction;
+
+import java.util.Arrays;
+
+/**
+ * A reusable, insertion-ordered sequence of distinct reactions.
+ * Duplicates are detected by stamping each reaction with the current epoch, which gets
+ * increased when the buffer is cleared: once the buffer and the stamp table reached
+ * their steady-state size, neither adding reactions nor clearing allocates.
+ * Stamps of reactions that leave the simulation should be dropped via {@link #forget(Reaction)}.
+ *
+ * @param <T> concentration type
+ */
+final class ReactionBuffer<T> {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int NO_EPOCH = 0;
+    private final TObjectIntMap<Reaction<T>> stamps =
+            new TObjectIntHashMap<>(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, NO_EPOCH);
+    private Reaction<T>[] reactions = newReactions(INITIAL_CAPACITY);
+    private int size;
+    private int epoch = NO_EPOCH + 1;
+
+    /**
+     * @param reaction the reaction to append
+     * @return true if the reaction was appended, false if it was already in the buffer
+     */
+    boolean add(final Reaction<T> reaction) {
+        if (stamps.put(reaction, epoch) == epoch) {
+            return false;
+        }
+        if (size == reactions.length) {
+            reactions = Arrays.copyOf(reactions, 2 * size);
+        }
+        reactions[size++] = reaction;
+        return true;
+    }
+
+    /**
+     * @param reaction the reaction to look for
+     * @return true if the reaction has been added since the last {@link #clear()}
+     */
+    boolean contains(final Reaction<T> reaction) {
+        return stamps.get(reaction) == epoch;
+    }
+
+    /**
+     * @param index the position of the reaction
+     * @return the reaction added as index-th since the last {@link #clear()}
+     */
+    Reaction<T> get(final int index) {
+        return reactions[index];
+    }
+
+    /**
+     * @return the number of reactions added since the last {@link #clear()}
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Empties the buffer.
+     */
+    void clear() {
+        Arrays.fill(reactions, 0, size, null);
+        size = 0;
+        epoch++;
+        if (epoch == NO_EPOCH) {
+            // Overflow: old stamps could be mistaken for current ones
+            stamps.clear();
+            epoch++;
+        }
+    }
+
+    /**
+     * Drops the stamp of a reaction, which will no longer be added.
+     *
+     * @param reaction the reaction to forget
+     */
+    void forget(final Reaction<T> reaction) {
+        stamps.remove(reaction);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Reaction<T>[] newReactions(final int capacity) {
+        return (Reaction<T>[]) new Reaction<?>[capacity];
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(Arrays.copyOf(reactions, size));
+    }
+
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.implementations;
+
+import it.unibo.alchemist.core.interfaces.Scheduler;
+import it.unibo.alchemist.model.interfaces.Reaction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A hybrid {@link Scheduler}: reactions whose time distribution is
+ * {@link it.unibo.alchemist.model.interfaces.TimeDistribution#isPeriodic() periodic} (e.g., Dirac combs)
+ * are kept in a hierarchical timing wheel, where they get scheduled in O(1), while all the other reactions
+ * are kept in an {@link ArrayIndexedPriorityQueue}. The next reaction is the earliest of the two.
+ *
+ * The wheel divides the time in ticks of fixed width, and has four levels of 256 slots. Each slot of the first
+ * level holds the reactions of one of the next ticks, sorted by time; each slot of the following levels holds
+ * the reactions of a span of ticks 256 times wider than the previous level, and gets redistributed on the lower
+ * levels when the wheel reaches it. Reactions beyond the last level wait in an overflow list.
+ * Periodic reactions scheduled before the current position of the wheel (e.g., added while the wheel is
+ * ahead of the simulation time because the next reaction is in the heap) are kept in the heap until their
+ * next update.
+ *
+ * The tick width should be a small fraction of the typical period of the periodic reactions:
+ * reactions falling in the same tick get sorted on insertion.
+ *
+ * @param <T> concentration type
+ */
+public final class TimingWheelQueue<T> implements Scheduler<T> {
+
+    /**
+     * Width of the ticks used by the default constructor.
+     */
+    private static final double DEFAULT_TICK = 0.001;
+    private static final int BITS = 8;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    /*
+     * The overflow list is stored as the only slot of an additional level
+     */
+    private static final int OVERFLOW = LEVELS;
+
+    private final ArrayIndexedPriorityQueue<T> heap = new ArrayIndexedPriorityQueue<>();
+    private final Map<Reaction<T>, Entry<T>> entries = new HashMap<>();
+    private final Entry<T>[][] heads = newLevels();
+    private final Entry<T>[][] tails = newLevels();
+    private final double tick;
+    /*
+     * No reaction in the wheel is scheduled before this tick
+     */
+    private long cursor;
+    private int size;
+
+    /**
+     * Builds a scheduler whose wheel has ticks of 0.001 time units.
+     */
+    public TimingWheelQueue() {
+        this(DEFAULT_TICK);
+    }
+
+    /**
+     * @param tick
+     *            the width of the ticks of the wheel, in simulated time units
+     */
+    public TimingWheelQueue(final double tick) {
+        if (!(tick > 0) || !Double.isFinite(tick)) {
+            throw new IllegalArgumentException("Invalid tick width: " + tick);
+        }
+        this.tick = tick;
+    }
+
+    @Override
+    public void addReaction(final Reaction<T> r) {
+        if (fitsInWheel(r)) {
+            insert(new Entry<>(r));
+        } else {
+            heap.addReaction(r);
+        }
+    }
+
+    @Override
+    public Reaction<T> getNext() {
+        final Entry<T> wheel = minimum();
+        final Reaction<T> other = heap.getNext();
+        if (wheel == null) {
+            return other;
+        }
+        return other != null && other.getTauAsDouble() <= wheel.time ? other : wheel.reaction;
+    }
+
+    /**
+     * Simultaneous reactions of the wheel are contiguous in the slot of the current tick,
+     * simultaneous reactions of the heap are retrieved by the heap itself.
+     */
+    @Override
+    public List<Reaction<T>> getNextBatch() {
+        final Entry<T> wheel = minimum();
+        final List<Reaction<T>> others = heap.getNextBatch();
+        if (wheel == null) {
+            return others;
+        }
+        final double otherTime = others.isEmpty() ? Double.POSITIVE_INFINITY : others.get(0).getTauAsDouble();
+        if (otherTime < wheel.time) {
+            return others;
+        }
+        final List<Reaction<T>> result = otherTime == wheel.time ? new ArrayList<>(others) : new ArrayList<>();
+        for (Entry<T> entry = wheel; entry != null && entry.time == wheel.time; entry = entry.next) {
+            result.add(entry.reaction);
+        }
+        return result;
+    }
+
+    @Override
+    public void removeReaction(final Reaction<T> r) {
+        final Entry<T> entry = entries.remove(r);
+        if (entry == null) {
+            heap.removeReaction(r);
+        } else {
+            unlink(entry);
+        }
+    }
+
+    @Override
+    public void updateReaction(final Reaction<T> r) {
+        final Entry<T> entry = entries.get(r);
+        if (entry == null) {
+            if (fitsInWheel(r)) {
+                heap.removeReaction(r);
+                insert(new Entry<>(r));
+            } else {
+                heap.updateReaction(r);
+            }
+        } else {
+            unlink(entry);
+            if (fitsInWheel(r)) {
+                insert(entry);
+            } else {
+                entries.remove(r);
+                heap.addReaction(r);
+            }
+        }
+    }
+
+    private boolean fitsInWheel(final Reaction<T> r) {
+        final double time = r.getTauAsDouble();
+        return r.getTimeDistribution().isPeriodic()
+            && time != Double.POSITIVE_INFINITY
+            && (size == 0 || tickOf(time) >= cursor);
+    }
+
+    private long tickOf(final double time) {
+        return (long) (time / tick);
+    }
+
+    private void insert(final Entry<T> entry) {
+        entry.time = entry.reaction.getTauAsDouble();
+        entry.tick = tickOf(entry.time);
+        if (size == 0) {
+            cursor = entry.tick;
+        }
+        entries.put(entry.reaction, entry);
+        place(entry);
+        size++;
+    }
+
+    /*
+     * Each reaction goes in the lowest level where its tick shares all the upper digits with the cursor
+     */
+    private void place(final Entry<T> entry) {
+        int level = 0;
+        while (level < LEVELS && (entry.tick >>> (BITS * (level + 1))) != (cursor >>> (BITS * (level + 1)))) {
+            level++;
+        }
+        entry.level = level;
+        entry.slot = level == OVERFLOW ? 0 : (int) (entry.tick >>> (BITS * level)) & MASK;
+        final Entry<T>[] levelHeads = heads[level];
+        final Entry<T>[] levelTails = tails[level];
+        Entry<T> previous = levelTails[entry.slot];
+        if (level == 0) {
+            /*
+             * Only the first level is sorted. Periodic reactions are usually scheduled after the others:
+             * scan from the tail
+             */
+            while (previous != null && previous.time > entry.time) {
+                previous = previous.previous;
+            }
+        }
+        entry.previous = previous;
+        if (previous == null) {
+            entry.next = levelHeads[entry.slot];
+            levelHeads[entry.slot] = entry;
+        } else {
+            entry.next = previous.next;
+            previous.next = entry;
+        }
+        if (entry.next == null) {
+            levelTails[entry.slot] = entry;
+        } else {
+            entry.next.previous = entry;
+        }
+    }
+
+    private void unlink(final Entry<T> entry) {
+        if (entry.previous == null) {
+            heads[entry.level][entry.slot] = entry.next;
+        } else {
+            entry.previous.next = entry.next;
+        }
+        if (entry.next == null) {
+            tails[entry.level][entry.slot] = entry.previous;
+        } else {
+            entry.next.previous = entry.previous;
+        }
+        entry.previous = null;
+        entry.next = null;
+        size--;
+    }
+
+    private Entry<T> minimum() {
+        if (size == 0) {
+            return null;
+        }
+        while (true) {
+            for (int slot = (int) cursor & MASK; slot < SLOTS; slot++) {
+                final Entry<T> head = heads[0][slot];
+                if (head != null) {
+                    cursor = (cursor & ~(long) MASK) | slot;
+                    return head;
+                }
+            }
+            advance();
+        }
+    }
+
+    /*
+     * The rest of the first level is empty: moves the cursor to the first non-empty slot of the upper levels,
+     * and redistributes its reactions
+     */
+    private void advance() {
+        for (int level = 1; level < LEVELS; level++) {
+            final int shift = BITS * level;
+            for (int slot = ((int) (cursor >>> shift) & MASK) + 1; slot < SLOTS; slot++) {
+                if (heads[level][slot] != null) {
+                    cursor = ((cursor >>> (shift + BITS)) << (shift + BITS)) | ((long) slot << shift);
+                    cascade(level, slot);
+                    return;
+                }
+            }
+        }
+        long first = Long.MAX_VALUE;
+        for (Entry<T> entry = heads[OVERFLOW][0]; entry != null; entry = entry.next) {
+            first = Math.min(first, entry.tick);
+        }
+        cursor = first;
+        cascade(OVERFLOW, 0);
+    }
+
+    private void cascade(final int level, final int slot) {
+        Entry<T> entry = heads[level][slot];
+        heads[level][slot] = null;
+        tails[level][slot] = null;
+        while (entry != null) {
+            final Entry<T> next = entry.next;
+            entry.previous = null;
+            entry.next = null;
+            place(entry);
+            entry = next;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Entry<T>[][] newLevels() {
+        final Entry<T>[][] levels = (Entry<T>[][]) new Entry<?>[LEVELS + 1][];
+        for (int level = 0; level < LEVELS; level++) {
+            levels[level] = (Entry<T>[]) new Entry<?>[SLOTS];
+        }
+        levels[OVERFLOW] = (Entry<T>[]) new Entry<?>[1];
+        return levels;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[tick=" + tick + ", cursor=" + cursor
+            + ", wheel=" + size + ", heap=" + heap.size() + ']';
+    }
+
+    private static final class Entry<T> {
+        private final Reaction<T> reaction;
+        private double time;
+        private long tick;
+        private int level;
+        private int slot;
+        private Entry<T> previous;
+        private Entry<T> next;
+
+        private Entry(final Reaction<T> reaction) {
+            this.reaction = reaction;
+        }
+    }
+
+}
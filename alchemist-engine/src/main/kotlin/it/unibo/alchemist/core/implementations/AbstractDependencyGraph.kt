@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.implementations
+
+import it.unibo.alchemist.core.interfaces.DependencyGraph
+import it.unibo.alchemist.model.interfaces.Context
+import it.unibo.alchemist.model.interfaces.Environment
+import it.unibo.alchemist.model.interfaces.Node
+import it.unibo.alchemist.model.interfaces.Reaction
+import org.danilopianini.util.ArrayListSet
+import org.danilopianini.util.ListSet
+import org.danilopianini.util.ListSets
+import java.util.stream.Collectors
+
+/**
+ * Base implementation of a dependency graph, computing which reactions may influence each other
+ * based on their contexts and dependencies, and on the neighborhoods of their nodes.
+ * Subclasses provide the underlying directed graph storage, whose vertices are the reactions and whose
+ * edges go from each reaction to those it may influence.
+ *
+ * @param <T> concentration type
+ */
+abstract class AbstractDependencyGraph<T>(private val environment: Environment<T, *>) : DependencyGraph<T> {
+    private val inGlobals = ArrayListSet<Reaction<T>>()
+    private val outGlobals = ArrayListSet<Reaction<T>>()
+    private val inGlobalsView = ListSets.unmodifiableListSet(inGlobals)
+
+    /**
+     * A live view of the reactions currently in the graph.
+     */
+    protected abstract val reactions: Collection<Reaction<T>>
+
+    /**
+     * Adds [reaction] as a vertex, returning false if it was already present.
+     */
+    protected abstract fun addVertex(reaction: Reaction<T>): Boolean
+
+    /**
+     * Removes [reaction] and all its inbound and outbound edges, returning false if it was not present.
+     */
+    protected abstract fun removeVertex(reaction: Reaction<T>): Boolean
+
+    /**
+     * Adds an edge from [source] to [target], meaning that [source] may influence [target].
+     * Does nothing if the edge already exists.
+     */
+    protected abstract fun addEdge(source: Reaction<T>, target: Reaction<T>)
+
+    /**
+     * Removes the edge from [source] to [target], if present.
+     */
+    protected abstract fun removeEdge(source: Reaction<T>, target: Reaction<T>)
+
+    override fun createDependencies(newReaction: Reaction<T>) = createAllDependencies(listOf(newReaction))
+
+    /**
+     * Computes the dependencies of the reactions in parallel, then merges them into the graph
+     * in iteration order. Each reaction only sees the reactions preceding it in [newReactions]
+     * (plus those already in the graph), so the result is the same as adding them one by one.
+     * The environment and the reactions must not be modified meanwhile.
+     * Batches smaller than [MINIMUM_PARALLEL_BATCH], such as the reactions of a node added at runtime,
+     * are computed sequentially on the calling thread.
+     */
+    override fun createAllDependencies(newReactions: Collection<Reaction<T>>) {
+        val batch = newReactions.toList()
+        val batchIndex = batch.withIndex().associateTo(HashMap(batch.size * 2)) { it.value to it.index }
+        require(batchIndex.size == batch.size) { "Some reactions are repeated in $batch" }
+        val allReactions = reactions
+        batch.firstOrNull { allReactions.contains(it) }?.let {
+            throw IllegalArgumentException("$it was already in the dependency graph")
+        }
+        val existing by lazy { allReactions.toList() }
+        val batchInGlobals = batch.indices.filter { batch[it].inputContext == Context.GLOBAL }
+        val batchOutGlobals = batch.indices.filter { batch[it].outputContext == Context.GLOBAL }
+        val indices = batch.indices.toList()
+        val dependencies = (if (batch.size < MINIMUM_PARALLEL_BATCH) indices.stream() else indices.parallelStream())
+            .map { index ->
+                fun List<Int>.preceding() = asSequence().takeWhile { it < index }.map { batch[it] }
+                environment.dependenciesOf(
+                    batch[index],
+                    isPresent = { allReactions.contains(it) || batchIndex.getOrDefault(it, Int.MAX_VALUE) <= index },
+                    everything = { existing.asSequence() + batch.asSequence().take(index + 1) },
+                    inboundGlobals = inGlobals.asSequence() + batchInGlobals.preceding(),
+                    outboundGlobals = outGlobals.asSequence() + batchOutGlobals.preceding()
+                )
+            }
+            .collect(Collectors.toList())
+        batch.forEachIndexed { index, newReaction ->
+            addVertex(newReaction)
+            val (influencers, influenced) = dependencies[index]
+            influencers.forEach { addEdge(it, newReaction) }
+            influenced.forEach { addEdge(newReaction, it) }
+            if (newReaction.inputContext == Context.GLOBAL) {
+                inGlobals.add(newReaction)
+            }
+            if (newReaction.outputContext == Context.GLOBAL) {
+                outGlobals.add(newReaction)
+            }
+        }
+    }
+
+    private val Node<T>.neighborhood
+        get() = environment.getNeighborhood(this).neighbors
+
+    override fun removeDependencies(r: Reaction<T>) {
+        if (!removeVertex(r)) {
+            throw IllegalStateException("Inconsistent state: $r was not in the reaction pool.")
+        }
+        if (r.inputContext == Context.GLOBAL && !inGlobals.remove(r)) {
+            throw IllegalStateException(
+                "Inconsistent state: " + r + " , with global input context, " +
+                    "was not in the appropriate reaction pool."
+            )
+        }
+        if (r.outputContext == Context.GLOBAL && !outGlobals.remove(r)) {
+            throw IllegalStateException(
+                "Inconsistent state: " + r + " , with global output context, " +
+                    "was not in the appropriate reaction pool."
+            )
+        }
+    }
+
+    /** @see [DependencyGraph.addNeighbor] */
+    override fun addNeighbor(n1: Node<T>, n2: Node<T>) {
+        fun addNeighborDirected(node: Node<T>, neighbor: Node<T>) {
+            val neighborNonGlobalReactions: Iterable<Reaction<T>> by lazy {
+                neighbor.reactions.filterNot { it.outputContext == Context.GLOBAL }
+            }
+            val neighborNeighborhoodReactions: Iterable<Reaction<T>> by lazy {
+                neighborNonGlobalReactions.filter { it.outputContext == Context.NEIGHBORHOOD }
+            }
+            val neighborInputInfluencers: Iterable<Reaction<T>> by lazy {
+                // All the non-global reactions of the new neighbor
+                neighborNonGlobalReactions +
+                    // Plus all the reactions of the new neighbor's neighbors with neighborhood output
+                    (neighbor.neighborhood - node.neighborhood).asSequence()
+                        .flatMap { it.reactions.asSequence() }
+                        .filter { it.outputContext == Context.NEIGHBORHOOD }
+            }
+            node.reactions.forEach { reaction ->
+                when (reaction.inputContext) {
+                    // Local-reading reactions can be only influenced by the new neighbor's neighborhood reactions
+                    Context.LOCAL -> neighborNeighborhoodReactions
+                    Context.NEIGHBORHOOD -> neighborInputInfluencers
+                    else -> emptyList()
+                }.asSequence()
+                    .filter { reaction.dependsOn(it) }
+                    .forEach { addEdge(it, reaction) }
+            }
+        }
+        addNeighborDirected(n1, n2)
+        addNeighborDirected(n2, n1)
+    }
+
+    override fun removeNeighbor(n1: Node<T>, n2: Node<T>) {
+        fun removeNeighborDirected(node: Node<T>, neighbor: Node<T>) {
+            val neighborNonGlobalReactions by lazy {
+                neighbor.reactions.filterNot { it.outputContext == Context.GLOBAL }
+            }
+            val neighborNeighborhoodReactions by lazy {
+                neighborNonGlobalReactions.filter { it.outputContext == Context.NEIGHBORHOOD }
+            }
+            val neighborInputInfluencers by lazy {
+                // All the non-global reactions of the old neighbor
+                neighborNonGlobalReactions +
+                    // Plus all the reactions of the new neighbor's neighbors with neighborhood output
+                    (neighbor.neighborhood - node.neighborhood - node.neighborhood.flatMap { it.neighborhood })
+                        .asSequence()
+                        .flatMap { it.reactions.asSequence() }
+                        .filter { it.outputContext == Context.NEIGHBORHOOD }
+                        .toList()
+            }
+            node.reactions.forEach { reaction ->
+                when (reaction.inputContext) {
+                    // Local-reading reactions can be only influenced by the new neighbor's neighborhood reactions
+                    Context.LOCAL -> neighborNeighborhoodReactions
+                    Context.NEIGHBORHOOD -> neighborInputInfluencers
+                    else -> emptyList()
+                }.asSequence()
+                    .filter { reaction.dependsOn(it) }
+                    .forEach { removeEdge(it, reaction) }
+            }
+        }
+        removeNeighborDirected(n1, n2)
+        removeNeighborDirected(n2, n1)
+    }
+
+    override fun globalInputContextReactions(): ListSet<Reaction<T>> = inGlobalsView
+
+    private companion object {
+        /**
+         * Batches of new reactions smaller than this size do not get split among threads.
+         */
+        private const val MINIMUM_PARALLEL_BATCH = 64
+    }
+}
+
+/**
+ * Computes the reactions influencing [newReaction] and those influenced by it, in this order.
+ * [isPresent] tells which reactions are in the graph, [everything] lists them all, and
+ * [inboundGlobals] and [outboundGlobals] list those with global input and output context.
+ */
+private fun <T> Environment<T, *>.dependenciesOf(
+    newReaction: Reaction<T>,
+    isPresent: (Reaction<T>) -> Boolean,
+    everything: () -> Sequence<Reaction<T>>,
+    inboundGlobals: Sequence<Reaction<T>>,
+    outboundGlobals: Sequence<Reaction<T>>
+): Pair<List<Reaction<T>>, List<Reaction<T>>> {
+    fun Node<T>.neighbors() = getNeighborhood(this).neighbors
+    val neighborhood by lazy { newReaction.node.neighbors() }
+    val localReactions by lazy {
+        newReaction.node.reactions.filter(isPresent).asSequence()
+    }
+    val neighborhoodReactions by lazy {
+        neighborhood.asSequence()
+            .flatMap { it.reactions.asSequence() }
+            .filter(isPresent)
+            .toList().asSequence()
+    }
+    val extendedNeighborhoodReactions by lazy {
+        neighborhood.asSequence()
+            // Neighbors of neighbors
+            .flatMap { it.neighbors().asSequence() }
+            // No duplicates
+            .distinct()
+            // Exclude direct neighbors
+            .filterNot { neighborhood.contains(it) }
+            .flatMap { it.reactions.asSequence() }
+            .filter(isPresent)
+            .toList().asSequence()
+    }
+    val inboundCandidates: Sequence<Reaction<T>> = outboundGlobals +
+        when (newReaction.inputContext) {
+            Context.LOCAL ->
+                localReactions + neighborhoodReactions.filter { it.outputContext == Context.NEIGHBORHOOD }
+            Context.NEIGHBORHOOD ->
+                localReactions + neighborhoodReactions +
+                    extendedNeighborhoodReactions.filter { it.outputContext == Context.NEIGHBORHOOD }
+            else -> everything()
+        }
+    val outboundCandidates: Sequence<Reaction<T>> = inboundGlobals +
+        when (newReaction.outputContext) {
+            Context.LOCAL ->
+                localReactions + neighborhoodReactions.filter { it.inputContext == Context.NEIGHBORHOOD }
+            Context.NEIGHBORHOOD ->
+                localReactions + neighborhoodReactions +
+                    extendedNeighborhoodReactions.filter { it.inputContext == Context.NEIGHBORHOOD }
+            else -> everything()
+        }
+    return inboundCandidates.filter { newReaction.dependsOn(it) }.toList() to
+        outboundCandidates.filter { it.dependsOn(newReaction) }.toList()
+}
+
+private fun <T> Reaction<T>.dependsOn(other: Reaction<T>) =
+    inboundDependencies.any { inbound ->
+        other.outboundDependencies.any { outbound ->
+            inbound.dependsOn(outbound) || outbound.makesDependent(inbound)
+        }
+    }
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.implementations
+
+import gnu.trove.impl.Constants
+import gnu.trove.map.hash.TObjectIntHashMap
+import gnu.trove.stack.array.TIntArrayStack
+import it.unibo.alchemist.model.interfaces.Environment
+import it.unibo.alchemist.model.interfaces.Reaction
+import org.danilopianini.util.ArrayListSet
+import org.danilopianini.util.ListSet
+import java.util.Collections
+import java.util.function.Consumer
+
+/**
+ * A dependency graph storing its edges as adjacency lists of primitive ints.
+ * Each reaction gets a dense integer id, and each vertex owns a growable array of the ids of
+ * the reactions it influences, plus one of the reactions influencing it (used on removal).
+ * Compared to [JGraphTDependencyGraph], no object gets allocated per edge, and
+ * [forEachOutboundDependency] iterates the outbound dependencies without allocating.
+ * Both the reactions and their dependencies are iterated in insertion order, as in [JGraphTDependencyGraph]:
+ * ids get recycled on removal, hence they are never used to order anything.
+ *
+ * @param <T> concentration type
+ */
+class CompactDependencyGraph<T>(environment: Environment<T, *>) : AbstractDependencyGraph<T>(environment) {
+    private val ids = TObjectIntHashMap<Reaction<T>>(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, NO_ID)
+    private val vertices = ArrayList<Reaction<T>?>()
+    private val outbound = ArrayList<IntList>()
+    private val inbound = ArrayList<IntList>()
+    private val freeIds = TIntArrayStack()
+    private val insertionOrder = LinkedHashSet<Reaction<T>>()
+
+    override val reactions: Collection<Reaction<T>> = Collections.unmodifiableCollection(insertionOrder)
+
+    override fun addVertex(reaction: Reaction<T>): Boolean {
+        if (ids.containsKey(reaction)) {
+            return false
+        }
+        val id = if (freeIds.size() > 0) freeIds.pop() else vertices.size
+        if (id == vertices.size) {
+            vertices.add(reaction)
+            outbound.add(IntList())
+            inbound.add(IntList())
+        } else {
+            vertices[id] = reaction
+        }
+        ids.put(reaction, id)
+        insertionOrder.add(reaction)
+        return true
+    }
+
+    override fun removeVertex(reaction: Reaction<T>): Boolean {
+        val id = ids.remove(reaction)
+        if (id == NO_ID) {
+            return false
+        }
+        inbound[id].forEach { outbound[it].remove(id) }
+        outbound[id].forEach { inbound[it].remove(id) }
+        inbound[id].clear()
+        outbound[id].clear()
+        vertices[id] = null
+        insertionOrder.remove(reaction)
+        freeIds.push(id)
+        return true
+    }
+
+    override fun addEdge(source: Reaction<T>, target: Reaction<T>) {
+        val sourceId = idOf(source)
+        val targetId = idOf(target)
+        val sourceOutbound = outbound[sourceId]
+        val targetInbound = inbound[targetId]
+        val exists = if (sourceOutbound.size <= targetInbound.size) {
+            sourceOutbound.contains(targetId)
+        } else {
+            targetInbound.contains(sourceId)
+        }
+        if (!exists) {
+            sourceOutbound.add(targetId)
+            targetInbound.add(sourceId)
+        }
+    }
+
+    override fun removeEdge(source: Reaction<T>, target: Reaction<T>) {
+        val sourceId = idOf(source)
+        val targetId = idOf(target)
+        if (outbound[sourceId].remove(targetId)) {
+            inbound[targetId].remove(sourceId)
+        }
+    }
+
+    override fun outboundDependencies(reaction: Reaction<T>): ListSet<Reaction<T>> {
+        val dependencies = outbound[idOf(reaction)]
+        val result = ArrayListSet<Reaction<T>>(dependencies.size)
+        dependencies.forEach { result.add(vertexAt(it)) }
+        return result
+    }
+
+    override fun forEachOutboundDependency(reaction: Reaction<T>, action: Consumer<in Reaction<T>>) {
+        val dependencies = outbound[idOf(reaction)]
+        for (index in 0 until dependencies.size) {
+            action.accept(vertexAt(dependencies[index]))
+        }
+    }
+
+    private fun idOf(reaction: Reaction<T>): Int = ids[reaction].also {
+        require(it != NO_ID) { "$reaction is not in the dependency graph" }
+    }
+
+    private fun vertexAt(id: Int): Reaction<T> =
+        checkNotNull(vertices[id]) { "Bug in Alchemist: no reaction with id $id" }
+
+    override fun toString(): String = reactions.joinToString(prefix = "{", postfix = "}") { reaction ->
+        "$reaction=${outboundDependencies(reaction)}"
+    }
+
+    /**
+     * A growable array of ints, preserving insertion order on removal.
+     */
+    private class IntList {
+        private var elements = IntArray(INITIAL_CAPACITY)
+
+        var size = 0
+            private set
+
+        operator fun get(index: Int) = elements[index]
+
+        fun add(element: Int) {
+            if (size == elements.size) {
+                elements = elements.copyOf(size * 2)
+            }
+            elements[size++] = element
+        }
+
+        fun contains(element: Int) = indexOf(element) >= 0
+
+        fun remove(element: Int): Boolean {
+            val index = indexOf(element)
+            if (index >= 0) {
+                System.arraycopy(elements, index + 1, elements, index, size - index - 1)
+                size--
+            }
+            return index >= 0
+        }
+
+        fun clear() {
+            size = 0
+        }
+
+        inline fun forEach(action: (Int) -> Unit) {
+            for (index in 0 until size) {
+                action(elements[index])
+            }
+        }
+
+        private fun indexOf(element: Int): Int {
+            for (index in 0 until size) {
+                if (elements[index] == element) {
+                    return index
+                }
+            }
+            return -1
+        }
+
+        private companion object {
+            private const val INITIAL_CAPACITY = 4
+        }
+    }
+
+    private companion object {
+        private const val NO_ID = -1
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.tests;
+
+import it.unibo.alchemist.SupportedIncarnations;
+import it.unibo.alchemist.boundary.interfaces.OutputMonitor;
+import it.unibo.alchemist.core.implementations.AsynchronousOutputMonitor.Backpressure;
+import it.unibo.alchemist.core.implementations.AsynchronousOutputMonitor;
+import it.unibo.alchemist.core.implementations.Engine;
+import it.unibo.alchemist.core.interfaces.Simulation;
+import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.linkingrules.NoLinks;
+import it.unibo.alchemist.model.implementations.nodes.AbstractNode;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.implementations.reactions.Event;
+import it.unibo.alchemist.model.implementations.timedistributions.DiracComb;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import it.unibo.alchemist.model.interfaces.Time;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the {@link AsynchronousOutputMonitor} delivers the simulation events in order,
+ * and applies its backpressure and sampling policies.
+ */
+public class TestAsynchronousOutputMonitor {
+
+    private static final long STEPS = 2000;
+    private static final int CAPACITY = 8;
+    private static final long SAMPLING = 10;
+
+    /**
+     * With a blocking buffer, every step gets delivered, in order, and before the simulation completes.
+     */
+    @Test
+    public void testBlockingDeliversEverything() {
+        final Recorder recorder = new Recorder(0);
+        run(new AsynchronousOutputMonitor<>(recorder, CAPACITY, Backpressure.BLOCK, 1, UnaryOperator.identity()));
+        assertTrue(recorder.initialized);
+        assertEquals(STEPS, recorder.finishedAt);
+        assertEquals(STEPS, recorder.steps.size());
+        for (int i = 0; i < STEPS; i++) {
+            assertEquals(i, (long) recorder.steps.get(i));
+        }
+    }
+
+    /**
+     * A slow monitor on a dropping buffer loses steps, but still sees the remaining ones in order.
+     */
+    @Test
+    public void testDroppingKeepsOrder() {
+        final Recorder recorder = new Recorder(1);
+        final AsynchronousOutputMonitor<Object, Euclidean2DPosition> monitor =
+            new AsynchronousOutputMonitor<>(recorder, CAPACITY, Backpressure.DROP_OLDEST, 1, UnaryOperator.identity());
+        run(monitor);
+        assertEquals(STEPS, recorder.steps.size() + monitor.getDropped());
+        assertTrue(monitor.getDropped() > 0);
+        for (int i = 1; i < recorder.steps.size(); i++) {
+            assertTrue(recorder.steps.get(i - 1) < recorder.steps.get(i));
+        }
+        assertEquals(STEPS, recorder.finishedAt);
+    }
+
+    /**
+     * By default, the decorated monitor receives copies of the environment, never the live one.
+     */
+    @Test
+    public void testDefaultSnapshotsAreCopies() {
+        final Recorder recorder = new Recorder(0);
+        final Environment<Object, Euclidean2DPosition> live = run(new AsynchronousOutputMonitor<>(recorder));
+        assertEquals(STEPS, recorder.environments.size());
+        for (final Environment<Object, Euclidean2DPosition> environment : recorder.environments) {
+            assertNotSame(live, environment);
+            assertEquals(live.getNodeCount(), environment.getNodeCount());
+        }
+    }
+
+    /**
+     * Sampling publishes only the steps multiple of the interval.
+     */
+    @Test
+    public void testSampling() {
+        final Recorder recorder = new Recorder(0);
+        run(new AsynchronousOutputMonitor<>(recorder, CAPACITY, Backpressure.BLOCK, SAMPLING, UnaryOperator.identity()));
+        assertEquals(STEPS / SAMPLING, recorder.steps.size());
+        recorder.steps.forEach(step -> assertEquals(0, step % SAMPLING));
+    }
+
+    private static Environment<Object, Euclidean2DPosition> run(final OutputMonitor<Object, Euclidean2DPosition> monitor) {
+        final Environment<Object, Euclidean2DPosition> environment = new Continuous2DEnvironment<>(
+            SupportedIncarnations.<Object, Euclidean2DPosition>get("sapere").orElseThrow()
+        );
+        environment.setLinkingRule(new NoLinks<>());
+        final Node<Object> node = new DummyNode(environment);
+        node.addReaction(new Event<>(node, new DiracComb<>(1)));
+        environment.addNode(node, environment.makePosition(0, 0));
+        final Simulation<Object, Euclidean2DPosition> simulation = new Engine<>(environment, STEPS);
+        simulation.addOutputMonitor(monitor);
+        simulation.play();
+        simulation.run();
+        assertTrue(simulation.getError().isEmpty());
+        return environment;
+    }
+
+    private static final class Recorder implements OutputMonitor<Object, Euclidean2DPosition> {
+        private static final long serialVersionUID = 1L;
+        private final long delay;
+        private final List<Long> steps = new ArrayList<>();
+        private final List<Environment<Object, Euclidean2DPosition>> environments = new ArrayList<>();
+        private boolean initialized;
+        private long finishedAt = -1;
+        private Recorder(final long delay) {
+            this.delay = delay;
+        }
+        @Override
+        public void finished(final Environment<Object, Euclidean2DPosition> environment, final Time time, final long step) {
+            finishedAt = step;
+        }
+        @Override
+        public void initialized(final Environment<Object, Euclidean2DPosition> environment) {
+            initialized = true;
+        }
+        @Override
+        public void stepDone(
+            final Environment<Object, Euclidean2DPosition> environment,
+            final Reaction<Object> reaction,
+            final Time time,
+            final long step
+        ) {
+            steps.add(step);
+            environments.add(environment);
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private static final class DummyNode extends AbstractNode<Object> {
+        private static final long serialVersionUID = 1L;
+        private DummyNode(final Environment<?, ?> env) {
+            super(env);
+        }
+        @Override
+        protected Object createT() {
+            return "";
+        }
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.tests;
+
+import it.unibo.alchemist.SupportedIncarnations;
+import it.unibo.alchemist.boundary.interfaces.OutputMonitor;
+import it.unibo.alchemist.core.implementations.ArrayIndexedPriorityQueue;
+import it.unibo.alchemist.core.implementations.Engine;
+import it.unibo.alchemist.core.interfaces.Simulation;
+import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.linkingrules.NoLinks;
+import it.unibo.alchemist.model.implementations.nodes.AbstractNode;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.implementations.reactions.Event;
+import it.unibo.alchemist.model.implementations.timedistributions.ExponentialTime;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import it.unibo.alchemist.model.interfaces.Time;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a simulation resumed from a checkpoint evolves exactly as the original one would have.
+ */
+public class TestCheckpoint {
+
+    private static final int NODES = 20;
+    private static final long STEPS = 2000;
+    private static final long CHECKPOINT_STEP = 700;
+
+    /**
+     * Runs a stochastic simulation in one go, and then in two halves, with a checkpoint in the middle.
+     *
+     * @throws IOException if the checkpoint fails
+     */
+    @Test
+    public void testResumedSimulationIsIdentical() throws IOException {
+        final Trace reference = new Trace();
+        run(new Engine<>(createEnvironment(), STEPS), reference);
+        final Trace beforeCheckpoint = new Trace();
+        final Engine<Object, Euclidean2DPosition> first = new Engine<>(createEnvironment(), CHECKPOINT_STEP);
+        run(first, beforeCheckpoint);
+        final ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+        first.checkpoint(checkpoint);
+        final Engine<Object, Euclidean2DPosition> resumed =
+            Engine.resume(new ByteArrayInputStream(checkpoint.toByteArray()), STEPS, Time.INFINITY);
+        assertEquals(CHECKPOINT_STEP, resumed.getStep());
+        assertEquals(first.getTime(), resumed.getTime());
+        final Trace afterCheckpoint = new Trace();
+        run(resumed, afterCheckpoint);
+        final List<String> combined = new ArrayList<>(beforeCheckpoint.events);
+        combined.addAll(afterCheckpoint.events);
+        assertEquals(reference.events, combined);
+    }
+
+    /**
+     * Checkpoints taken by a scheduled command while the simulation is running can be resumed.
+     *
+     * @throws IOException if the checkpoint fails
+     */
+    @Test
+    public void testCheckpointWhileRunning() throws IOException {
+        final Engine<Object, Euclidean2DPosition> simulation = new Engine<>(createEnvironment(), STEPS);
+        final ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+        simulation.addOutputMonitor(new Trace() {
+            private static final long serialVersionUID = 1L;
+            @Override
+            public void stepDone(
+                final Environment<Object, Euclidean2DPosition> environment,
+                final Reaction<Object> reaction,
+                final Time time,
+                final long step
+            ) {
+                if (step == CHECKPOINT_STEP) {
+                    assertThrows(IllegalStateException.class, () -> simulation.checkpoint(new ByteArrayOutputStream()));
+                    simulation.schedule(() -> simulation.checkpoint(checkpoint));
+                }
+            }
+        });
+        run(simulation, new Trace());
+        final Simulation<Object, Euclidean2DPosition> resumed =
+            Engine.resume(new ByteArrayInputStream(checkpoint.toByteArray()), STEPS, Time.INFINITY);
+        assertEquals(CHECKPOINT_STEP + 1, resumed.getStep());
+        run(resumed, new Trace());
+        assertEquals(simulation.getTime(), resumed.getTime());
+    }
+
+    /**
+     * Forks with the same seed evolve identically, forks with different seeds diverge.
+     *
+     * @throws IOException if the checkpoint fails
+     */
+    @Test
+    public void testForks() throws IOException {
+        final Engine<Object, Euclidean2DPosition> prefix = new Engine<>(createEnvironment(), CHECKPOINT_STEP);
+        run(prefix, new Trace());
+        final ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+        prefix.checkpoint(checkpoint);
+        final List<List<String>> traces = new ArrayList<>();
+        for (final long seed : new long[] { 1, 1, 2 }) {
+            final Trace trace = new Trace();
+            run(Engine.fork(
+                new ByteArrayInputStream(checkpoint.toByteArray()),
+                STEPS,
+                Time.INFINITY,
+                new ArrayIndexedPriorityQueue<>(),
+                seed
+            ), trace);
+            assertEquals(STEPS - CHECKPOINT_STEP, trace.events.size());
+            traces.add(trace.events);
+        }
+        assertEquals(traces.get(0), traces.get(1));
+        assertNotEquals(traces.get(0), traces.get(2));
+    }
+
+    private static void run(final Simulation<Object, Euclidean2DPosition> simulation, final Trace trace) {
+        simulation.addOutputMonitor(trace);
+        simulation.play();
+        simulation.run();
+        assertTrue(simulation.getError().isEmpty());
+    }
+
+    private static Environment<Object, Euclidean2DPosition> createEnvironment() {
+        final Environment<Object, Euclidean2DPosition> environment = new Continuous2DEnvironment<>(
+            SupportedIncarnations.<Object, Euclidean2DPosition>get("sapere").orElseThrow()
+        );
+        environment.setLinkingRule(new NoLinks<>());
+        final RandomGenerator random = new MersenneTwister(1);
+        for (int i = 0; i < NODES; i++) {
+            final Node<Object> node = new DummyNode(environment);
+            node.addReaction(new Event<>(node, new ExponentialTime<>(1 + i % 4, random)));
+            environment.addNode(node, environment.makePosition(i, 0));
+        }
+        return environment;
+    }
+
+    private static class Trace implements OutputMonitor<Object, Euclidean2DPosition> {
+        private static final long serialVersionUID = 1L;
+        private final List<String> events = new ArrayList<>();
+        @Override
+        public void finished(final Environment<Object, Euclidean2DPosition> environment, final Time time, final long step) {
+        }
+        @Override
+        public void initialized(final Environment<Object, Euclidean2DPosition> environment) {
+        }
+        @Override
+        public void stepDone(
+            final Environment<Object, Euclidean2DPosition> environment,
+            final Reaction<Object> reaction,
+            final Time time,
+            final long step
+        ) {
+            events.add(step + ": node " + reaction.getNode().getId() + " at " + time);
+        }
+    }
+
+    private static final class DummyNode extends AbstractNode<Object> {
+        private static final long serialVersionUID = 1L;
+        private DummyNode(final Environment<?, ?> env) {
+            super(env);
+        }
+        @Override
+        protected Object createT() {
+            return "";
+        }
+    }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.tests;
+
+import it.unibo.alchemist.SupportedIncarnations;
+import it.unibo.alchemist.boundary.interfaces.OutputMonitor;
+import it.unibo.alchemist.core.implementations.CompositionRejectionEngine;
+import it.unibo.alchemist.core.implementations.Engine;
+import it.unibo.alchemist.core.interfaces.Simulation;
+import it.unibo.alchemist.core.interfaces.Status;
+import it.unibo.alchemist.model.implementations.actions.AbstractLocalAction;
+import it.unibo.alchemist.model.implementations.conditions.AbstractCondition;
+import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.linkingrules.NoLinks;
+import it.unibo.alchemist.model.implementations.molecules.SimpleMolecule;
+import it.unibo.alchemist.model.implementations.nodes.AbstractNode;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.implementations.reactions.ChemicalReaction;
+import it.unibo.alchemist.model.implementations.reactions.Event;
+import it.unibo.alchemist.model.implementations.timedistributions.ExponentialTime;
+import it.unibo.alchemist.model.interfaces.Action;
+import it.unibo.alchemist.model.interfaces.Context;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Molecule;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import it.unibo.alchemist.model.interfaces.Time;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the {@link CompositionRejectionEngine} selects the reactions with the correct probabilities,
+ * and keeps track of the propensity changes.
+ */
+public class TestCompositionRejectionEngine {
+
+    private static final double[] RATES = { 1, 10, 100 };
+    private static final long STEPS = 111_000;
+    private static final double TOLERANCE = 0.1;
+    private static final int MOLECULES = 1000;
+    private static final double WEIGHT = 100;
+    private static final Molecule SPECIES = new SimpleMolecule("A");
+
+    /**
+     * Reactions with rates spanning two orders of magnitude are executed proportionally to their rates,
+     * and the time advances according to the total rate.
+     */
+    @Test
+    public void testSelectionFrequencies() {
+        final Environment<Object, Euclidean2DPosition> environment = createEnvironment();
+        final RandomGenerator random = new MersenneTwister(0);
+        for (final double rate : RATES) {
+            final Node<Object> node = new DummyNode(environment);
+            node.addReaction(new Event<>(node, new ExponentialTime<>(rate, random)));
+            environment.addNode(node, environment.makePosition(rate, 0));
+        }
+        final Counter counter = new Counter(RATES.length);
+        final Simulation<Object, Euclidean2DPosition> simulation =
+            new CompositionRejectionEngine<>(environment, STEPS, Time.INFINITY, random);
+        run(simulation, counter);
+        final double totalRate = Arrays.stream(RATES).sum();
+        for (int i = 0; i < RATES.length; i++) {
+            final double expected = STEPS * RATES[i] / totalRate;
+            assertEquals(expected, counter.executions[i], expected * TOLERANCE);
+        }
+        final double expectedTime = STEPS / totalRate;
+        assertEquals(expectedTime, simulation.getTime().toDouble(), expectedTime * TOLERANCE);
+    }
+
+    /**
+     * In a pure death process, the rate decreases at every step, moving the reaction across the groups,
+     * until it reaches zero and the simulation terminates.
+     */
+    @Test
+    public void testDeathProcess() {
+        final Environment<Object, Euclidean2DPosition> environment = createEnvironment();
+        final Node<Object> node = new DummyNode(environment);
+        node.setConcentration(SPECIES, MOLECULES);
+        final RandomGenerator random = new MersenneTwister(1);
+        final Reaction<Object> death = new ChemicalReaction<>(node, new ExponentialTime<>(1, random));
+        death.setConditions(List.of(new Amount(node)));
+        death.setActions(List.of(new Decrease(node)));
+        node.addReaction(death);
+        environment.addNode(node, environment.makePosition(0, 0));
+        final Counter counter = new Counter(1);
+        final Simulation<Object, Euclidean2DPosition> simulation =
+            new CompositionRejectionEngine<>(environment, Long.MAX_VALUE, Time.INFINITY, random);
+        run(simulation, counter);
+        assertEquals(0, node.getConcentration(SPECIES));
+        assertEquals(MOLECULES, counter.executions[0]);
+        assertEquals(Status.TERMINATED, simulation.getStatus());
+    }
+
+    /**
+     * The propensity of a reaction is its rate, as in {@link Engine}, even when it differs from the rate of its
+     * time distribution multiplied by the propensity contributions of its conditions, as it happens for events.
+     */
+    @Test
+    public void testPropensityIsTheRate() {
+        final List<Simulation<Object, Euclidean2DPosition>> simulations = List.of(
+            new Engine<>(createWeightedEvents(new MersenneTwister(0)), STEPS),
+            new CompositionRejectionEngine<>(
+                createWeightedEvents(new MersenneTwister(0)), STEPS, Time.INFINITY, new MersenneTwister(0)
+            )
+        );
+        final double totalRate = Arrays.stream(RATES).sum();
+        for (final Simulation<Object, Euclidean2DPosition> simulation : simulations) {
+            final Counter counter = new Counter(RATES.length);
+            run(simulation, counter);
+            for (int i = 0; i < RATES.length; i++) {
+                final double expected = STEPS * RATES[i] / totalRate;
+                assertEquals(expected, counter.executions[i], expected * TOLERANCE, simulation.getClass()::getSimpleName);
+            }
+            final double expectedTime = STEPS / totalRate;
+            assertEquals(expectedTime, simulation.getTime().toDouble(), expectedTime * TOLERANCE);
+        }
+    }
+
+    private static void run(final Simulation<Object, Euclidean2DPosition> simulation, final Counter counter) {
+        simulation.addOutputMonitor(counter);
+        simulation.play();
+        simulation.run();
+        assertTrue(simulation.getError().isEmpty());
+    }
+
+    /*
+     * Events whose first one has a condition contributing to the propensity, which events ignore
+     */
+    private static Environment<Object, Euclidean2DPosition> createWeightedEvents(final RandomGenerator random) {
+        final Environment<Object, Euclidean2DPosition> environment = createEnvironment();
+        for (final double rate : RATES) {
+            final Node<Object> node = new DummyNode(environment);
+            final Reaction<Object> event = new Event<>(node, new ExponentialTime<>(rate, random));
+            if (node.getId() == 0) {
+                event.setConditions(List.of(new Weight(node)));
+            }
+            node.addReaction(event);
+            environment.addNode(node, environment.makePosition(rate, 0));
+        }
+        return environment;
+    }
+
+    private static Environment<Object, Euclidean2DPosition> createEnvironment() {
+        final Environment<Object, Euclidean2DPosition> environment = new Continuous2DEnvironment<>(
+            SupportedIncarnations.<Object, Euclidean2DPosition>get("sapere").orElseThrow()
+        );
+        environment.setLinkingRule(new NoLinks<>());
+        return environment;
+    }
+
+    private static final class Counter implements OutputMonitor<Object, Euclidean2DPosition> {
+        private static final long serialVersionUID = 1L;
+        private final long[] executions;
+        private Counter(final int nodes) {
+            executions = new long[nodes];
+        }
+        @Override
+        public void finished(final Environment<Object, Euclidean2DPosition> environment, final Time time, final long step) {
+        }
+        @Override
+        public void initialized(final Environment<Object, Euclidean2DPosition> environment) {
+        }
+        @Override
+        public void stepDone(
+            final Environment<Object, Euclidean2DPosition> environment,
+            final Reaction<Object> reaction,
+            final Time time,
+            final long step
+        ) {
+            executions[reaction.getNode().getId()]++;
+        }
+    }
+
+    private static final class Weight extends AbstractCondition<Object> {
+        private static final long serialVersionUID = 1L;
+        private Weight(final Node<Object> node) {
+            super(node);
+        }
+        @Override
+        public Context getContext() {
+            return Context.LOCAL;
+        }
+        @Override
+        public double getPropensityContribution() {
+            return WEIGHT;
+        }
+        @Override
+        public boolean isValid() {
+            return true;
+        }
+    }
+
+    private static final class Amount extends AbstractCondition<Object> {
+        private static final long serialVersionUID = 1L;
+        private Amount(final Node<Object> node) {
+            super(node);
+            declareDependencyOn(SPECIES);
+        }
+        @Override
+        public Context getContext() {
+            return Context.LOCAL;
+        }
+        @Override
+        public double getPropensityContribution() {
+            return (Integer) getNode().getConcentration(SPECIES);
+        }
+        @Override
+        public boolean isValid() {
+            return getPropensityContribution() > 0;
+        }
+    }
+
+    private static final class Decrease extends AbstractLocalAction<Object> {
+        private static final long serialVersionUID = 1L;
+        private Decrease(final Node<Object> node) {
+            super(node);
+            declareDependencyTo(SPECIES);
+        }
+        @Override
+        public Action<Object> cloneAction(final Node<Object> node, final Reaction<Object> reaction) {
+            return new Decrease(node);
+        }
+        @Override
+        public void execute() {
+            setConcentration(SPECIES, (Integer) getNode().getConcentration(SPECIES) - 1);
+        }
+    }
+
+    private static final class DummyNode extends AbstractNode<Object> {
+        private static final long serialVersionUID = 1L;
+        private DummyNode(final Environment<?, ?> env) {
+            super(env);
+        }
+        @Override
+        protected Object createT() {
+            return "";
+        }
+    }
+
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.tests;
+
+import it.unibo.alchemist.SupportedIncarnations;
+import it.unibo.alchemist.core.implementations.CompactDependencyGraph;
+import it.unibo.alchemist.core.implementations.JGraphTDependencyGraph;
+import it.unibo.alchemist.core.interfaces.DependencyGraph;
+import it.unibo.alchemist.model.implementations.actions.AbstractAction;
+import it.unibo.alchemist.model.implementations.conditions.AbstractCondition;
+import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.linkingrules.ConnectWithinDistance;
+import it.unibo.alchemist.model.implementations.molecules.SimpleMolecule;
+import it.unibo.alchemist.model.implementations.nodes.AbstractNode;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.implementations.reactions.Event;
+import it.unibo.alchemist.model.implementations.timedistributions.DiracComb;
+import it.unibo.alchemist.model.interfaces.Action;
+import it.unibo.alchemist.model.interfaces.Context;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Molecule;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that the {@link CompactDependencyGraph} computes the same dependencies of the
+ * {@link JGraphTDependencyGraph}, in the same order, and that bulk creation does not change them.
+ */
+public class TestDependencyGraphs {
+
+    private static final int NODES = 300;
+    private static final double SIDE = 20;
+    private static final double RANGE = 1.5;
+    private static final int MAX_REACTIONS = 3;
+    private static final List<Molecule> MOLECULES = List.of(
+        new SimpleMolecule("a"), new SimpleMolecule("b"), new SimpleMolecule("c")
+    );
+    private static final Context[] CONTEXTS = { Context.LOCAL, Context.LOCAL, Context.NEIGHBORHOOD, Context.GLOBAL };
+
+    /**
+     * Builds, partially dismantles and rebuilds both graphs, comparing them at each stage.
+     */
+    @Test
+    public void testSameDependenciesOfJGraphT() {
+        final Environment<Object, Euclidean2DPosition> environment = createEnvironment();
+        final List<Reaction<Object>> reactions = allReactions(environment);
+        final DependencyGraph<Object> reference = new JGraphTDependencyGraph<>(environment);
+        final DependencyGraph<Object> compact = new CompactDependencyGraph<>(environment);
+        reactions.forEach(reference::createDependencies);
+        reactions.forEach(compact::createDependencies);
+        assertSameDependencies(reference, compact, reactions);
+        final List<Reaction<Object>> removed = reactions.subList(0, reactions.size() / 2);
+        removed.forEach(reference::removeDependencies);
+        removed.forEach(compact::removeDependencies);
+        final List<Reaction<Object>> remaining = reactions.subList(reactions.size() / 2, reactions.size());
+        assertSameDependencies(reference, compact, remaining);
+        removed.forEach(reference::createDependencies);
+        removed.forEach(compact::createDependencies);
+        assertSameDependencies(reference, compact, reactions);
+        assertEquals(reference.globalInputContextReactions(), compact.globalInputContextReactions());
+    }
+
+    /**
+     * Checks that building the graphs in bulk gives the same result of adding the reactions one at a time.
+     */
+    @Test
+    public void testBulkCreation() {
+        final Environment<Object, Euclidean2DPosition> environment = createEnvironment();
+        final List<Reaction<Object>> reactions = allReactions(environment);
+        final DependencyGraph<Object> reference = new JGraphTDependencyGraph<>(environment);
+        reactions.forEach(reference::createDependencies);
+        final DependencyGraph<Object> bulkJGraphT = new JGraphTDependencyGraph<>(environment);
+        bulkJGraphT.createAllDependencies(reactions);
+        assertSameDependencies(reference, bulkJGraphT, reactions);
+        final DependencyGraph<Object> bulkCompact = new CompactDependencyGraph<>(environment);
+        final List<Reaction<Object>> firstHalf = reactions.subList(0, reactions.size() / 2);
+        firstHalf.forEach(bulkCompact::createDependencies);
+        bulkCompact.createAllDependencies(reactions.subList(reactions.size() / 2, reactions.size()));
+        assertSameDependencies(reference, bulkCompact, reactions);
+        assertEquals(reference.globalInputContextReactions(), bulkCompact.globalInputContextReactions());
+        assertThrows(IllegalArgumentException.class, () -> bulkCompact.createAllDependencies(firstHalf));
+    }
+
+    private static Environment<Object, Euclidean2DPosition> createEnvironment() {
+        final RandomGenerator random = new MersenneTwister(1);
+        final Environment<Object, Euclidean2DPosition> environment = new Continuous2DEnvironment<>(
+            SupportedIncarnations.<Object, Euclidean2DPosition>get("sapere").orElseThrow()
+        );
+        environment.setLinkingRule(new ConnectWithinDistance<>(RANGE));
+        for (int i = 0; i < NODES; i++) {
+            final Node<Object> node = new DummyNode(environment);
+            final int reactionCount = 1 + random.nextInt(MAX_REACTIONS);
+            for (int r = 0; r < reactionCount; r++) {
+                final Reaction<Object> reaction = new Event<>(node, new DiracComb<>(1));
+                reaction.setConditions(List.of(new Read(node, pick(random, CONTEXTS), pick(random, MOLECULES))));
+                reaction.setActions(List.of(new Write(node, pick(random, CONTEXTS), pick(random, MOLECULES))));
+                node.addReaction(reaction);
+            }
+            environment.addNode(node, environment.makePosition(random.nextDouble() * SIDE, random.nextDouble() * SIDE));
+        }
+        return environment;
+    }
+
+    private static List<Reaction<Object>> allReactions(final Environment<Object, ?> environment) {
+        final List<Reaction<Object>> reactions = new ArrayList<>();
+        environment.forEach(node -> reactions.addAll(node.getReactions()));
+        return reactions;
+    }
+
+    private static void assertSameDependencies(
+        final DependencyGraph<Object> reference,
+        final DependencyGraph<Object> other,
+        final List<Reaction<Object>> reactions
+    ) {
+        for (final Reaction<Object> reaction : reactions) {
+            final List<Reaction<Object>> expected = new ArrayList<>(reference.outboundDependencies(reaction));
+            assertEquals(expected, new ArrayList<>(other.outboundDependencies(reaction)));
+            final List<Reaction<Object>> iterated = new ArrayList<>();
+            other.forEachOutboundDependency(reaction, iterated::add);
+            assertEquals(expected, iterated);
+        }
+    }
+
+    private static <E> E pick(final RandomGenerator random, final List<E> elements) {
+        return elements.get(random.nextInt(elements.size()));
+    }
+
+    private static <E> E pick(final RandomGenerator random, final E[] elements) {
+        return elements[random.nextInt(elements.length)];
+    }
+
+    private static final class Read extends AbstractCondition<Object> {
+        private static final long serialVersionUID = 1L;
+        private final Context context;
+        private Read(final Node<Object> node, final Context context, final Molecule molecule) {
+            super(node);
+            this.context = context;
+            declareDependencyOn(molecule);
+        }
+        @Override
+        public Context getContext() {
+            return context;
+        }
+        @Override
+        public double getPropensityContribution() {
+            return 1;
+        }
+        @Override
+        public boolean isValid() {
+            return true;
+        }
+    }
+
+    private static final class Write extends AbstractAction<Object> {
+        private static final long serialVersionUID = 1L;
+        private final Context context;
+        private Write(final Node<Object> node, final Context context, final Molecule molecule) {
+            super(node);
+            this.context = context;
+            declareDependencyTo(molecule);
+        }
+        @Override
+        public Action<Object> cloneAction(final Node<Object> node, final Reaction<Object> reaction) {
+            throw new UnsupportedOperationException();
+        }
+        @Override
+        public void execute() {
+        }
+        @Override
+        public Context getContext() {
+            return context;
+        }
+    }
+
+    private static final class DummyNode extends AbstractNode<Object> {
+        private static final long serialVersionUID = 1L;
+        private DummyNode(final Environment<?, ?> env) {
+            super(env);
+        }
+        @Override
+        protected Object createT() {
+            return "";
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.tests;
+
+import it.unibo.alchemist.SupportedIncarnations;
+import it.unibo.alchemist.boundary.interfaces.OutputMonitor;
+import it.unibo.alchemist.core.implementations.Engine;
+import it.unibo.alchemist.core.interfaces.Simulation;
+import it.unibo.alchemist.model.implementations.actions.AbstractLocalAction;
+import it.unibo.alchemist.model.implementations.conditions.AbstractCondition;
+import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.linkingrules.NoLinks;
+import it.unibo.alchemist.model.implementations.molecules.SimpleMolecule;
+import it.unibo.alchemist.model.implementations.nodes.AbstractNode;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.implementations.reactions.Event;
+import it.unibo.alchemist.model.implementations.timedistributions.DiracComb;
+import it.unibo.alchemist.model.interfaces.Action;
+import it.unibo.alchemist.model.interfaces.Context;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Molecule;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import it.unibo.alchemist.model.interfaces.Time;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures the memory allocated by the simulation thread per step, once the engine is warm.
+ * Besides the new putative times created by the time distributions, the engine should allocate nothing.
+ */
+public class TestEngineAllocation {
+
+    private static final Logger L = LoggerFactory.getLogger(TestEngineAllocation.class);
+    private static final int NODES = 200;
+    private static final long WARMUP_STEPS = 200_000;
+    private static final long MEASURED_STEPS = 200_000;
+    /**
+     * A new putative time per step, plus some slack for the measurement and the reactions themselves.
+     */
+    private static final double MAX_BYTES_PER_STEP = 128;
+    private static final Molecule SOURCE = new SimpleMolecule("source");
+    private static final Molecule TARGET = new SimpleMolecule("target");
+
+    /**
+     * Runs a model where each node has a reaction influencing another one, and checks the allocation rate.
+     */
+    @Test
+    public void testSteadyStateAllocationRate() {
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final Environment<Object, Euclidean2DPosition> environment = new Continuous2DEnvironment<>(
+            SupportedIncarnations.<Object, Euclidean2DPosition>get("sapere").orElseThrow()
+        );
+        environment.setLinkingRule(new NoLinks<>());
+        for (int i = 0; i < NODES; i++) {
+            final Node<Object> node = new DummyNode(environment);
+            final Reaction<Object> writer = new Event<>(node, new DiracComb<>(1));
+            writer.setActions(List.of(new Touch(node, SOURCE)));
+            node.addReaction(writer);
+            final Reaction<Object> reader = new Event<>(node, new DiracComb<>(2));
+            reader.setConditions(List.of(new Present(node, SOURCE)));
+            reader.setActions(List.of(new Touch(node, TARGET)));
+            node.addReaction(reader);
+            environment.addNode(node, environment.makePosition(i, i));
+        }
+        final Simulation<Object, Euclidean2DPosition> simulation = new Engine<>(environment, WARMUP_STEPS + MEASURED_STEPS);
+        final long[] allocated = new long[2];
+        simulation.addOutputMonitor(new OutputMonitor<>() {
+            @Override
+            public void finished(final Environment<Object, Euclidean2DPosition> environment, final Time time, final long step) {
+                allocated[1] = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+            @Override
+            public void initialized(final Environment<Object, Euclidean2DPosition> environment) {
+            }
+            @Override
+            public void stepDone(
+                final Environment<Object, Euclidean2DPosition> environment,
+                final Reaction<Object> reaction,
+                final Time time,
+                final long step
+            ) {
+                if (step == WARMUP_STEPS) {
+                    allocated[0] = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+                }
+            }
+        });
+        simulation.play();
+        simulation.run();
+        assertTrue(simulation.getError().isEmpty());
+        final double bytesPerStep = (allocated[1] - allocated[0]) / (double) MEASURED_STEPS;
+        L.info("{} allocated {} bytes per step", simulation, bytesPerStep);
+        assertTrue(bytesPerStep < MAX_BYTES_PER_STEP, "Allocated " + bytesPerStep + " bytes per step");
+    }
+
+    private static final class Touch extends AbstractLocalAction<Object> {
+        private static final long serialVersionUID = 1L;
+        private final Molecule molecule;
+        private Touch(final Node<Object> node, final Molecule molecule) {
+            super(node);
+            this.molecule = molecule;
+            declareDependencyTo(molecule);
+        }
+        @Override
+        public Action<Object> cloneAction(final Node<Object> node, final Reaction<Object> reaction) {
+            return new Touch(node, molecule);
+        }
+        @Override
+        public void execute() {
+            setConcentration(molecule, Boolean.TRUE);
+        }
+    }
+
+    private static final class Present extends AbstractCondition<Object> {
+        private static final long serialVersionUID = 1L;
+        private final Molecule molecule;
+        private Present(final Node<Object> node, final Molecule molecule) {
+            super(node);
+            this.molecule = molecule;
+            declareDependencyOn(molecule);
+        }
+        @Override
+        public Context getContext() {
+            return Context.LOCAL;
+        }
+        @Override
+        public double getPropensityContribution() {
+            return 1;
+        }
+        @Override
+        public boolean isValid() {
+            return getNode().contains(molecule);
+        }
+    }
+
+    private static final class DummyNode extends AbstractNode<Object> {
+        private static final long serialVersionUID = 1L;
+        private DummyNode(final Environment<?, ?> env) {
+            super(env);
+        }
+        @Override
+        protected Object createT() {
+            return "";
+        }
+    }
+
+}
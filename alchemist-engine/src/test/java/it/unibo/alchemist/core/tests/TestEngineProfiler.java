@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.tests;
+
+import it.unibo.alchemist.SupportedIncarnations;
+import it.unibo.alchemist.core.implementations.Engine;
+import it.unibo.alchemist.core.implementations.EngineProfiler;
+import it.unibo.alchemist.core.implementations.EngineProfiler.ReactionStatistics;
+import it.unibo.alchemist.model.implementations.actions.AbstractLocalAction;
+import it.unibo.alchemist.model.implementations.conditions.AbstractCondition;
+import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.linkingrules.NoLinks;
+import it.unibo.alchemist.model.implementations.molecules.SimpleMolecule;
+import it.unibo.alchemist.model.implementations.nodes.AbstractNode;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.implementations.reactions.Event;
+import it.unibo.alchemist.model.implementations.timedistributions.DiracComb;
+import it.unibo.alchemist.model.interfaces.Action;
+import it.unibo.alchemist.model.interfaces.Context;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Molecule;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the statistics collected by the {@link EngineProfiler} match the simulated model.
+ */
+public class TestEngineProfiler {
+
+    private static final Logger L = LoggerFactory.getLogger(TestEngineProfiler.class);
+    private static final long STEPS = 3000;
+    private static final Molecule PRODUCED = new SimpleMolecule("produced");
+    private static final Molecule MISSING = new SimpleMolecule("missing");
+
+    /**
+     * A node has a reaction always executing, and one whose condition never holds:
+     * every step must be accounted for either as an execution or as a failure.
+     */
+    @Test
+    public void testCounters() {
+        final Environment<Object, Euclidean2DPosition> environment = new Continuous2DEnvironment<>(
+            SupportedIncarnations.<Object, Euclidean2DPosition>get("sapere").orElseThrow()
+        );
+        environment.setLinkingRule(new NoLinks<>());
+        final Node<Object> node = new DummyNode(environment);
+        final Reaction<Object> producer = new Event<>(node, new DiracComb<>(1));
+        producer.setActions(List.of(new Touch(node, PRODUCED)));
+        node.addReaction(producer);
+        final Reaction<Object> consumer = new Event<>(node, new DiracComb<>(2));
+        consumer.setConditions(List.of(new Present(node, MISSING)));
+        consumer.setActions(List.of(new Touch(node, MISSING)));
+        node.addReaction(consumer);
+        environment.addNode(node, environment.makePosition(0, 0));
+        final Engine<Object, Euclidean2DPosition> simulation = new Engine<>(environment, STEPS);
+        assertTrue(simulation.getProfiler().isEmpty());
+        final EngineProfiler profiler = simulation.enableProfiling();
+        simulation.play();
+        simulation.run();
+        assertTrue(simulation.getError().isEmpty());
+        L.info("Profile:\n{}", profiler.summary());
+        final ReactionStatistics events = profiler.getStatistics().get(Event.class);
+        assertEquals(STEPS, events.getExecutions() + events.getFailedChecks());
+        // The producer runs once per time unit, the consumer twice
+        assertEquals(STEPS / 3.0, events.getExecutions(), 1);
+        assertTrue(events.getConditionsTime() > 0);
+        assertTrue(events.getActionsTime() > 0);
+        assertEquals(0, profiler.getTopologyChanges());
+    }
+
+    private static final class Touch extends AbstractLocalAction<Object> {
+        private static final long serialVersionUID = 1L;
+        private final Molecule molecule;
+        private Touch(final Node<Object> node, final Molecule molecule) {
+            super(node);
+            this.molecule = molecule;
+            declareDependencyTo(molecule);
+        }
+        @Override
+        public Action<Object> cloneAction(final Node<Object> node, final Reaction<Object> reaction) {
+            return new Touch(node, molecule);
+        }
+        @Override
+        public void execute() {
+            setConcentration(molecule, Boolean.TRUE);
+        }
+    }
+
+    private static final class Present extends AbstractCondition<Object> {
+        private static final long serialVersionUID = 1L;
+        private final Molecule molecule;
+        private Present(final Node<Object> node, final Molecule molecule) {
+            super(node);
+            this.molecule = molecule;
+            declareDependencyOn(molecule);
+        }
+        @Override
+        public Context getContext() {
+            return Context.LOCAL;
+        }
+        @Override
+        public double getPropensityContribution() {
+            return 1;
+        }
+        @Override
+        public boolean isValid() {
+            return getNode().contains(molecule);
+        }
+    }
+
+    private static final class DummyNode extends AbstractNode<Object> {
+        private static final long serialVersionUID = 1L;
+        private DummyNode(final Environment<?, ?> env) {
+            super(env);
+        }
+        @Override
+        protected Object createT() {
+            return "";
+        }
+    }
+
+}
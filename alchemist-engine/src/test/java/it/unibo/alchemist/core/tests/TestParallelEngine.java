@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.tests;
+
+import it.unibo.alchemist.SupportedIncarnations;
+import it.unibo.alchemist.boundary.interfaces.OutputMonitor;
+import it.unibo.alchemist.core.implementations.Engine;
+import it.unibo.alchemist.core.implementations.ParallelEngine;
+import it.unibo.alchemist.core.interfaces.Simulation;
+import it.unibo.alchemist.model.implementations.actions.AbstractLocalAction;
+import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.linkingrules.NoLinks;
+import it.unibo.alchemist.model.implementations.molecules.SimpleMolecule;
+import it.unibo.alchemist.model.implementations.nodes.AbstractNode;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.implementations.reactions.Event;
+import it.unibo.alchemist.model.implementations.timedistributions.DiracComb;
+import it.unibo.alchemist.model.implementations.times.DoubleTime;
+import it.unibo.alchemist.model.interfaces.Action;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Molecule;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import it.unibo.alchemist.model.interfaces.Time;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the {@link ParallelEngine} evolves as the sequential {@link Engine}.
+ */
+public class TestParallelEngine {
+
+    private static final int NODES = 200;
+    private static final int MOVERS = 10;
+    private static final double END_TIME = 50;
+    private static final int MAX_NOISE = 10;
+    private static final long SLICED_STEPS = 1000;
+    private static final Molecule COUNTER = new SimpleMolecule("counter");
+
+    /**
+     * With independent random generators, every node goes through the same sequence of values with both engines,
+     * even if the reactions draw random numbers and some of them conflict with each other.
+     */
+    @Test
+    public void testSameTrajectoriesOfSequentialEngine() {
+        final Environment<Object, Euclidean2DPosition> sequential = makeEnvironment(true);
+        final Environment<Object, Euclidean2DPosition> parallel = makeEnvironment(true);
+        final Simulation<Object, Euclidean2DPosition> sequentialEngine = run(sequential, Engine::new);
+        final Simulation<Object, Euclidean2DPosition> parallelEngine = run(parallel, (environment, time) -> {
+            final ParallelEngine<Object, Euclidean2DPosition> engine = new ParallelEngine<>(environment, time);
+            engine.declareIndependentRandomGenerators();
+            return engine;
+        });
+        assertEquals(sequentialEngine.getStep(), parallelEngine.getStep());
+        assertEquals(sequentialEngine.getTime(), parallelEngine.getTime());
+        assertSameTrajectories(sequential, parallel);
+    }
+
+    /**
+     * Simulations stepped one at a time commit exactly one reaction per step.
+     */
+    @Test
+    public void testOneReactionPerStep() {
+        final Environment<Object, Euclidean2DPosition> sequential = makeEnvironment(true);
+        final Environment<Object, Euclidean2DPosition> parallel = makeEnvironment(true);
+        final Engine<Object, Euclidean2DPosition> sequentialEngine = new Engine<>(sequential, SLICED_STEPS);
+        final ParallelEngine<Object, Euclidean2DPosition> parallelEngine =
+            new ParallelEngine<>(parallel, SLICED_STEPS, new DoubleTime(END_TIME));
+        parallelEngine.declareIndependentRandomGenerators();
+        sequentialEngine.play();
+        parallelEngine.play();
+        for (long step = 1; step <= SLICED_STEPS; step++) {
+            final boolean sequentialRunning = sequentialEngine.runSlice(1);
+            assertEquals(sequentialRunning, parallelEngine.runSlice(1));
+            assertEquals(sequentialEngine.getStep(), parallelEngine.getStep());
+            assertEquals(sequentialEngine.getTime(), parallelEngine.getTime());
+        }
+        assertTrue(parallelEngine.getError().isEmpty());
+        assertSameTrajectories(sequential, parallel);
+    }
+
+    /**
+     * A node removed after its reaction has been executed in advance, but before it has been committed, leaves the
+     * simulation: the other reactions executed in advance are committed as usual, and the evolution is the same of
+     * the sequential engine removing the node before executing it.
+     */
+    @Test
+    public void testNodeRemovedBeforeCommit() {
+        final Environment<Object, Euclidean2DPosition> sequential = makeEnvironment(true);
+        final Environment<Object, Euclidean2DPosition> parallel = makeEnvironment(true);
+        final Engine<Object, Euclidean2DPosition> sequentialEngine = new Engine<>(sequential, new DoubleTime(END_TIME));
+        final ParallelEngine<Object, Euclidean2DPosition> parallelEngine =
+            new ParallelEngine<>(parallel, new DoubleTime(END_TIME));
+        parallelEngine.declareIndependentRandomGenerators();
+        sequentialEngine.play();
+        parallelEngine.play();
+        sequentialEngine.runSlice(1);
+        parallelEngine.runSlice(1);
+        /*
+         * A node without conflicting reactions, not yet executed by the sequential engine: the parallel one
+         * executed it in advance
+         */
+        final int removed = IntStream.range(0, NODES)
+            .filter(id -> id % 2 == 1 && trajectory(sequential.getNodeByID(id)).size() == 1)
+            .findFirst()
+            .orElseThrow();
+        assertEquals(2, trajectory(parallel.getNodeByID(removed)).size());
+        sequentialEngine.schedule(() -> sequential.removeNode(sequential.getNodeByID(removed)));
+        parallelEngine.schedule(() -> parallel.removeNode(parallel.getNodeByID(removed)));
+        /*
+         * Once all the other simultaneous reactions are committed, nothing is left to commit
+         */
+        final long simultaneous = NODES + NODES / 2 - 1;
+        sequentialEngine.runSlice(simultaneous - 1);
+        parallelEngine.runSlice(simultaneous - 1);
+        assertEquals(sequentialEngine.getTime(), parallelEngine.getTime());
+        parallelEngine.schedule(() -> parallelEngine.checkpoint(new ByteArrayOutputStream()));
+        sequentialEngine.run();
+        parallelEngine.run();
+        assertTrue(parallelEngine.getError().isEmpty());
+        assertEquals(sequentialEngine.getStep(), parallelEngine.getStep());
+        assertEquals(sequentialEngine.getTime(), parallelEngine.getTime());
+        for (int id = 0; id < NODES; id++) {
+            if (id != removed) {
+                assertEquals(trajectory(sequential.getNodeByID(id)), trajectory(parallel.getNodeByID(id)), "node " + id);
+            }
+        }
+    }
+
+    /**
+     * Reactions moving their node without declaring {@link it.unibo.alchemist.model.interfaces.Dependency#MOVEMENT}
+     * are executed by the simulation thread as long as their actions report that they may change the topology.
+     */
+    @Test
+    public void testUndeclaredMovements() {
+        final Environment<Object, Euclidean2DPosition> sequential = makeEnvironment(false);
+        final Environment<Object, Euclidean2DPosition> parallel = makeEnvironment(false);
+        addMovers(sequential, ConcurrentHashMap.newKeySet());
+        final Set<Thread> movingThreads = ConcurrentHashMap.newKeySet();
+        addMovers(parallel, movingThreads);
+        run(sequential, Engine::new);
+        run(parallel, (environment, time) -> {
+            final ParallelEngine<Object, Euclidean2DPosition> engine = new ParallelEngine<>(environment, time);
+            engine.declareIndependentRandomGenerators();
+            return engine;
+        });
+        assertEquals(Set.of(Thread.currentThread()), movingThreads);
+        assertSameTrajectories(sequential, parallel);
+        for (int id = NODES; id < NODES + MOVERS; id++) {
+            assertEquals(sequential.getPosition(sequential.getNodeByID(id)), parallel.getPosition(parallel.getNodeByID(id)));
+        }
+    }
+
+    /**
+     * Output monitors observe the same steps, in the same order.
+     */
+    @Test
+    public void testSameStepsObserved() {
+        final Trace sequential = new Trace();
+        final Trace parallel = new Trace();
+        run(makeEnvironment(true), (environment, time) -> {
+            final Simulation<Object, Euclidean2DPosition> engine = new Engine<>(environment, time);
+            engine.addOutputMonitor(sequential);
+            return engine;
+        });
+        run(makeEnvironment(true), (environment, time) -> {
+            final ParallelEngine<Object, Euclidean2DPosition> engine = new ParallelEngine<>(environment, time);
+            engine.declareIndependentRandomGenerators();
+            engine.addOutputMonitor(parallel);
+            return engine;
+        });
+        assertEquals(sequential.events, parallel.events);
+    }
+
+    /**
+     * Without conflicting reactions, synchronous rounds reach the same state of the sequential engine.
+     */
+    @Test
+    public void testSynchronousRounds() {
+        final Environment<Object, Euclidean2DPosition> sequential = makeEnvironment(false);
+        final Environment<Object, Euclidean2DPosition> rounds = makeEnvironment(false);
+        final Simulation<Object, Euclidean2DPosition> sequentialEngine = run(sequential, Engine::new);
+        final Simulation<Object, Euclidean2DPosition> roundEngine = run(rounds, (environment, time) -> {
+            final ParallelEngine<Object, Euclidean2DPosition> engine = new ParallelEngine<>(environment, time);
+            engine.declareIndependentRandomGenerators();
+            engine.enableSynchronousRounds();
+            return engine;
+        });
+        assertEquals(sequentialEngine.getStep(), roundEngine.getStep());
+        assertEquals(sequentialEngine.getTime(), roundEngine.getTime());
+        assertSameTrajectories(sequential, rounds);
+    }
+
+    private static void assertSameTrajectories(
+        final Environment<Object, Euclidean2DPosition> expected,
+        final Environment<Object, Euclidean2DPosition> actual
+    ) {
+        for (int id = 0; id < NODES; id++) {
+            assertEquals(trajectory(expected.getNodeByID(id)), trajectory(actual.getNodeByID(id)), "node " + id);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Integer> trajectory(final Node<Object> node) {
+        return (List<Integer>) node.getConcentration(COUNTER);
+    }
+
+    private static Simulation<Object, Euclidean2DPosition> run(
+        final Environment<Object, Euclidean2DPosition> environment,
+        final BiFunction<Environment<Object, Euclidean2DPosition>, DoubleTime, Simulation<Object, Euclidean2DPosition>> engine
+    ) {
+        final Simulation<Object, Euclidean2DPosition> simulation = engine.apply(environment, new DoubleTime(END_TIME));
+        simulation.play();
+        simulation.run();
+        assertTrue(simulation.getError().isEmpty());
+        return simulation;
+    }
+
+    private static Environment<Object, Euclidean2DPosition> makeEnvironment(final boolean conflicting) {
+        final Environment<Object, Euclidean2DPosition> environment = new Continuous2DEnvironment<>(
+            SupportedIncarnations.<Object, Euclidean2DPosition>get("sapere").orElseThrow()
+        );
+        environment.setLinkingRule(new NoLinks<>());
+        for (int i = 0; i < NODES; i++) {
+            final Node<Object> node = new DummyNode(environment);
+            /*
+             * Each node has its own random generator, as it happens with random streams
+             */
+            final RandomGenerator random = new MersenneTwister(i);
+            node.setConcentration(COUNTER, new ArrayList<>(List.of(0)));
+            addCountingReaction(node, 1, random);
+            if (conflicting && i % 2 == 0) {
+                /*
+                 * Half of the nodes have two conflicting reactions, which must be executed sequentially
+                 */
+                addCountingReaction(node, 2, random);
+            }
+            environment.addNode(node, environment.makePosition(i, i));
+        }
+        return environment;
+    }
+
+    private static void addMovers(final Environment<Object, Euclidean2DPosition> environment, final Set<Thread> threads) {
+        for (int i = 0; i < MOVERS; i++) {
+            final Node<Object> node = new DummyNode(environment);
+            final Reaction<Object> reaction = new Event<>(node, new DiracComb<>(1));
+            reaction.setActions(List.of(new Move(environment, node, threads)));
+            node.addReaction(reaction);
+            environment.addNode(node, environment.makePosition(-i, i));
+        }
+    }
+
+    private static void addCountingReaction(final Node<Object> node, final int increment, final RandomGenerator random) {
+        final Reaction<Object> reaction = new Event<>(node, new DiracComb<>(1));
+        reaction.setActions(List.of(new Count(node, increment, random)));
+        node.addReaction(reaction);
+    }
+
+    private static final class Move extends AbstractLocalAction<Object> {
+        private static final long serialVersionUID = 1L;
+        private final Environment<Object, Euclidean2DPosition> environment;
+        private final Set<Thread> threads;
+        private Move(
+            final Environment<Object, Euclidean2DPosition> environment,
+            final Node<Object> node,
+            final Set<Thread> threads
+        ) {
+            super(node);
+            this.environment = environment;
+            this.threads = threads;
+        }
+        @Override
+        public Action<Object> cloneAction(final Node<Object> node, final Reaction<Object> reaction) {
+            return new Move(environment, node, threads);
+        }
+        @Override
+        public void execute() {
+            threads.add(Thread.currentThread());
+            final Euclidean2DPosition position = environment.getPosition(getNode());
+            environment.moveNodeToPosition(getNode(), environment.makePosition(position.getX() + 1, position.getY()));
+        }
+        @Override
+        public boolean mayChangeTopology() {
+            return true;
+        }
+    }
+
+    private static final class Count extends AbstractLocalAction<Object> {
+        private static final long serialVersionUID = 1L;
+        private final int increment;
+        private final RandomGenerator random;
+        private Count(final Node<Object> node, final int increment, final RandomGenerator random) {
+            super(node);
+            this.increment = increment;
+            this.random = random;
+            declareDependencyTo(COUNTER);
+        }
+        @Override
+        public Action<Object> cloneAction(final Node<Object> node, final Reaction<Object> reaction) {
+            return new Count(node, increment, random);
+        }
+        @Override
+        public void execute() {
+            /*
+             * Multiply before adding, so that the result depends on the order of execution
+             */
+            final List<Integer> trajectory = trajectory(getNode());
+            final int current = trajectory.get(trajectory.size() - 1);
+            trajectory.add(current * 2 + increment + random.nextInt(MAX_NOISE));
+        }
+    }
+
+    private static final class Trace implements OutputMonitor<Object, Euclidean2DPosition> {
+        private static final long serialVersionUID = 1L;
+        private final List<String> events = new ArrayList<>();
+        @Override
+        public void finished(final Environment<Object, Euclidean2DPosition> environment, final Time time, final long step) {
+        }
+        @Override
+        public void initialized(final Environment<Object, Euclidean2DPosition> environment) {
+        }
+        @Override
+        public void stepDone(
+            final Environment<Object, Euclidean2DPosition> environment,
+            final Reaction<Object> reaction,
+            final Time time,
+            final long step
+        ) {
+            events.add(step + ": node " + reaction.getNode().getId() + " at " + time);
+        }
+    }
+
+    private static final class DummyNode extends AbstractNode<Object> {
+        private static final long serialVersionUID = 1L;
+        private DummyNode(final Environment<?, ?> env) {
+            super(env);
+        }
+        @Override
+        protected Object createT() {
+            return "";
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.tests;
+
+import it.unibo.alchemist.SupportedIncarnations;
+import it.unibo.alchemist.boundary.interfaces.OutputMonitor;
+import it.unibo.alchemist.core.implementations.Engine;
+import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.linkingrules.NoLinks;
+import it.unibo.alchemist.model.implementations.nodes.AbstractNode;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.implementations.reactions.Event;
+import it.unibo.alchemist.model.implementations.timedistributions.ExponentialTime;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import it.unibo.alchemist.model.interfaces.Time;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that simulations run in slices, interleaved on the same thread, evolve exactly as if run in one go.
+ */
+public class TestRunSlice {
+
+    private static final int NODES = 10;
+    private static final long SHORT = 500;
+    private static final long LONG = 1500;
+    private static final long SLICE = 64;
+
+    /**
+     * Interleaves the slices of a short and a long simulation, and compares them with their unsliced versions.
+     */
+    @Test
+    public void testInterleavedSlices() {
+        final Trace shortReference = run(new Engine<>(createEnvironment(1), SHORT));
+        final Trace longReference = run(new Engine<>(createEnvironment(2), LONG));
+        final Engine<Object, Euclidean2DPosition> shortSimulation = new Engine<>(createEnvironment(1), SHORT);
+        final Engine<Object, Euclidean2DPosition> longSimulation = new Engine<>(createEnvironment(2), LONG);
+        final Trace shortTrace = new Trace();
+        final Trace longTrace = new Trace();
+        shortSimulation.addOutputMonitor(shortTrace);
+        longSimulation.addOutputMonitor(longTrace);
+        shortSimulation.play();
+        longSimulation.play();
+        boolean shortRunning = true;
+        boolean longRunning = true;
+        int slices = 0;
+        while (shortRunning || longRunning) {
+            shortRunning = shortSimulation.runSlice(SLICE);
+            longRunning = longSimulation.runSlice(SLICE);
+            slices++;
+        }
+        assertEquals((LONG + SLICE - 1) / SLICE, slices);
+        assertFalse(shortSimulation.runSlice(SLICE));
+        assertTrue(shortSimulation.getError().isEmpty());
+        assertTrue(longSimulation.getError().isEmpty());
+        assertEquals(shortReference.events, shortTrace.events);
+        assertEquals(longReference.events, longTrace.events);
+        assertEquals(1, shortTrace.finished);
+        assertEquals(1, longTrace.finished);
+    }
+
+    private static Trace run(final Engine<Object, Euclidean2DPosition> simulation) {
+        final Trace trace = new Trace();
+        simulation.addOutputMonitor(trace);
+        simulation.play();
+        simulation.run();
+        assertTrue(simulation.getError().isEmpty());
+        return trace;
+    }
+
+    private static Environment<Object, Euclidean2DPosition> createEnvironment(final int seed) {
+        final Environment<Object, Euclidean2DPosition> environment = new Continuous2DEnvironment<>(
+            SupportedIncarnations.<Object, Euclidean2DPosition>get("sapere").orElseThrow()
+        );
+        environment.setLinkingRule(new NoLinks<>());
+        final RandomGenerator random = new MersenneTwister(seed);
+        for (int i = 0; i < NODES; i++) {
+            final Node<Object> node = new DummyNode(environment);
+            node.addReaction(new Event<>(node, new ExponentialTime<>(1 + i % 4, random)));
+            environment.addNode(node, environment.makePosition(i, 0));
+        }
+        return environment;
+    }
+
+    private static class Trace implements OutputMonitor<Object, Euclidean2DPosition> {
+        private static final long serialVersionUID = 1L;
+        private final List<String> events = new ArrayList<>();
+        private int finished;
+        @Override
+        public void finished(final Environment<Object, Euclidean2DPosition> environment, final Time time, final long step) {
+            finished++;
+        }
+        @Override
+        public void initialized(final Environment<Object, Euclidean2DPosition> environment) {
+        }
+        @Override
+        public void stepDone(
+            final Environment<Object, Euclidean2DPosition> environment,
+            final Reaction<Object> reaction,
+            final Time time,
+            final long step
+        ) {
+            events.add(step + ": node " + reaction.getNode().getId() + " at " + time);
+        }
+    }
+
+    private static final class DummyNode extends AbstractNode<Object> {
+        private static final long serialVersionUID = 1L;
+        private DummyNode(final Environment<?, ?> env) {
+            super(env);
+        }
+        @Override
+        protected Object createT() {
+            return "";
+        }
+    }
+
+}
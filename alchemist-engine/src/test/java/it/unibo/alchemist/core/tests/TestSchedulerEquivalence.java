@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.tests;
+
+import it.unibo.alchemist.SupportedIncarnations;
+import it.unibo.alchemist.core.implementations.ArrayIndexedPriorityQueue;
+import it.unibo.alchemist.core.implementations.CalendarQueue;
+import it.unibo.alchemist.core.implementations.DAryIndexedPriorityQueue;
+import it.unibo.alchemist.core.interfaces.Scheduler;
+import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.nodes.AbstractNode;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.implementations.reactions.Event;
+import it.unibo.alchemist.model.implementations.timedistributions.ExponentialTime;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the {@link CalendarQueue} and the {@link DAryIndexedPriorityQueue} against the
+ * {@link ArrayIndexedPriorityQueue} on a hold model:
+ * a population of exponentially distributed reactions is repeatedly extracted and rescheduled.
+ * Half of the reactions are much slower than the others, so that the distribution of the scheduled times
+ * drifts while the population stays the same. All schedulers must produce the same sequence of events.
+ */
+public class TestSchedulerEquivalence {
+
+    private static final int REACTIONS = 10_000;
+    private static final int EVENTS = 200_000;
+    private static final double SLOW_RATE = 1e-3;
+
+    /**
+     * Runs the hold model on the calendar queue and on the binary heap.
+     */
+    @Test
+    public void testCalendarQueueAgainstHeap() {
+        compareWithHeap(CalendarQueue::new);
+    }
+
+    /**
+     * Runs the hold model on the primitive d-ary heap and on the binary heap.
+     */
+    @Test
+    public void testDAryHeapAgainstHeap() {
+        compareWithHeap(DAryIndexedPriorityQueue::new);
+    }
+
+    private static void compareWithHeap(final Supplier<Scheduler<Object>> schedulerFactory) {
+        assertEquals(hold(ArrayIndexedPriorityQueue::new), hold(schedulerFactory));
+    }
+
+    private static List<Double> hold(final Supplier<Scheduler<Object>> schedulerFactory) {
+        final Environment<Object, Euclidean2DPosition> environment = new Continuous2DEnvironment<>(
+            SupportedIncarnations.<Object, Euclidean2DPosition>get("sapere").orElseThrow()
+        );
+        final Node<Object> node = new DummyNode(environment);
+        final RandomGenerator random = new MersenneTwister(0);
+        final Scheduler<Object> scheduler = schedulerFactory.get();
+        for (int i = 0; i < REACTIONS; i++) {
+            scheduler.addReaction(new Event<>(node, new ExponentialTime<>(i % 2 == 0 ? 1 : SLOW_RATE, random)));
+        }
+        final List<Double> times = new ArrayList<>(EVENTS);
+        for (int i = 0; i < EVENTS; i++) {
+            final Reaction<Object> next = scheduler.getNext();
+            times.add(next.getTau().toDouble());
+            next.update(next.getTau(), true, environment);
+            scheduler.updateReaction(next);
+        }
+        return times;
+    }
+
+    private static final class DummyNode extends AbstractNode<Object> {
+        private static final long serialVersionUID = 1L;
+        private DummyNode(final Environment<?, ?> env) {
+            super(env);
+        }
+        @Override
+        protected Object createT() {
+            return "";
+        }
+    }
+
+}
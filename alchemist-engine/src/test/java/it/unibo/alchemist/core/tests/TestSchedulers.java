@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.tests;
+
+import it.unibo.alchemist.SupportedIncarnations;
+import it.unibo.alchemist.core.implementations.ArrayIndexedPriorityQueue;
+import it.unibo.alchemist.core.implementations.CalendarQueue;
+import it.unibo.alchemist.core.implementations.DAryIndexedPriorityQueue;
+import it.unibo.alchemist.core.implementations.TimingWheelQueue;
+import it.unibo.alchemist.core.interfaces.Scheduler;
+import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.nodes.AbstractNode;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.implementations.reactions.Event;
+import it.unibo.alchemist.model.implementations.timedistributions.AbstractDistribution;
+import it.unibo.alchemist.model.implementations.times.DoubleTime;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import it.unibo.alchemist.model.interfaces.Time;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Applies the same random sequence of additions, single and bulk updates, and removals to all the {@link Scheduler}s,
+ * including reactions whose putative time becomes infinite, and checks they agree on the next reactions.
+ * Half of the reactions are periodic, and go in the wheel of the {@link TimingWheelQueue}s
+ * (whose tiniest tick makes some of them overflow the wheel).
+ * The {@link ArrayIndexedPriorityQueue} must also return simultaneous reactions in FIFO order.
+ */
+public class TestSchedulers {
+
+    private static final int REACTIONS = 200;
+    private static final int OPERATIONS = 20_000;
+    private static final int DISTINCT_TIMES = 50;
+    private static final double INFINITE_PROBABILITY = 0.3;
+    private static final double REMOVAL_PROBABILITY = 0.1;
+    private static final double BULK_PROBABILITY = 0.01;
+    private static final double COARSE_TICK = 0.5;
+    private static final double TINY_TICK = 1e-9;
+
+    /**
+     * Runs the random sequence of operations.
+     */
+    @Test
+    public void testSchedulersAgree() {
+        final RandomGenerator random = new MersenneTwister(0);
+        final Environment<Object, Euclidean2DPosition> environment = new Continuous2DEnvironment<>(
+            SupportedIncarnations.<Object, Euclidean2DPosition>get("sapere").orElseThrow()
+        );
+        final Node<Object> node = new DummyNode(environment);
+        final List<ManualTime> distributions = new ArrayList<>(REACTIONS);
+        final List<Reaction<Object>> reactions = new ArrayList<>(REACTIONS);
+        for (int i = 0; i < REACTIONS; i++) {
+            final ManualTime distribution = new ManualTime(i % 2 == 0);
+            distributions.add(distribution);
+            reactions.add(new Event<>(node, distribution));
+        }
+        final List<Scheduler<Object>> schedulers = List.of(
+            new ArrayIndexedPriorityQueue<>(),
+            new DAryIndexedPriorityQueue<>(),
+            new DAryIndexedPriorityQueue<>(2),
+            new CalendarQueue<>(),
+            new TimingWheelQueue<>(),
+            new TimingWheelQueue<>(COARSE_TICK),
+            new TimingWheelQueue<>(TINY_TICK)
+        );
+        final Map<Reaction<Object>, Time> scheduled = new LinkedHashMap<>();
+        final Map<Reaction<Object>, Long> order = new HashMap<>();
+        long nextOrder = 0;
+        for (int operation = 0; operation < OPERATIONS; operation++) {
+            final int index = random.nextInt(REACTIONS);
+            final Reaction<Object> reaction = reactions.get(index);
+            if (random.nextDouble() < BULK_PROBABILITY) {
+                final List<Reaction<Object>> group = new ArrayList<>();
+                for (final Map.Entry<Reaction<Object>, Time> entry : scheduled.entrySet()) {
+                    if (random.nextBoolean()) {
+                        ((ManualTime) entry.getKey().getTimeDistribution()).set(randomTime(random));
+                        if (!entry.getValue().equals(entry.getKey().getTau())) {
+                            order.put(entry.getKey(), nextOrder++);
+                        }
+                        entry.setValue(entry.getKey().getTau());
+                        group.add(entry.getKey());
+                    }
+                }
+                schedulers.forEach(it -> it.updateReactions(group));
+            } else if (scheduled.containsKey(reaction) && random.nextDouble() < REMOVAL_PROBABILITY) {
+                scheduled.remove(reaction);
+                order.remove(reaction);
+                schedulers.forEach(it -> it.removeReaction(reaction));
+            } else {
+                distributions.get(index).set(randomTime(random));
+                final Time previous = scheduled.put(reaction, reaction.getTau());
+                if (!reaction.getTau().equals(previous)) {
+                    order.put(reaction, nextOrder++);
+                }
+                if (previous == null) {
+                    schedulers.forEach(it -> it.addReaction(reaction));
+                } else {
+                    schedulers.forEach(it -> it.updateReaction(reaction));
+                }
+            }
+            checkAgreement(scheduled, schedulers);
+            checkFifo(scheduled, order, schedulers.get(0));
+        }
+    }
+
+    private static Time randomTime(final RandomGenerator random) {
+        return random.nextDouble() < INFINITE_PROBABILITY ? Time.INFINITY : new DoubleTime(random.nextInt(DISTINCT_TIMES));
+    }
+
+    private static void checkAgreement(final Map<Reaction<Object>, Time> scheduled, final List<Scheduler<Object>> schedulers) {
+        if (scheduled.isEmpty()) {
+            for (final Scheduler<Object> scheduler : schedulers) {
+                assertNull(scheduler.getNext());
+                assertEquals(List.of(), scheduler.getNextBatch());
+            }
+        } else {
+            final Time next = scheduled.values().stream().min(Time::compareTo).orElseThrow();
+            final Set<Reaction<Object>> batch = scheduled.keySet().stream()
+                .filter(it -> it.getTau().equals(next))
+                .collect(Collectors.toSet());
+            for (final Scheduler<Object> scheduler : schedulers) {
+                assertEquals(next, scheduler.getNext().getTau(), scheduler::toString);
+                assertEquals(batch, new HashSet<>(scheduler.getNextBatch()), scheduler::toString);
+            }
+        }
+    }
+
+    private static void checkFifo(
+        final Map<Reaction<Object>, Time> scheduled,
+        final Map<Reaction<Object>, Long> order,
+        final Scheduler<Object> scheduler
+    ) {
+        if (!scheduled.isEmpty()) {
+            final Time next = scheduled.values().stream().min(Time::compareTo).orElseThrow();
+            final List<Reaction<Object>> batch = scheduled.keySet().stream()
+                .filter(it -> it.getTau().equals(next))
+                .sorted(Comparator.comparingLong(order::get))
+                .collect(Collectors.toList());
+            assertEquals(batch.get(0), scheduler.getNext());
+            assertEquals(batch, scheduler.getNextBatch());
+        }
+    }
+
+    /**
+     * Pins the order in which the {@link ArrayIndexedPriorityQueue} returns simultaneous reactions, which differs
+     * from the one of the heap keeping infinite reactions inside: a reaction is returned after the simultaneous ones
+     * that got their time before it, also when it has been parked or has been moved away and back in the meanwhile.
+     */
+    @Test
+    public void testTieOrder() {
+        final Environment<Object, Euclidean2DPosition> environment = new Continuous2DEnvironment<>(
+            SupportedIncarnations.<Object, Euclidean2DPosition>get("sapere").orElseThrow()
+        );
+        final Node<Object> node = new DummyNode(environment);
+        final Scheduler<Object> scheduler = new ArrayIndexedPriorityQueue<>();
+        final List<ManualTime> distributions = new ArrayList<>();
+        final List<Reaction<Object>> reactions = new ArrayList<>();
+        final Time[] initial = {new DoubleTime(1), Time.INFINITY, new DoubleTime(1), new DoubleTime(1), new DoubleTime(1)};
+        for (final Time time : initial) {
+            final ManualTime distribution = new ManualTime(false);
+            distribution.set(time);
+            final Reaction<Object> reaction = new Event<>(node, distribution);
+            distributions.add(distribution);
+            reactions.add(reaction);
+            scheduler.addReaction(reaction);
+        }
+        distributions.get(2).set(new DoubleTime(2));
+        scheduler.updateReaction(reactions.get(2));
+        distributions.get(2).set(new DoubleTime(1));
+        scheduler.updateReaction(reactions.get(2));
+        distributions.get(1).set(new DoubleTime(1));
+        scheduler.updateReaction(reactions.get(1));
+        final List<Integer> executed = new ArrayList<>();
+        while (scheduler.getNext().getTau().equals(new DoubleTime(1))) {
+            final Reaction<Object> next = scheduler.getNext();
+            executed.add(reactions.indexOf(next));
+            distributions.get(reactions.indexOf(next)).set(new DoubleTime(2));
+            scheduler.updateReaction(next);
+        }
+        assertEquals(List.of(0, 3, 4, 2, 1), executed);
+    }
+
+    private static final class ManualTime extends AbstractDistribution<Object> {
+        private static final long serialVersionUID = 1L;
+        private final boolean periodic;
+        private ManualTime(final boolean periodic) {
+            super(Time.INFINITY);
+            this.periodic = periodic;
+        }
+        private void set(final Time time) {
+            setNextOccurrence(time);
+        }
+        @Override
+        public boolean isPeriodic() {
+            return periodic;
+        }
+        @Override
+        public double getRate() {
+            return 1;
+        }
+        @Override
+        protected void updateStatus(
+            final Time currentTime,
+            final boolean executed,
+            final double param,
+            final Environment<Object, ?> environment
+        ) {
+        }
+        @Override
+        public AbstractDistribution<Object> clone(final Time currentTime) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final class DummyNode extends AbstractNode<Object> {
+        private static final long serialVersionUID = 1L;
+        private DummyNode(final Environment<?, ?> env) {
+            super(env);
+        }
+        @Override
+        protected Object createT() {
+            return "";
+        }
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.tests;
+
+import it.unibo.alchemist.SupportedIncarnations;
+import it.unibo.alchemist.core.implementations.Engine;
+import it.unibo.alchemist.core.interfaces.Simulation;
+import it.unibo.alchemist.model.implementations.actions.AbstractAction;
+import it.unibo.alchemist.model.implementations.conditions.AbstractCondition;
+import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.linkingrules.ConnectWithinDistance;
+import it.unibo.alchemist.model.implementations.molecules.SimpleMolecule;
+import it.unibo.alchemist.model.implementations.nodes.AbstractNode;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.implementations.reactions.AbstractReaction;
+import it.unibo.alchemist.model.implementations.timedistributions.DiracComb;
+import it.unibo.alchemist.model.implementations.times.DoubleTime;
+import it.unibo.alchemist.model.interfaces.Action;
+import it.unibo.alchemist.model.interfaces.Context;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Molecule;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import it.unibo.alchemist.model.interfaces.Time;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the {@link Engine} re-evaluates each reaction at most once per step as a dependency,
+ * even if it is reachable through several neighborhoods, and that an executed reaction depending on itself
+ * is re-evaluated as a dependency before being rescheduled.
+ */
+public class TestUpdateCoalescing {
+
+    private static final int NODES = 30;
+    private static final double RANGE = 3;
+    private static final double END_TIME = 20;
+    private static final Molecule MOLECULE = new SimpleMolecule("molecule");
+
+    /**
+     * Runs a dense network of reactions reading and writing the same molecule in their neighborhood.
+     */
+    @Test
+    public void testAtMostOneUpdatePerStep() {
+        final Environment<Object, Euclidean2DPosition> environment = new Continuous2DEnvironment<>(
+            SupportedIncarnations.<Object, Euclidean2DPosition>get("sapere").orElseThrow()
+        );
+        environment.setLinkingRule(new ConnectWithinDistance<>(RANGE));
+        final List<CountingReaction> reactions = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            final Node<Object> node = new DummyNode(environment);
+            final CountingReaction reaction = new CountingReaction(node, 1 + i % 3);
+            reaction.setConditions(List.of(new Read(node)));
+            reaction.setActions(List.of(new Write(node)));
+            node.addReaction(reaction);
+            reactions.add(reaction);
+            environment.addNode(node, environment.makePosition(i, 0));
+        }
+        final Simulation<Object, Euclidean2DPosition> simulation = new Engine<>(environment, new DoubleTime(END_TIME));
+        simulation.play();
+        simulation.run();
+        assertTrue(simulation.getError().isEmpty());
+        for (final CountingReaction reaction : reactions) {
+            assertEquals(1, reaction.maxUpdatesPerStep, () -> reaction + " was updated more than once in a step");
+            assertTrue(reaction.executions > 0);
+            assertEquals(reaction.executions, reaction.selfUpdates, () -> reaction + " missed its own update");
+        }
+    }
+
+    private static final class CountingReaction extends AbstractReaction<Object> {
+        private static final long serialVersionUID = 1L;
+        private long lastStep = -1;
+        private int updatesInStep;
+        private int maxUpdatesPerStep;
+        private int executions;
+        private int selfUpdates;
+        private CountingReaction(final Node<Object> node, final double rate) {
+            super(node, new DiracComb<>(rate));
+        }
+        @Override
+        protected void updateInternalStatus(
+            final Time currentTime,
+            final boolean hasBeenExecuted,
+            final Environment<Object, ?> environment
+        ) {
+            final long step = environment.getSimulation().getStep();
+            if (step != lastStep) {
+                updatesInStep = 0;
+                lastStep = step;
+            }
+            if (hasBeenExecuted) {
+                executions++;
+                if (updatesInStep > 0) {
+                    selfUpdates++;
+                }
+            } else {
+                updatesInStep++;
+                maxUpdatesPerStep = Math.max(maxUpdatesPerStep, updatesInStep);
+            }
+        }
+        @Override
+        public double getRate() {
+            return getTimeDistribution().getRate();
+        }
+        @Override
+        public Reaction<Object> cloneOnNewNode(final Node<Object> node, final Time currentTime) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final class Read extends AbstractCondition<Object> {
+        private static final long serialVersionUID = 1L;
+        private Read(final Node<Object> node) {
+            super(node);
+            declareDependencyOn(MOLECULE);
+        }
+        @Override
+        public Context getContext() {
+            return Context.NEIGHBORHOOD;
+        }
+        @Override
+        public double getPropensityContribution() {
+            return 1;
+        }
+        @Override
+        public boolean isValid() {
+            return true;
+        }
+    }
+
+    private static final class Write extends AbstractAction<Object> {
+        private static final long serialVersionUID = 1L;
+        private Write(final Node<Object> node) {
+            super(node);
+            declareDependencyTo(MOLECULE);
+        }
+        @Override
+        public Action<Object> cloneAction(final Node<Object> node, final Reaction<Object> reaction) {
+            throw new UnsupportedOperationException();
+        }
+        @Override
+        public void execute() {
+            getNode().setConcentration(MOLECULE, Boolean.TRUE);
+        }
+        @Override
+        public Context getContext() {
+            return Context.NEIGHBORHOOD;
+        }
+    }
+
+    private static final class DummyNode extends AbstractNode<Object> {
+        private static final long serialVersionUID = 1L;
+        private DummyNode(final Environment<?, ?> env) {
+            super(env);
+        }
+        @Override
+        protected Object createT() {
+            return "";
+        }
+    }
+
+}
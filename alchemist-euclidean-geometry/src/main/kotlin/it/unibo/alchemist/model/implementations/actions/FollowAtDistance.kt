@@ -67,4 +67,9 @@ class FollowAtDistance<T>(
     }
 
     override fun getContext() = Context.LOCAL
+
+    /**
+     * Moving the node changes the topology.
+     */
+    override fun mayChangeTopology() = true
 }
@@ -11,8 +11,10 @@ package it.unibo.alchemist.model.implementations.environments
 
 import it.unibo.alchemist.model.implementations.geometry.euclidean2d.Segment2DImpl
 import it.unibo.alchemist.model.implementations.geometry.AdimensionalShape
+import it.unibo.alchemist.model.implementations.linkingrules.ConnectWithinDistance
 import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition
 import it.unibo.alchemist.model.interfaces.Incarnation
+import it.unibo.alchemist.model.interfaces.LinkingRule
 import it.unibo.alchemist.model.interfaces.Neighborhood
 import it.unibo.alchemist.model.interfaces.Node
 import it.unibo.alchemist.model.interfaces.environments.Euclidean2DEnvironment
@@ -23,13 +25,22 @@ import it.unibo.alchemist.model.interfaces.geometry.euclidean2d.Euclidean2DShape
 import it.unibo.alchemist.model.interfaces.geometry.euclidean2d.Euclidean2DTransformation
 import it.unibo.alchemist.model.interfaces.geometry.euclidean2d.Segment2D
 import it.unibo.alchemist.model.interfaces.nodes.NodeWithShape
+import org.danilopianini.util.FlexibleQuadTree
+import org.danilopianini.util.SpatialIndex
 
 /**
  * Implementation of [Physics2DEnvironment].
+ *
+ * Nodes are indexed in a uniform grid with cells of side [gridCellSize], if provided. Otherwise, they are indexed
+ * in a quadtree, which gets replaced by a grid as soon as the linking rule connects all and only the nodes within a
+ * fixed range (see [ConnectWithinDistance.linksOnlyWithinRange]).
  */
-open class Continuous2DEnvironment<T>(incarnation: Incarnation<T, Euclidean2DPosition>) :
+open class Continuous2DEnvironment<T> @JvmOverloads constructor(
+    incarnation: Incarnation<T, Euclidean2DPosition>,
+    private val gridCellSize: Double = Double.NaN
+) :
     Euclidean2DEnvironment<T>,
-    Abstract2DEnvironment<T, Euclidean2DPosition>(incarnation),
+    Abstract2DEnvironment<T, Euclidean2DPosition>(incarnation, indexFor(gridCellSize)),
     Physics2DEnvironment<T> {
 
     companion object {
@@ -37,6 +48,11 @@ open class Continuous2DEnvironment<T>(incarnation: Incarnation<T, Euclidean2DPos
 
         private val adimensional =
             AdimensionalShape<Euclidean2DPosition, Euclidean2DTransformation>(Euclidean2DEnvironment.origin)
+
+        private fun <T> indexFor(gridCellSize: Double): SpatialIndex<Node<T>> = when {
+            gridCellSize.isNaN() -> FlexibleQuadTree()
+            else -> GridSpatialIndex(2, gridCellSize)
+        }
     }
 
     override val shapeFactory: Euclidean2DShapeFactory = GeometricShapeFactory.getInstance()
@@ -51,6 +67,20 @@ open class Continuous2DEnvironment<T>(incarnation: Incarnation<T, Euclidean2DPos
                 .filter { shape.intersects(getShape(it)) }
     }
 
+    /**
+     * Unless a grid cell size was explicitly provided, switches to a grid whose cells are as large as the range of
+     * the [linkingRule], if such range is fixed.
+     */
+    override fun linkingRuleChanged(linkingRule: LinkingRule<T, Euclidean2DPosition>) {
+        if (gridCellSize.isNaN() && ConnectWithinDistance.linksOnlyWithinRange(linkingRule)) {
+            val range = (linkingRule as ConnectWithinDistance<*, *>).range
+            val current = spatialIndex
+            if (range > 0 && range.isFinite() && (current !is GridSpatialIndex<*> || current.cellSize != range)) {
+                spatialIndex = GridSpatialIndex(2, range)
+            }
+        }
+    }
+
     override fun getHeading(node: Node<T>) = nodeToHeading.getOrPut(node, { defaultHeading })
 
     override fun setHeading(node: Node<T>, direction: Euclidean2DPosition) {
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.test;
+
+import it.unibo.alchemist.SupportedIncarnations;
+import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.linkingrules.ClosestN;
+import it.unibo.alchemist.model.implementations.linkingrules.NoLinks;
+import it.unibo.alchemist.model.implementations.nodes.IntNode;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.interfaces.Incarnation;
+import it.unibo.alchemist.model.interfaces.Node;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the k-nearest neighbors queries and the {@link ClosestN} linking rule against a brute force search.
+ */
+public final class TestClosestN {
+
+    private static final int NODES = 300;
+    private static final int N = 5;
+    private static final double SIDE = 100;
+    private static final int LARGE = 100_000;
+    private static final int SAMPLES = 100;
+    private static final Incarnation<Integer, Euclidean2DPosition> INCARNATION =
+            SupportedIncarnations.<Integer, Euclidean2DPosition>get("protelis").orElseThrow();
+    private Continuous2DEnvironment<Integer> environment;
+
+    /**
+     * Fills an environment with randomly placed nodes.
+     */
+    @BeforeEach
+    public void setUp() {
+        environment = new Continuous2DEnvironment<>(INCARNATION);
+        environment.setLinkingRule(new NoLinks<>());
+        final RandomGenerator random = new MersenneTwister(1);
+        for (int i = 0; i < NODES; i++) {
+            environment.addNode(
+                new IntNode(environment),
+                new Euclidean2DPosition(random.nextDouble() * SIDE, random.nextDouble() * SIDE)
+            );
+        }
+    }
+
+    /**
+     * The k nearest nodes are the first k nodes sorted by distance.
+     */
+    @Test
+    public void testKNearest() {
+        for (final int k : new int[] {1, N, NODES - 1, NODES}) {
+            for (final Node<Integer> node : environment.getNodes()) {
+                final List<Node<Integer>> expected = bruteForce(node, k);
+                assertEquals(expected, List.copyOf(environment.getKNearest(node, k)));
+            }
+        }
+    }
+
+    /**
+     * Nodes are linked if either one is among the N closest to the other.
+     */
+    @Test
+    public void testClosestN() {
+        final ClosestN<Integer, Euclidean2DPosition> rule = new ClosestN<>(N);
+        for (final Node<Integer> node : environment.getNodes()) {
+            assertEquals(bruteForceClosestN(node), Set.copyOf(rule.computeNeighborhood(node, environment).getNeighbors()));
+        }
+    }
+
+    /**
+     * Removing a node and adding another one between two neighborhood computations leaves the number of nodes
+     * unchanged, but the rule must neither link the removed node, nor miss the new one.
+     */
+    @Test
+    public void testMembershipChange() {
+        final ClosestN<Integer, Euclidean2DPosition> rule = new ClosestN<>(N);
+        environment.getNodes().forEach(node -> rule.computeNeighborhood(node, environment));
+        final Node<Integer> center = environment.getNodes().get(0);
+        final Node<Integer> removed = environment.getNodes().stream()
+            .filter(node -> !node.equals(center) && bruteForce(node, N).contains(center))
+            .findFirst()
+            .orElseThrow();
+        final Euclidean2DPosition position = environment.getPosition(removed);
+        environment.removeNode(removed);
+        final Node<Integer> added = new IntNode(environment);
+        environment.addNode(added, new Euclidean2DPosition(position.getX(), position.getY()));
+        assertEquals(NODES, environment.getNodeCount());
+        final Set<Node<Integer>> neighbors = Set.copyOf(rule.computeNeighborhood(center, environment).getNeighbors());
+        assertEquals(bruteForceClosestN(center), neighbors);
+        assertTrue(neighbors.contains(added));
+        for (final Node<Integer> node : environment.getNodes()) {
+            assertEquals(bruteForceClosestN(node), Set.copyOf(rule.computeNeighborhood(node, environment).getNeighbors()));
+        }
+    }
+
+    /**
+     * With 10^5 nodes indexed in a grid, k-nearest neighbors and {@link ClosestN} neighborhoods of a sample of nodes,
+     * including the ones at the corners, match a search over all the nodes.
+     */
+    @Test
+    public void testLargeScale() {
+        final double side = Math.sqrt(LARGE);
+        environment = new Continuous2DEnvironment<>(INCARNATION, 1);
+        environment.setLinkingRule(new NoLinks<>());
+        final RandomGenerator random = new MersenneTwister(2);
+        for (int i = 0; i < LARGE; i++) {
+            environment.addNode(
+                new IntNode(environment),
+                new Euclidean2DPosition(random.nextDouble() * side, random.nextDouble() * side)
+            );
+        }
+        final List<Node<Integer>> sample = new ArrayList<>();
+        final List<Comparator<Node<Integer>>> corners = List.of(
+            Comparator.comparingDouble(node -> coordinates(node)[0] + coordinates(node)[1]),
+            Comparator.comparingDouble(node -> coordinates(node)[0] - coordinates(node)[1]),
+            Comparator.comparingDouble(node -> -coordinates(node)[0] + coordinates(node)[1]),
+            Comparator.comparingDouble(node -> -coordinates(node)[0] - coordinates(node)[1])
+        );
+        corners.forEach(corner -> sample.add(environment.getNodes().stream().min(corner).orElseThrow()));
+        for (int i = 0; i < SAMPLES; i++) {
+            sample.add(environment.getNodes().get(random.nextInt(LARGE)));
+        }
+        for (final Node<Integer> node : sample) {
+            assertEquals(bruteForce(node, N), List.copyOf(environment.getKNearest(node, N)));
+        }
+        final Map<Node<Integer>, Set<Node<Integer>>> expected = new HashMap<>();
+        sample.forEach(node -> expected.put(node, new HashSet<>(environment.getKNearest(node, N))));
+        for (final Node<Integer> node : environment.getNodes()) {
+            for (final Node<Integer> neighbor : environment.getKNearest(node, N)) {
+                if (expected.containsKey(neighbor)) {
+                    expected.get(neighbor).add(node);
+                }
+            }
+        }
+        final ClosestN<Integer, Euclidean2DPosition> rule = new ClosestN<>(N);
+        for (final Node<Integer> node : sample) {
+            assertEquals(expected.get(node), Set.copyOf(rule.computeNeighborhood(node, environment).getNeighbors()));
+        }
+    }
+
+    private double[] coordinates(final Node<Integer> node) {
+        return environment.getPosition(node).getCoordinates();
+    }
+
+    private Set<Node<Integer>> bruteForceClosestN(final Node<Integer> center) {
+        final Set<Node<Integer>> expected = new HashSet<>(bruteForce(center, N));
+        for (final Node<Integer> other : environment.getNodes()) {
+            if (!other.equals(center) && bruteForce(other, N).contains(center)) {
+                expected.add(other);
+            }
+        }
+        return expected;
+    }
+
+    private List<Node<Integer>> bruteForce(final Node<Integer> center, final int k) {
+        return environment.getNodes().stream()
+            .filter(node -> !node.equals(center))
+            .sorted(Comparator.comparingDouble(node -> environment.getDistanceBetweenNodes(center, node)))
+            .limit(k)
+            .collect(Collectors.toList());
+    }
+
+}
@@ -9,19 +9,29 @@ package it.unibo.alchemist.test;
 
 import it.unibo.alchemist.SupportedIncarnations;
 import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.environments.RangeQueryStatistics;
+import it.unibo.alchemist.model.implementations.linkingrules.ConnectWithinDistance;
 import it.unibo.alchemist.model.implementations.linkingrules.NoLinks;
 import it.unibo.alchemist.model.implementations.nodes.IntNode;
 import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
 import it.unibo.alchemist.model.interfaces.Incarnation;
 import it.unibo.alchemist.model.interfaces.Node;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -33,6 +43,13 @@ public final class TestContinuous2DEnvironment {
     private static final double [] ZEROS = {0, 0};
     private static final double [] P2_3 = {2, 3};
     private static final double [] P2_2 = {2, 2};
+    private static final double [] FAR = {100, 100};
+    private static final double [] FARTHER = {200, 100};
+    private static final double [] NEAR = {0, 0.5};
+    private static final int NODES = 200;
+    private static final int MOVES = 2000;
+    private static final double SIDE = 20;
+    private static final double RANGE = 2;
     private static final double TOLERANCE = 1E-15;
     private static final Incarnation<Integer, Euclidean2DPosition> INCARNATION =
             SupportedIncarnations.<Integer, Euclidean2DPosition>get("protelis").orElseThrow();
@@ -108,4 +125,87 @@ public final class TestContinuous2DEnvironment {
         assertEquals(Collections.singletonList(dummy2), environment.getNodesWithinRange(dummy, Math.nextUp(0)));
     }
 
+    /**
+     * Test that moving nodes only invalidates the cached range queries around them.
+     */
+    @Test
+    public void testRangeQueryCacheInvalidation() {
+        final Node<Integer> center = new IntNode(environment);
+        final Node<Integer> neighbor = new IntNode(environment);
+        final Node<Integer> wanderer = new IntNode(environment);
+        environment.addNode(center, new Euclidean2DPosition(ZEROS));
+        environment.addNode(neighbor, new Euclidean2DPosition(NEAR));
+        environment.addNode(wanderer, new Euclidean2DPosition(FAR));
+        assertEquals(Set.of(neighbor), Set.copyOf(environment.getNodesWithinRange(center, 1)));
+        assertEquals(Set.of(neighbor), Set.copyOf(environment.getNodesWithinRange(center, 1)));
+        assertStatistics(1, 1, 0);
+        environment.moveNodeToPosition(wanderer, new Euclidean2DPosition(FARTHER));
+        assertEquals(Set.of(neighbor), Set.copyOf(environment.getNodesWithinRange(center, 1)));
+        assertStatistics(2, 1, 0);
+        environment.moveNodeToPosition(wanderer, new Euclidean2DPosition(NEAR));
+        assertEquals(Set.of(neighbor, wanderer), Set.copyOf(environment.getNodesWithinRange(center, 1)));
+        assertStatistics(2, 1, 1);
+        environment.removeNode(neighbor);
+        assertEquals(Set.of(wanderer), Set.copyOf(environment.getNodesWithinRange(center, 1)));
+        assertStatistics(2, 1, 2);
+    }
+
+    /**
+     * Test that the neighborhoods of moving nodes stay consistent with the connection range.
+     */
+    @Test
+    public void testNeighborhoodsOfMovingNodes() {
+        environment.setLinkingRule(new ConnectWithinDistance<>(RANGE));
+        final RandomGenerator random = new MersenneTwister(1);
+        for (int i = 0; i < NODES; i++) {
+            environment.addNode(new IntNode(environment), randomPosition(random));
+        }
+        for (int i = 0; i < MOVES; i++) {
+            final Node<Integer> node = environment.getNodes().get(random.nextInt(NODES));
+            final Euclidean2DPosition current = environment.getPosition(node);
+            final Euclidean2DPosition destination = random.nextBoolean()
+                ? new Euclidean2DPosition(current.getX() + random.nextDouble() - random.nextDouble(), current.getY())
+                : randomPosition(random);
+            environment.moveNodeToPosition(node, destination);
+        }
+        for (final Node<Integer> node : environment.getNodes()) {
+            final Set<Node<Integer>> expected = environment.getNodes().stream()
+                .filter(other -> !other.equals(node) && environment.getDistanceBetweenNodes(node, other) <= RANGE)
+                .collect(Collectors.toSet());
+            assertEquals(expected, Set.copyOf(environment.getNeighborhood(node).getNeighbors()));
+        }
+    }
+
+    /**
+     * Test that nodes can be retrieved by id, until they get removed.
+     */
+    @Test
+    public void testGetNodeByID() {
+        final List<Node<Integer>> added = new ArrayList<>(NODES);
+        for (int i = 0; i < NODES; i++) {
+            final Node<Integer> node = new IntNode(environment);
+            environment.addNode(node, new Euclidean2DPosition(ZEROS));
+            added.add(node);
+        }
+        for (final Node<Integer> node : added) {
+            assertSame(node, environment.getNodeByID(node.getId()));
+        }
+        final Node<Integer> removed = added.get(NODES / 2);
+        environment.removeNode(removed);
+        assertThrows(IllegalArgumentException.class, () -> environment.getNodeByID(removed.getId()));
+        assertThrows(IllegalArgumentException.class, () -> environment.getNodeByID(-1));
+        assertSame(added.get(0), environment.getNodeByID(added.get(0).getId()));
+    }
+
+    private static Euclidean2DPosition randomPosition(final RandomGenerator random) {
+        return new Euclidean2DPosition(random.nextDouble() * SIDE, random.nextDouble() * SIDE);
+    }
+
+    private void assertStatistics(final long hits, final long misses, final long invalidations) {
+        final RangeQueryStatistics statistics = environment.getRangeQueryStatistics();
+        assertEquals(hits, statistics.getHits());
+        assertEquals(misses, statistics.getMisses());
+        assertEquals(invalidations, statistics.getInvalidations());
+    }
+
 }
@@ -35,6 +35,7 @@ object SingleRunFXUI : SimulationLauncher() {
             batch -> incompatibleWith("batch mode")
             variables.isNotEmpty() -> incompatibleWith("variable exploration mode")
             distributed != null -> incompatibleWith("distributed execution")
+            forkAt != null -> incompatibleWith("fork mode")
             GraphicsEnvironment.isHeadless() -> Invalid(
                 "The JVM graphic environment is marked as headless. Cannot show a graphical interface. "
             )
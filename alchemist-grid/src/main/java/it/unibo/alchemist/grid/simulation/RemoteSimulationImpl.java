@@ -26,6 +26,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import it.unibo.alchemist.core.implementations.Engine;
+import it.unibo.alchemist.core.interfaces.Scheduler;
 import it.unibo.alchemist.core.interfaces.Simulation;
 import it.unibo.alchemist.grid.config.GeneralSimulationConfig;
 import it.unibo.alchemist.grid.config.SimulationConfig;
@@ -76,11 +77,10 @@ public final class RemoteSimulationImpl<T, P extends Position<P>> implements Rem
                 final Loader loader = generalConfig.getLoader();
                 final InitializedEnvironment<T, P> initialized = loader.getWith(config.getVariables());
                 final Environment<T, P> environment = initialized.getEnvironment();
-                final Simulation<T, P> simulation = new Engine<>(
-                        environment,
-                        generalConfig.getEndStep(),
-                        generalConfig.getEndTime()
-                );
+                final Scheduler<T> scheduler = initialized.getScheduler();
+                final Simulation<T, P> simulation = scheduler == null
+                        ? new Engine<>(environment, generalConfig.getEndStep(), generalConfig.getEndTime())
+                        : new Engine<>(environment, generalConfig.getEndStep(), generalConfig.getEndTime(), scheduler);
                 final Map<String, Object> defaultVars = loader.getVariables().entrySet().stream()
                         .collect(Collectors.toMap(Entry::getKey, e -> e.getValue().getDefault()));
                 defaultVars.putAll(config.getVariables());
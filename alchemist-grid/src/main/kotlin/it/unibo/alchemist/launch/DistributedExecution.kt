@@ -30,6 +30,7 @@ object DistributedExecution : SimulationLauncher() {
             distributed == null -> Validation.Invalid("No configuration file for distributed execution")
             graphics != null -> Validation.OK(Priority.Fallback("Distributed execution will ignore graphical settings"))
             parallelism != AlchemistExecutionOptions.defaultParallelism -> incompatibleWith("custom parallelism")
+            forkAt != null -> incompatibleWith("fork mode")
             else -> Validation.OK()
         }
     }
@@ -13,6 +13,7 @@ import it.unibo.alchemist.model.interfaces.Node;
 import it.unibo.alchemist.model.interfaces.Position2D;
 import org.apache.commons.math3.util.FastMath;
 import org.danilopianini.util.FlexibleQuadTree;
+import org.danilopianini.util.SpatialIndex;
 
 import static java.lang.Double.NEGATIVE_INFINITY;
 import static java.lang.Double.NaN;
@@ -41,6 +42,16 @@ public abstract class Abstract2DEnvironment<T, P extends Position2D<P>> extends
         super(incarnation, new FlexibleQuadTree<>());
     }
 
+    /**
+     * @param incarnation the incarnation to be used.
+     * @param internalIndex
+     *            the {@link SpatialIndex} to use in order to efficiently
+     *            retrieve nodes.
+     */
+    protected Abstract2DEnvironment(final Incarnation<T, P> incarnation, final SpatialIndex<Node<T>> internalIndex) {
+        super(incarnation, internalIndex);
+    }
+
     /**
      * Subclasses can override this method if they will to modify the actual
      * position a node gets inserted in (e.g. to restrict the areas in which a node
@@ -114,8 +125,9 @@ public abstract class Abstract2DEnvironment<T, P extends Position2D<P>> extends
     @Override
     public void moveNodeToPosition(final Node<T> node, final P newpos) {
         includeObject(newpos);
+        final P previous = getPosition(node);
         setPosition(node, newpos);
-        updateNeighborhood(node, false);
+        updateNeighborhood(node, previous);
         ifEngineAvailable(sim -> sim.nodeMoved(node));
     }
 
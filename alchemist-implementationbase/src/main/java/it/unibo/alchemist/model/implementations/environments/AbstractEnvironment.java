@@ -7,14 +7,14 @@
  */
 package it.unibo.alchemist.model.implementations.environments;
 
-import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.LoadingCache;
 import com.google.common.collect.Sets;
 import gnu.trove.map.hash.TIntObjectHashMap;
 import gnu.trove.set.TIntSet;
 import gnu.trove.set.hash.TIntHashSet;
 import it.unibo.alchemist.SupportedIncarnations;
 import it.unibo.alchemist.core.interfaces.Simulation;
+import it.unibo.alchemist.model.implementations.linkingrules.ConnectWithinDistance;
+import it.unibo.alchemist.model.implementations.neighborhoods.Neighborhoods;
 import it.unibo.alchemist.model.interfaces.Environment;
 import it.unibo.alchemist.model.interfaces.Incarnation;
 import it.unibo.alchemist.model.interfaces.Layer;
@@ -23,7 +23,6 @@ import it.unibo.alchemist.model.interfaces.Molecule;
 import it.unibo.alchemist.model.interfaces.Neighborhood;
 import it.unibo.alchemist.model.interfaces.Node;
 import it.unibo.alchemist.model.interfaces.Position;
-import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.danilopianini.util.ArrayListSet;
 import org.danilopianini.util.LinkedListSet;
 import org.danilopianini.util.ListSet;
@@ -35,6 +34,8 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -65,12 +66,19 @@ import java.util.stream.StreamSupport;
 public abstract class AbstractEnvironment<T, P extends Position<P>> implements Environment<T, P> {
 
     private static final long serialVersionUID = 0L;
+    private static final int MAX_ID_GAP = 1024;
     private final Map<Molecule, Layer<T, P>> layers = new LinkedHashMap<>();
     private final TIntObjectHashMap<Neighborhood<T>> neighCache = new TIntObjectHashMap<>();
     private final ListSet<Node<T>> nodes = new ArrayListSet<>();
+    /*
+     * Node ids are generated sequentially for each environment, so they are usually dense: nodes are indexed by
+     * their id in a list, unless their id would leave it mostly empty.
+     */
+    private final List<Node<T>> nodesByDenseId = new ArrayList<>();
+    private final TIntObjectHashMap<Node<T>> nodesBySparseId = new TIntObjectHashMap<>();
     private final TIntObjectHashMap<P> nodeToPos = new TIntObjectHashMap<>();
-    private final SpatialIndex<Node<T>> spatialIndex;
-    private transient LoadingCache<ImmutablePair<P, Double>, ListSet<Node<T>>> cache;
+    private SpatialIndex<Node<T>> spatialIndex;
+    private transient RangeQueryCache<T, P> cache = new RangeQueryCache<>(this::runQuery);
     private transient Incarnation<T, P> incarnation;
     private LinkingRule<T, P> rule;
     private transient Simulation<T, P> simulation;
@@ -105,6 +113,7 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
             if (!nodes.add(node)) {
                 throw new IllegalArgumentException("Node with id " + node.getId() + " was already existing in this environment.");
             }
+            indexById(node);
             spatialIndex.insert(node, actualPosition.getCoordinates());
             /*
              * Neighborhood computation
@@ -160,12 +169,7 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
         if (range <= 0) {
             throw new IllegalArgumentException("Range query must be positive (provided: " + range + ")");
         }
-        if (cache == null) {
-            cache = Caffeine.newBuilder()
-                    .maximumSize(1000)
-                    .build(pair -> runQuery(pair.left, pair.right));
-        }
-        return cache.get(new ImmutablePair<>(center, range));
+        return cache.get(center, range);
     }
 
     @Override
@@ -178,6 +182,89 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
         return Optional.ofNullable(incarnation);
     }
 
+    /**
+     * If nodes are indexed in a {@link GridSpatialIndex}, visits its cells best first. Otherwise, as other indexes
+     * only answer box queries, performs range queries of growing size around the center, starting from the range
+     * which would contain k nodes if they were uniformly distributed, until at least k nodes are found.
+     */
+    @Override
+    public final ListSet<Node<T>> getKNearest(@Nonnull final Node<T> center, final int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("At least one node must be requested (provided: " + k + ")");
+        }
+        final P position = getPosition(Objects.requireNonNull(center));
+        if (position == null) {
+            throw new IllegalArgumentException("Node " + center + " was not part of this environment");
+        }
+        if (getNodeCount() - 1 <= k) {
+            return closestFirst(position, center, nodes, k);
+        }
+        if (spatialIndex instanceof GridSpatialIndex) {
+            final List<Node<T>> nearest = ((GridSpatialIndex<Node<T>>) spatialIndex)
+                    .queryNearest(position.getCoordinates(), k + 1);
+            final ListSet<Node<T>> result = new ArrayListSet<>(k);
+            for (final Node<T> node : nearest) {
+                if (result.size() < k && !node.equals(center)) {
+                    result.add(node);
+                }
+            }
+            return ListSets.unmodifiableListSet(result);
+        }
+        double range = estimateRangeContaining(center, position, k);
+        while (true) {
+            final ListSet<Node<T>> inRange = getAllNodesInRange(position, range);
+            if (inRange.size() > k) {
+                final ListSet<Node<T>> result = closestFirst(position, center, inRange, k);
+                if (result.size() == k) {
+                    return result;
+                }
+            }
+            range *= 2;
+        }
+    }
+
+    private ListSet<Node<T>> closestFirst(final P position, final Node<T> center, final List<Node<T>> candidates, final int k) {
+        final List<Node<T>> others = new ArrayList<>(candidates.size());
+        final double[] distances = new double[candidates.size()];
+        for (final Node<T> candidate : candidates) {
+            if (!candidate.equals(center)) {
+                distances[others.size()] = getPosition(candidate).distanceTo(position);
+                others.add(candidate);
+            }
+        }
+        final Integer[] order = new Integer[others.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(distances[a], distances[b]));
+        final ListSet<Node<T>> result = new ArrayListSet<>(Math.min(k, order.length));
+        for (int i = 0; i < Math.min(k, order.length); i++) {
+            result.add(others.get(order[i]));
+        }
+        return ListSets.unmodifiableListSet(result);
+    }
+
+    private double estimateRangeContaining(final Node<T> center, final P position, final int k) {
+        final double[] size = getSizeInDistanceUnits();
+        double volume = 1;
+        int dimensions = 0;
+        for (final double side : size) {
+            if (side > 0) {
+                volume *= side;
+                dimensions++;
+            }
+        }
+        final double estimate = dimensions == 0 ? 0 : Math.pow(volume * (k + 1) / getNodeCount(), 1d / dimensions);
+        if (estimate > 0 && estimate < Double.POSITIVE_INFINITY) {
+            return estimate;
+        }
+        /*
+         * Degenerate environment: start from the distance of any node
+         */
+        final Node<T> any = nodes.get(0).equals(center) ? nodes.get(1) : nodes.get(0);
+        return Math.max(Double.MIN_NORMAL, getPosition(any).distanceTo(position));
+    }
+
     @Override
     public final Optional<Layer<T, P>> getLayer(final Molecule m) {
         return Optional.ofNullable(layers.get(m));
@@ -196,8 +283,18 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
     @Override
     public final void setLinkingRule(final LinkingRule<T, P> r) {
         rule = Objects.requireNonNull(r);
+        linkingRuleChanged(r);
     }
 
+    /**
+     * This method gets called once the linking rule has been set. Subclasses may override it to adapt the
+     * environment to the rule, e.g. by picking a more appropriate {@link SpatialIndex}.
+     *
+     * @param linkingRule
+     *            the new linking rule
+     */
+    protected void linkingRuleChanged(final LinkingRule<T, P> linkingRule) { }
+
     @Override
     public final Neighborhood<T> getNeighborhood(@Nonnull final Node<T> center) {
         final Neighborhood<T> result = neighCache.get(Objects.requireNonNull(center).getId());
@@ -213,10 +310,36 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
 
     @Override
     public final Node<T> getNodeByID(final int id) {
-        return (nodes.size() > 1000 ? nodes.parallelStream() : nodes.stream())
-                .filter(n -> n.getId() == id)
-                .findAny()
-                .orElseThrow(() -> new IllegalArgumentException("Node with id " + id + "does not exist in environment"));
+        final Node<T> result = id >= 0 && id < nodesByDenseId.size() ? nodesByDenseId.get(id) : nodesBySparseId.get(id);
+        if (result == null) {
+            throw new IllegalArgumentException("Node with id " + id + " does not exist in environment");
+        }
+        return result;
+    }
+
+    private void indexById(final Node<T> node) {
+        final int id = node.getId();
+        if (id >= 0 && id < nodesByDenseId.size()) {
+            nodesByDenseId.set(id, node);
+        } else if (id >= 0 && id - nodesByDenseId.size() <= Math.max(MAX_ID_GAP, nodes.size())) {
+            while (nodesByDenseId.size() < id) {
+                nodesByDenseId.add(nodesBySparseId.remove(nodesByDenseId.size()));
+            }
+            nodesByDenseId.add(node);
+        } else {
+            nodesBySparseId.put(id, node);
+        }
+    }
+
+    private void unindexById(final Node<T> node) {
+        final int id = node.getId();
+        if (id >= 0 && id < nodesByDenseId.size()) {
+            if (nodesByDenseId.get(id) == node) {
+                nodesByDenseId.set(id, null);
+            }
+        } else {
+            nodesBySparseId.remove(id);
+        }
     }
 
     @Override
@@ -253,6 +376,16 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
         return getAllNodesInRange(center, range);
     }
 
+    /**
+     * Range queries are cached, and a cached result is discarded only when some node gets added, removed, or moved
+     * in its surroundings.
+     *
+     * @return how many range queries have been answered from the cache so far
+     */
+    public final RangeQueryStatistics getRangeQueryStatistics() {
+        return cache.getStatistics();
+    }
+
     /**
      * This method should not get overridden in general. However, if your
      */
@@ -295,12 +428,6 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
         Optional.ofNullable(getSimulation()).ifPresent(action);
     }
 
-    private void invalidateCache() {
-        if (cache != null) {
-            cache.invalidateAll();
-        }
-    }
-
     @Override
     public final boolean isTerminated() {
         return terminator.test(this);
@@ -362,6 +489,7 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
 
     private void readObject(final ObjectInputStream in) throws ClassNotFoundException, IOException {
         in.defaultReadObject();
+        cache = new RangeQueryCache<>(this::runQuery);
         final String name = in.readObject().toString();
         incarnation = SupportedIncarnations.<T, P>get(name).orElseThrow(() ->
                 new IllegalStateException("Unknown incarnation " + name)
@@ -387,9 +515,10 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
 
     @Override
     public final void removeNode(@Nonnull final Node<T> node) {
-        invalidateCache();
         nodes.remove(Objects.requireNonNull(node));
+        unindexById(node);
         final P pos = nodeToPos.remove(node.getId());
+        cache.nodeMoved(pos, null);
         spatialIndex.remove(node, pos.getCoordinates());
         /*
          * Neighborhood update
@@ -431,7 +560,7 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
     protected final void setPosition(final Node<T> n, final P p) {
         final P pos = nodeToPos.put(Objects.requireNonNull(n).getId(), Objects.requireNonNull(p));
         if (!p.equals(pos)) {
-            invalidateCache();
+            cache.nodeMoved(pos, p);
         }
         if (pos != null && !spatialIndex.move(n, pos.getCoordinates(), p.getCoordinates())) {
             throw new IllegalArgumentException("Tried to move a node not previously present in the environment: \n"
@@ -439,6 +568,30 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
         }
     }
 
+    /**
+     * @return the {@link SpatialIndex} currently used to retrieve nodes
+     */
+    protected final SpatialIndex<Node<T>> getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    /**
+     * Replaces the {@link SpatialIndex} used to retrieve nodes, moving all the nodes into the new one.
+     *
+     * @param index
+     *            the new {@link SpatialIndex}, which must be empty
+     */
+    protected final void setSpatialIndex(@Nonnull final SpatialIndex<Node<T>> index) {
+        if (Objects.requireNonNull(index).getDimensions() != getDimensions()) {
+            throw new IllegalArgumentException("The spatial index has " + index.getDimensions()
+                    + " dimensions, but the environment has " + getDimensions());
+        }
+        for (final Node<T> node : nodes) {
+            index.insert(node, nodeToPos.get(node.getId()).getCoordinates());
+        }
+        spatialIndex = index;
+    }
+
     @Override
     public final Spliterator<Node<T>> spliterator() {
         return getNodes().spliterator();
@@ -474,13 +627,38 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
      *            true if the node is a new node, false otherwise
      */
     protected final void updateNeighborhood(final Node<T> node, final boolean isNewNode) {
+        updateNeighborhood(node, isNewNode, null);
+    }
+
+    /**
+     * After a node movement, recomputes the neighborhood, also notifying the
+     * running simulation about the modifications. If the linking rule only
+     * depends on a fixed distance, only the area the node moved into gets
+     * inspected.
+     *
+     * @param node
+     *            the node that has been moved
+     * @param previousPosition
+     *            the position of the node before the movement, or null if unknown
+     */
+    protected final void updateNeighborhood(final Node<T> node, final P previousPosition) {
+        updateNeighborhood(node, false, previousPosition);
+    }
+
+    private void updateNeighborhood(final Node<T> node, final boolean isNewNode, final P previousPosition) {
+        Objects.requireNonNull(rule, "No linking rule / network model set.");
+        final Neighborhood<T> currentNeighborhood = neighCache.get(Objects.requireNonNull(node).getId());
         /*
          * The following optimization allows to define as local the context of
          * reactions which are actually including a move, which should be
          * normally considered global. This because for each node which is
          * detached, all the dependencies are updated, ensuring soundness.
          */
-        if (Objects.requireNonNull(rule, "No linking rule / network model set.").isLocallyConsistent()) {
+        if (!isNewNode && currentNeighborhood != null && ConnectWithinDistance.linksOnlyWithinRange(rule)) {
+            updateNeighborhoodWithinDistance(
+                    node, currentNeighborhood, ((ConnectWithinDistance<T, P>) rule).getRange(), previousPosition
+            );
+        } else if (rule.isLocallyConsistent()) {
             final Neighborhood<T> newNeighborhood = rule.computeNeighborhood(Objects.requireNonNull(node), this);
             final Neighborhood<T> oldNeighborhood = neighCache.put(node.getId(), newNeighborhood);
             /*
@@ -528,6 +706,55 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
         }
     }
 
+    /*
+     * Incremental update for nodes moving under a plain ConnectWithinDistance: former neighbors are checked by
+     * distance, and only the nodes in range which were not neighbors yet get linked. If the previous position is
+     * known and nodes are indexed in a grid, the candidates are only searched in the area entered by the node, as the
+     * nodes left behind were all former neighbors. Produces the same neighborhoods and notifications of a full
+     * recomputation, but an unchanged neighborhood is kept as is. A changed neighborhood is built by the same range
+     * query of a full recomputation, so that its neighbors are in the same order.
+     */
+    private void updateNeighborhoodWithinDistance(
+            final Node<T> node,
+            final Neighborhood<T> oldNeighborhood,
+            final double range,
+            final P previousPosition
+    ) {
+        final P position = getPosition(node);
+        final List<Node<T>> lost = new ArrayList<>();
+        for (final Node<T> neighbor : oldNeighborhood) {
+            if (getPosition(neighbor).distanceTo(position) > range) {
+                lost.add(neighbor);
+            }
+        }
+        final List<Node<T>> candidates = previousPosition != null && spatialIndex instanceof GridSpatialIndex
+                ? ((GridSpatialIndex<Node<T>>) spatialIndex)
+                    .queryEntered(previousPosition.getCoordinates(), position.getCoordinates(), range)
+                : getAllNodesInRange(position, range);
+        final List<Node<T>> gained = new ArrayList<>();
+        for (final Node<T> candidate : candidates) {
+            if (!candidate.equals(node) && !oldNeighborhood.contains(candidate)
+                    && getPosition(candidate).distanceTo(position) <= range) {
+                gained.add(candidate);
+            }
+        }
+        if (lost.isEmpty() && gained.isEmpty()) {
+            return;
+        }
+        neighCache.put(node.getId(), Neighborhoods.make(this, node, getNodesWithinRange(node, range)));
+        for (final Node<T> formerNeighbor : lost) {
+            final Neighborhood<T> neighborhoodToChange = getNeighborhood(formerNeighbor);
+            if (neighborhoodToChange.contains(node)) {
+                neighCache.put(formerNeighbor.getId(), neighborhoodToChange.remove(node));
+                ifEngineAvailable(s -> s.neighborRemoved(node, formerNeighbor));
+            }
+        }
+        for (final Node<T> newNeighbor : gained) {
+            neighCache.put(newNeighbor.getId(), neighCache.get(newNeighbor.getId()).add(node));
+            ifEngineAvailable(s -> s.neighborAdded(node, newNeighbor));
+        }
+    }
+
     private void writeObject(final ObjectOutputStream out) throws IOException {
         out.defaultWriteObject();
         out.writeObject(incarnation.getClass().getSimpleName());
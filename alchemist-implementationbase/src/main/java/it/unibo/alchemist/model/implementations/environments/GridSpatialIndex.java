@@ -0,0 +1,436 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.implementations.environments;
+
+import org.danilopianini.util.SpatialIndex;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.BiConsumer;
+
+/**
+ * A {@link SpatialIndex} partitioning the space in a uniform grid of cubic cells (a cell list).
+ * When the side of the cells matches the range of the queries and the density is roughly uniform, queries only
+ * inspect a handful of cells (3^d at most), and elements move in constant time.
+ * Queries much larger than the cells scan the occupied cells instead of the covered ones.
+ *
+ * @param <O> the type of the indexed elements
+ */
+public final class GridSpatialIndex<O> implements SpatialIndex<O> {
+
+    private static final long serialVersionUID = 1L;
+    private static final Comparator<Candidate<?>> FARTHEST_FIRST =
+        (first, second) -> Double.compare(second.squaredDistance, first.squaredDistance);
+    private final int dimensions;
+    private final double cellSize;
+    private final Map<Cell, List<Entry<O>>> cells = new HashMap<>();
+    private int size;
+
+    /**
+     * @param dimensions
+     *            the number of dimensions of the space
+     * @param cellSize
+     *            the side of each cell, ideally the most common query range
+     */
+    public GridSpatialIndex(final int dimensions, final double cellSize) {
+        if (dimensions < 1) {
+            throw new IllegalArgumentException("Invalid number of dimensions: " + dimensions);
+        }
+        if (!(cellSize > 0 && cellSize < Double.POSITIVE_INFINITY)) {
+            throw new IllegalArgumentException("The cell size must be positive and finite (provided: " + cellSize + ")");
+        }
+        this.dimensions = dimensions;
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * @return the side of the cells
+     */
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    @Override
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public void insert(final O element, final double... position) {
+        checkDimensions(position);
+        cells.computeIfAbsent(cellOf(position), c -> new ArrayList<>()).add(new Entry<>(element, position.clone()));
+        size++;
+    }
+
+    @Override
+    public boolean remove(final O element, final double... position) {
+        final Cell cell = cellOf(position);
+        final List<Entry<O>> content = cells.get(cell);
+        if (content != null) {
+            final Iterator<Entry<O>> iterator = content.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().element.equals(element)) {
+                    iterator.remove();
+                    size--;
+                    if (content.isEmpty()) {
+                        cells.remove(cell);
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean move(final O element, final double[] start, final double[] end) {
+        checkDimensions(end);
+        final Cell origin = cellOf(start);
+        final Cell destination = cellOf(end);
+        if (origin.equals(destination)) {
+            final List<Entry<O>> content = cells.get(origin);
+            if (content != null) {
+                for (final Entry<O> entry : content) {
+                    if (entry.element.equals(element)) {
+                        System.arraycopy(end, 0, entry.position, 0, dimensions);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        if (remove(element, start)) {
+            insert(element, end);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public List<O> query(final double[]... parallelotope) {
+        final double[] min = parallelotope[0].clone();
+        final double[] max = parallelotope[0].clone();
+        for (final double[] corner : parallelotope) {
+            checkDimensions(corner);
+            for (int d = 0; d < dimensions; d++) {
+                min[d] = Math.min(min[d], corner[d]);
+                max[d] = Math.max(max[d], corner[d]);
+            }
+        }
+        final List<O> result = new ArrayList<>();
+        forEachCell(cellOf(min).coordinates, cellOf(max).coordinates, (cell, content) -> collect(content, min, max, result));
+        return result;
+    }
+
+    /**
+     * Finds the elements reached by a ball of the provided radius whose center moved from start to end: those within
+     * the radius from end, but farther than the radius from start. Only the cells intersecting the ball around end,
+     * and not entirely covered by the ball around start, get inspected. Distances are euclidean.
+     *
+     * @param start
+     *            the former center of the ball
+     * @param end
+     *            the current center of the ball
+     * @param radius
+     *            the radius of the ball
+     * @return the elements in the area entered by the ball
+     */
+    public List<O> queryEntered(final double[] start, final double[] end, final double radius) {
+        checkDimensions(start);
+        checkDimensions(end);
+        final double squaredRadius = radius * radius;
+        final double[] min = new double[dimensions];
+        final double[] max = new double[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            min[d] = end[d] - radius;
+            max[d] = end[d] + radius;
+        }
+        final List<O> result = new ArrayList<>();
+        forEachCell(cellOf(min).coordinates, cellOf(max).coordinates, (cell, content) -> {
+            if (closestSquaredDistance(end, cell) <= squaredRadius && farthestSquaredDistance(start, cell) > squaredRadius) {
+                for (final Entry<O> entry : content) {
+                    if (squaredDistance(end, entry.position) <= squaredRadius
+                        && squaredDistance(start, entry.position) > squaredRadius) {
+                        result.add(entry.element);
+                    }
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Finds the k elements closest to the provided position, best first: the cells are visited in rings of growing
+     * distance from the one containing the position, until the next ring can not contain elements closer than the
+     * k-th found so far. Once a ring would be larger than the number of occupied cells, the occupied cells not
+     * visited yet are scanned instead. Distances are euclidean, ties at the k-th distance are broken arbitrarily.
+     *
+     * @param position
+     *            the position
+     * @param k
+     *            how many elements to find
+     * @return the (up to) k elements closest to the position, sorted by increasing distance
+     */
+    public List<O> queryNearest(final double[] position, final int k) {
+        checkDimensions(position);
+        if (k < 1) {
+            throw new IllegalArgumentException("At least one element must be requested (provided: " + k + ")");
+        }
+        final long[] origin = cellOf(position).coordinates;
+        /*
+         * Elements in ring r are farther than (r - 1) cells plus the distance from the position to the border of its
+         * own cell
+         */
+        double margin = cellSize;
+        for (int d = 0; d < dimensions; d++) {
+            final double low = origin[d] * cellSize;
+            margin = Math.min(margin, Math.min(position[d] - low, low + cellSize - position[d]));
+        }
+        margin = Math.max(margin, 0);
+        final PriorityQueue<Candidate<O>> best = new PriorityQueue<>(k, FARTHEST_FIRST);
+        final BiConsumer<long[], List<Entry<O>>> offer = (cell, content) -> {
+            for (final Entry<O> entry : content) {
+                final double squaredDistance = squaredDistance(position, entry.position);
+                if (best.size() < k) {
+                    best.add(new Candidate<>(entry.element, squaredDistance));
+                } else if (squaredDistance < best.peek().squaredDistance) {
+                    best.poll();
+                    best.add(new Candidate<>(entry.element, squaredDistance));
+                }
+            }
+        };
+        int visited = 0;
+        for (long ring = 0; visited < size; ring++) {
+            if (best.size() == k) {
+                final double bound = ring == 0 ? 0 : (ring - 1) * cellSize + margin;
+                if (bound * bound >= best.peek().squaredDistance) {
+                    break;
+                }
+            }
+            final double shell = ring == 0 ? 1 : Math.pow(2 * ring + 1, dimensions) - Math.pow(2 * ring - 1, dimensions);
+            if (shell > cells.size()) {
+                for (final Map.Entry<Cell, List<Entry<O>>> cell : cells.entrySet()) {
+                    final long[] coordinates = cell.getKey().coordinates;
+                    if (ringOf(coordinates, origin) >= ring
+                        && (best.size() < k || closestSquaredDistance(position, coordinates) < best.peek().squaredDistance)) {
+                        offer.accept(coordinates, cell.getValue());
+                    }
+                }
+                break;
+            }
+            final int[] found = {0};
+            forEachShellCell(origin, ring, new long[dimensions], 0, false, (cell, content) -> {
+                found[0] += content.size();
+                offer.accept(cell, content);
+            });
+            visited += found[0];
+        }
+        final List<Candidate<O>> sorted = new ArrayList<>(best);
+        sorted.sort(FARTHEST_FIRST.reversed());
+        final List<O> result = new ArrayList<>(sorted.size());
+        for (final Candidate<O> candidate : sorted) {
+            result.add(candidate.element);
+        }
+        return result;
+    }
+
+    /*
+     * Visits the occupied cells at Chebyshev distance ring from origin. Within the cells that are not on the shell in
+     * any of the previous dimensions, only the two extremes of the last dimension are visited.
+     */
+    private void forEachShellCell(
+        final long[] origin,
+        final long ring,
+        final long[] current,
+        final int dimension,
+        final boolean onShell,
+        final BiConsumer<long[], List<Entry<O>>> action
+    ) {
+        if (dimension == dimensions) {
+            final List<Entry<O>> content = cells.get(new Cell(current.clone()));
+            if (content != null) {
+                action.accept(current, content);
+            }
+            return;
+        }
+        final boolean extremesOnly = dimension == dimensions - 1 && !onShell;
+        final long step = extremesOnly ? Math.max(2 * ring, 1) : 1;
+        for (long offset = -ring; offset <= ring; offset += step) {
+            current[dimension] = origin[dimension] + offset;
+            forEachShellCell(origin, ring, current, dimension + 1, onShell || Math.abs(offset) == ring, action);
+        }
+    }
+
+    private long ringOf(final long[] cell, final long[] origin) {
+        long result = 0;
+        for (int d = 0; d < dimensions; d++) {
+            result = Math.max(result, Math.abs(cell[d] - origin[d]));
+        }
+        return result;
+    }
+
+    /*
+     * Visits the occupied cells between lower and upper (included), either by walking the covered cells or by scanning
+     * the occupied ones, whichever is fewer. The visited coordinates must not be retained.
+     */
+    private void forEachCell(final long[] lower, final long[] upper, final BiConsumer<long[], List<Entry<O>>> action) {
+        double covered = 1;
+        for (int d = 0; d < dimensions; d++) {
+            covered *= (double) upper[d] - lower[d] + 1;
+        }
+        if (covered > cells.size()) {
+            for (final Map.Entry<Cell, List<Entry<O>>> cell : cells.entrySet()) {
+                if (isBetween(cell.getKey().coordinates, lower, upper)) {
+                    action.accept(cell.getKey().coordinates, cell.getValue());
+                }
+            }
+        } else {
+            final long[] current = lower.clone();
+            while (true) {
+                final List<Entry<O>> content = cells.get(new Cell(current.clone()));
+                if (content != null) {
+                    action.accept(current, content);
+                }
+                int d = 0;
+                while (d < dimensions && current[d] == upper[d]) {
+                    current[d] = lower[d];
+                    d++;
+                }
+                if (d == dimensions) {
+                    return;
+                }
+                current[d]++;
+            }
+        }
+    }
+
+    private boolean isBetween(final long[] cell, final long[] lower, final long[] upper) {
+        for (int d = 0; d < dimensions; d++) {
+            if (cell[d] < lower[d] || cell[d] > upper[d]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private double closestSquaredDistance(final double[] position, final long[] cell) {
+        double result = 0;
+        for (int d = 0; d < dimensions; d++) {
+            final double low = cell[d] * cellSize;
+            final double delta = Math.max(Math.max(low - position[d], position[d] - low - cellSize), 0);
+            result += delta * delta;
+        }
+        return result;
+    }
+
+    private double farthestSquaredDistance(final double[] position, final long[] cell) {
+        double result = 0;
+        for (int d = 0; d < dimensions; d++) {
+            final double low = cell[d] * cellSize;
+            final double delta = Math.max(Math.abs(position[d] - low), Math.abs(low + cellSize - position[d]));
+            result += delta * delta;
+        }
+        return result;
+    }
+
+    private double squaredDistance(final double[] first, final double[] second) {
+        double result = 0;
+        for (int d = 0; d < dimensions; d++) {
+            final double delta = first[d] - second[d];
+            result += delta * delta;
+        }
+        return result;
+    }
+
+    private void collect(final List<Entry<O>> content, final double[] min, final double[] max, final List<O> result) {
+        for (final Entry<O> entry : content) {
+            if (isInside(entry.position, min, max)) {
+                result.add(entry.element);
+            }
+        }
+    }
+
+    private boolean isInside(final double[] position, final double[] min, final double[] max) {
+        for (int d = 0; d < dimensions; d++) {
+            if (position[d] < min[d] || position[d] > max[d]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Cell cellOf(final double[] position) {
+        final long[] coordinates = new long[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            coordinates[d] = (long) Math.floor(position[d] / cellSize);
+        }
+        return new Cell(coordinates);
+    }
+
+    private void checkDimensions(final double[] position) {
+        if (position.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " coordinates, got " + Arrays.toString(position));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[dimensions=" + dimensions + ", cellSize=" + cellSize
+            + ", occupiedCells=" + cells.size() + ']';
+    }
+
+    private static final class Cell implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final long[] coordinates;
+        private final int hash;
+
+        private Cell(final long[] coordinates) {
+            this.coordinates = coordinates;
+            this.hash = Arrays.hashCode(coordinates);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof Cell && hash == ((Cell) obj).hash && Arrays.equals(coordinates, ((Cell) obj).coordinates);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Candidate<O> {
+        private final O element;
+        private final double squaredDistance;
+
+        private Candidate(final O element, final double squaredDistance) {
+            this.element = element;
+            this.squaredDistance = squaredDistance;
+        }
+    }
+
+    private static final class Entry<O> implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final O element;
+        private final double[] position;
+
+        private Entry(final O element, final double[] position) {
+            this.element = element;
+            this.position = position;
+        }
+    }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.implementations.environments;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Position;
+import org.danilopianini.util.ListSet;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * Memoizes the range queries of an {@link AbstractEnvironment}, forgetting a result only when a node gets added,
+ * removed or moved in its surroundings.
+ *
+ * The space is partitioned in cubic cells, whose side is the size of the first query, and each cell has an epoch:
+ * the value of a logical clock at the last change of the nodes in the cell. A cached result is still valid if no
+ * cell overlapping the bounding box of its query changed after the result was computed. Epochs are stored in a
+ * fixed number of slots, cells sharing a slot get invalidated together. Results of queries spanning too many cells
+ * get invalidated by any change.
+ *
+ * Queries can be performed concurrently, changes must not be concurrent with queries.
+ *
+ * @param <T> concentration type
+ * @param <P> {@link Position} type
+ */
+final class RangeQueryCache<T, P extends Position<P>> {
+
+    private static final int MAXIMUM_SIZE = 1000;
+    private static final int SLOT_BITS = 12;
+    private static final double MAXIMUM_CELLS = 64;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private final Cache<Key, Entry<T>> entries = Caffeine.newBuilder().maximumSize(MAXIMUM_SIZE).build();
+    private final long[] epochs = new long[1 << SLOT_BITS];
+    private final BiFunction<P, Double, ListSet<Node<T>>> query;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private volatile long clock;
+    private volatile double cellSize = Double.NaN;
+
+    /**
+     * @param query the actual range query
+     */
+    RangeQueryCache(final BiFunction<P, Double, ListSet<Node<T>>> query) {
+        this.query = query;
+    }
+
+    /**
+     * @param center the center of the query
+     * @param range the range of the query
+     * @return the nodes within range, either cached or computed by the query
+     */
+    ListSet<Node<T>> get(final P center, final double range) {
+        final Key key = new Key(center.getCoordinates(), range);
+        final Entry<T> cached = entries.getIfPresent(key);
+        if (cached != null) {
+            if (unchangedSince(cached)) {
+                hits.increment();
+                return cached.result;
+            }
+            invalidations.increment();
+        } else {
+            misses.increment();
+        }
+        final long stamp = clock;
+        final Entry<T> computed = new Entry<>(query.apply(center, range), stamp, cellsOf(center.boundingBox(range)));
+        entries.put(key, computed);
+        return computed.result;
+    }
+
+    /**
+     * Records that a node left a position and/or reached a new one.
+     *
+     * @param from the previous position, or null if the node has just been added
+     * @param to the new position, or null if the node has been removed
+     */
+    void nodeMoved(final P from, final P to) {
+        final long now = clock + 1;
+        if (!Double.isNaN(cellSize)) {
+            if (from != null) {
+                epochs[slotOf(cellsOf(from.getCoordinates()))] = now;
+            }
+            if (to != null) {
+                epochs[slotOf(cellsOf(to.getCoordinates()))] = now;
+            }
+        }
+        clock = now;
+    }
+
+    /**
+     * @return the statistics collected so far
+     */
+    RangeQueryStatistics getStatistics() {
+        return new RangeQueryStatistics(hits.sum(), misses.sum(), invalidations.sum());
+    }
+
+    private boolean unchangedSince(final Entry<T> entry) {
+        if (entry.min == null) {
+            return clock == entry.stamp;
+        }
+        final int dimensions = entry.min.length;
+        final long[] current = entry.min.clone();
+        while (true) {
+            if (epochs[slotOf(current)] > entry.stamp) {
+                return false;
+            }
+            int d = 0;
+            while (d < dimensions && current[d] == entry.max[d]) {
+                current[d] = entry.min[d];
+                d++;
+            }
+            if (d == dimensions) {
+                return true;
+            }
+            current[d]++;
+        }
+    }
+
+    /*
+     * Returns the lowest and highest cells overlapped by the box, or null if they are too many
+     */
+    private long[][] cellsOf(final List<P> box) {
+        final double[] lower = box.get(0).getCoordinates().clone();
+        final double[] upper = lower.clone();
+        for (final P corner : box) {
+            final double[] coordinates = corner.getCoordinates();
+            for (int d = 0; d < coordinates.length; d++) {
+                lower[d] = Math.min(lower[d], coordinates[d]);
+                upper[d] = Math.max(upper[d], coordinates[d]);
+            }
+        }
+        if (Double.isNaN(cellSize)) {
+            synchronized (this) {
+                if (Double.isNaN(cellSize)) {
+                    final double side = upper[0] - lower[0];
+                    cellSize = side > 0 && side < Double.POSITIVE_INFINITY ? side : 1;
+                }
+            }
+        }
+        final long[] min = cellsOf(lower);
+        final long[] max = cellsOf(upper);
+        double cells = 1;
+        for (int d = 0; d < min.length; d++) {
+            cells *= (double) max[d] - min[d] + 1;
+        }
+        return cells <= MAXIMUM_CELLS ? new long[][] {min, max} : null;
+    }
+
+    private long[] cellsOf(final double[] coordinates) {
+        final long[] cells = new long[coordinates.length];
+        for (int d = 0; d < coordinates.length; d++) {
+            cells[d] = (long) Math.floor(coordinates[d] / cellSize);
+        }
+        return cells;
+    }
+
+    private static int slotOf(final long[] cell) {
+        long hash = GOLDEN_GAMMA;
+        for (final long coordinate : cell) {
+            hash = (hash + coordinate) * GOLDEN_GAMMA;
+        }
+        return (int) (hash >>> (Long.SIZE - SLOT_BITS));
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + getStatistics();
+    }
+
+    private static final class Key {
+        private final double[] coordinates;
+        private final double range;
+        private final int hash;
+
+        private Key(final double[] coordinates, final double range) {
+            this.coordinates = coordinates;
+            this.range = range;
+            this.hash = 31 * Arrays.hashCode(coordinates) + Double.hashCode(range);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return hash == other.hash
+                && Double.compare(range, other.range) == 0
+                && Arrays.equals(coordinates, other.coordinates);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry<T> {
+        private final ListSet<Node<T>> result;
+        private final long stamp;
+        private final long[] min;
+        private final long[] max;
+
+        private Entry(final ListSet<Node<T>> result, final long stamp, final long[][] cells) {
+            this.result = result;
+            this.stamp = stamp;
+            this.min = cells == null ? null : cells[0];
+            this.max = cells == null ? null : cells[1];
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.implementations.environments;
+
+import java.io.Serializable;
+
+/**
+ * A snapshot of the effectiveness of the range query cache of an {@link AbstractEnvironment}.
+ */
+public final class RangeQueryStatistics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private final long hits;
+    private final long misses;
+    private final long invalidations;
+
+    /**
+     * @param hits
+     *            queries answered from the cache
+     * @param misses
+     *            queries never performed before (or evicted)
+     * @param invalidations
+     *            queries whose cached result was stale, because some node changed in their surroundings
+     */
+    public RangeQueryStatistics(final long hits, final long misses, final long invalidations) {
+        this.hits = hits;
+        this.misses = misses;
+        this.invalidations = invalidations;
+    }
+
+    /**
+     * @return the number of queries answered from the cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of queries never performed before (or evicted from the cache)
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of queries whose cached result was stale
+     */
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * @return the total number of queries
+     */
+    public long getQueries() {
+        return hits + misses + invalidations;
+    }
+
+    /**
+     * @return the fraction of queries answered from the cache, or NaN if no query was performed
+     */
+    public double getHitRate() {
+        return getQueries() == 0 ? Double.NaN : (double) hits / getQueries();
+    }
+
+    @Override
+    public String toString() {
+        return "[hits=" + hits + ", misses=" + misses + ", invalidations=" + invalidations + ']';
+    }
+
+}
@@ -7,20 +7,28 @@
  */
 package it.unibo.alchemist.model.implementations.linkingrules;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.apache.commons.math3.util.FastMath;
-import org.danilopianini.util.stream.SmallestN;
+import org.danilopianini.util.ListSet;
 import org.jooq.lambda.tuple.Tuple2;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.collect.MinMaxPriorityQueue;
+import com.google.common.collect.TreeMultiset;
 import com.google.common.primitives.Doubles;
 
 import it.unibo.alchemist.model.implementations.neighborhoods.Neighborhoods;
@@ -29,10 +37,15 @@ import it.unibo.alchemist.model.interfaces.LinkingRule;
 import it.unibo.alchemist.model.interfaces.Neighborhood;
 import it.unibo.alchemist.model.interfaces.Node;
 import it.unibo.alchemist.model.interfaces.Position;
+import it.unibo.alchemist.model.interfaces.geometry.Vector2D;
 
 /**
  * Non local-consistent rule that connect the closest N nodes together.
  * Two nodes get connected if either one belongs to the set of the ten devices closest to the other.
+ * In euclidean bidimensional environments, the nodes which may have the center among their closest N are searched
+ * among the N closest to the center in each 60 degrees sector around it: any other node in a sector has at least N
+ * nodes closer than the center. In other environments, they are searched among the nodes whose N-th closest node
+ * was not closer than the center, which are tracked as nodes move.
  * 
  * @param <T> Concentration type
  * @param <P> {@link Position} type
@@ -41,9 +54,12 @@ public class ClosestN<T, P extends Position<P>> implements LinkingRule<T, P> {
 
     private static final long serialVersionUID = 2L;
     private static final double CONNECTION_RANGE_TOLERANCE = 1.1;
+    private static final int SECTORS = 6;
     private final int n, expectedNodes, maxNodes;
     @SuppressFBWarnings("SE_TRANSIENT_FIELD_NOT_RESTORED")
     private transient Cache<Node<T>, Double> ranges;
+    @SuppressFBWarnings("SE_TRANSIENT_FIELD_NOT_RESTORED")
+    private transient ReverseIndex<T> reverseIndex;
 
     /**
      * @param n
@@ -92,53 +108,216 @@ public class ClosestN<T, P extends Position<P>> implements LinkingRule<T, P> {
         return ranges;
     }
 
+    private ReverseIndex<T> reverseIndex() {
+        if (reverseIndex == null) {
+            reverseIndex = new ReverseIndex<>();
+        }
+        return reverseIndex;
+    }
+
     @Override
     public final Neighborhood<T> computeNeighborhood(final Node<T> center, final Environment<T, P> environment) {
-        if (environment.getNodeCount() < expectedNodes || !nodeIsEnabled(center)) {
+        if (environment.getNodeCount() < expectedNodes) {
             return Neighborhoods.make(environment, center);
         }
-        return Neighborhoods.make(environment, center,
-                Stream.concat(
-                    closestN(center, environment),
-                    /*
-                     * Of all nodes but myself...
-                     */
-                    environment.getNodes().parallelStream()
-                        /*
-                         * ...select those for which I'm on the closest n
-                         */
-                        .filter(node -> 
-                                !center.equals(node)
-                                && closestN(node, environment).anyMatch(center::equals)
-                        )
-                )
-                .sequential()
-                .collect(Collectors.toCollection(LinkedHashSet::new)));
-    }
-
-    private Stream<Node<T>> closestN(final Node<T> center, final Environment<T, ?> env) {
         if (!nodeIsEnabled(center)) {
-            return Stream.empty();
-        }
-        double currentRange = getRange(env, center);
-        Set<Node<T>> inRange;
-        final double maxRange = Doubles.max(env.getSizeInDistanceUnits()) * 2;
-        do {
-            inRange = (env.getNodeCount() > n && currentRange < maxRange
-                    ? nodesInRange(env, center, currentRange).stream()
-                    : env.getNodes().stream())
-                        .filter(n -> !n.equals(center) && nodeIsEnabled(n))
-                        .collect(Collectors.toCollection(LinkedHashSet::new));
-            currentRange *= 2;
-        } while (inRange.size() < n && inRange.size() < env.getNodeCount() - 1 && currentRange < maxRange * 2);
-        if (inRange.isEmpty()) {
-            return Stream.empty();
-        }
-        final MinMaxPriorityQueue<Tuple2<Double, Node<T>>> closestN = inRange.stream()
-                .map(node -> new Tuple2<>(env.getDistanceBetweenNodes(center, node), node))
-                .collect(new SmallestN<>(n));
-        setRange(center, Math.max(Double.MIN_VALUE, closestN.peekLast().v1()) * CONNECTION_RANGE_TOLERANCE);
-        return closestN.stream().map(Tuple2::v2);
+            closestN(center, environment);
+            return Neighborhoods.make(environment, center);
+        }
+        final ReverseIndex<T> index = index(center, environment);
+        /*
+         * The nodes that had me among their closest n must be refreshed, as I may have moved away from them
+         */
+        final Set<Node<T>> candidates = new LinkedHashSet<>(index.reverseOf(center));
+        final Set<Node<T>> result = new LinkedHashSet<>(closestN(center, environment));
+        if (environment.getPosition(center) instanceof Vector2D) {
+            candidates.addAll(sectorCandidates(center, environment));
+        } else {
+            candidates.addAll(reachingCandidates(center, environment, index));
+        }
+        /*
+         * Of all the candidates but myself, select those for which I'm among the closest n
+         */
+        for (final Node<T> node : candidates) {
+            if (!center.equals(node) && closestN(node, environment).contains(center)) {
+                result.add(node);
+            }
+        }
+        return Neighborhoods.make(environment, center, result);
+    }
+
+    /*
+     * Finds the enabled nodes closest to center, and records them in the reverse index
+     */
+    private List<Node<T>> closestN(final Node<T> center, final Environment<T, ?> env) {
+        if (!nodeIsEnabled(center)) {
+            reverseIndex().record(center, Collections.emptyList(), Double.NaN);
+            return Collections.emptyList();
+        }
+        /*
+         * Disabled nodes are skipped, so more nodes may be needed
+         */
+        int requested = n;
+        while (true) {
+            final ListSet<Node<T>> nearest = env.getKNearest(center, requested);
+            final List<Node<T>> closestN = nearest.stream()
+                .filter(this::nodeIsEnabled)
+                .limit(n)
+                .collect(Collectors.toList());
+            if (closestN.size() == n || nearest.size() < requested) {
+                double reach = Double.POSITIVE_INFINITY;
+                if (!closestN.isEmpty()) {
+                    final double farthest = env.getDistanceBetweenNodes(center, closestN.get(closestN.size() - 1));
+                    setRange(center, Math.max(Double.MIN_VALUE, farthest) * CONNECTION_RANGE_TOLERANCE);
+                    if (closestN.size() == n) {
+                        reach = farthest;
+                    }
+                }
+                reverseIndex().record(center, closestN, reach);
+                return closestN;
+            }
+            requested = requested > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : requested * 2;
+        }
+    }
+
+    /*
+     * The index must know all and only the nodes of the environment: nodes get added without computing their
+     * neighborhood as long as less than expectedNodes are present, and removed without notice. Membership is checked
+     * by identity, as a removal and an addition leave the number of nodes unchanged.
+     */
+    private ReverseIndex<T> index(final Node<T> center, final Environment<T, P> env) {
+        final ReverseIndex<T> index = reverseIndex();
+        final List<Node<T>> added = new ArrayList<>();
+        int known = 0;
+        for (final Node<T> node : env.getNodes()) {
+            if (index.contains(node)) {
+                known++;
+            } else if (!node.equals(center)) {
+                added.add(node);
+            }
+        }
+        if (known != index.size()) {
+            final List<Node<T>> removed = index.nodesNotIn(env.getNodes());
+            final Set<Node<T>> affected = new LinkedHashSet<>();
+            removed.forEach(node -> affected.addAll(index.reverseOf(node)));
+            removed.forEach(index::forget);
+            affected.removeAll(removed);
+            affected.forEach(node -> closestN(node, env));
+        }
+        added.forEach(node -> closestN(node, env));
+        return index;
+    }
+
+    /*
+     * Nodes which may have the center among their closest n, in any environment: those whose n-th closest node was
+     * not closer than the center when last computed
+     */
+    private Collection<Node<T>> reachingCandidates(
+        final Node<T> center,
+        final Environment<T, P> env,
+        final ReverseIndex<T> index
+    ) {
+        final List<Node<T>> result = new ArrayList<>(index.unbounded());
+        final double farthest = index.farthestReach();
+        if (!Double.isNaN(farthest)) {
+            for (final Node<T> node : nodesInRange(env, center, Math.max(Double.MIN_VALUE, farthest))) {
+                final double reach = index.reachOf(node);
+                if (Double.isNaN(reach) || env.getDistanceBetweenNodes(center, node) <= reach) {
+                    result.add(node);
+                }
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Nodes which may have the center among their closest n, in euclidean bidimensional environments: the closest n
+     * of each sector around the center. The search range of a sector grows until it contains n nodes, or until it
+     * covers the part of the environment falling within the sector.
+     */
+    private List<Node<T>> sectorCandidates(final Node<T> center, final Environment<T, P> env) {
+        final double[] coordinates = env.getPosition(center).getCoordinates();
+        final double[] reach = sectorReach(env, coordinates);
+        final double maxReach = Doubles.max(reach);
+        double range = Math.min(getRange(env, center), maxReach);
+        while (true) {
+            final List<List<Tuple2<Double, Node<T>>>> sectors = IntStream.range(0, SECTORS)
+                .mapToObj(i -> new ArrayList<Tuple2<Double, Node<T>>>())
+                .collect(Collectors.toList());
+            for (final Node<T> node : nodesInRange(env, center, Math.max(Double.MIN_VALUE, range))) {
+                if (!center.equals(node) && nodeIsEnabled(node)) {
+                    final double[] position = env.getPosition(node).getCoordinates();
+                    sectors.get(sectorOf(position[0] - coordinates[0], position[1] - coordinates[1]))
+                        .add(new Tuple2<>(env.getDistanceBetweenNodes(center, node), node));
+                }
+            }
+            double nextRange = range;
+            for (int sector = 0; sector < SECTORS; sector++) {
+                if (sectors.get(sector).size() < n && range < reach[sector]) {
+                    nextRange = Math.max(nextRange, Math.min(range * 2, reach[sector]));
+                }
+            }
+            if (nextRange == range) {
+                return sectors.stream().flatMap(this::closestInSector).collect(Collectors.toList());
+            }
+            range = nextRange;
+        }
+    }
+
+    /*
+     * How far the environment extends within each sector around the center: the farthest point of the intersection
+     * between the sector and the bounding box of the environment is either a corner of the box, or where a side of
+     * the sector exits the box
+     */
+    private double[] sectorReach(final Environment<T, P> env, final double[] center) {
+        final double[] offset = env.getOffset();
+        final double[] size = env.getSizeInDistanceUnits();
+        final double[] min = new double[2];
+        final double[] max = new double[2];
+        for (int d = 0; d < 2; d++) {
+            min[d] = Math.min(offset[d], center[d]);
+            max[d] = Math.max(offset[d] + size[d], center[d]);
+        }
+        final double[] reach = new double[SECTORS];
+        for (int sector = 0; sector < SECTORS; sector++) {
+            final double angle = -Math.PI + 2 * Math.PI * sector / SECTORS;
+            final double dx = FastMath.cos(angle);
+            final double dy = FastMath.sin(angle);
+            final double exit = Math.min(
+                dx > 0 ? (max[0] - center[0]) / dx : dx < 0 ? (min[0] - center[0]) / dx : Double.POSITIVE_INFINITY,
+                dy > 0 ? (max[1] - center[1]) / dy : dy < 0 ? (min[1] - center[1]) / dy : Double.POSITIVE_INFINITY
+            );
+            reach[sector] = Math.max(reach[sector], exit);
+            final int previous = (sector + SECTORS - 1) % SECTORS;
+            reach[previous] = Math.max(reach[previous], exit);
+        }
+        for (final double x : new double[] {min[0], max[0]}) {
+            for (final double y : new double[] {min[1], max[1]}) {
+                final int sector = sectorOf(x - center[0], y - center[1]);
+                reach[sector] = Math.max(reach[sector], FastMath.hypot(x - center[0], y - center[1]));
+            }
+        }
+        for (int sector = 0; sector < SECTORS; sector++) {
+            reach[sector] *= CONNECTION_RANGE_TOLERANCE;
+        }
+        return reach;
+    }
+
+    private static int sectorOf(final double dx, final double dy) {
+        final double angle = FastMath.atan2(dy, dx);
+        return Math.min(SECTORS - 1, (int) ((angle + Math.PI) / (2 * Math.PI) * SECTORS));
+    }
+
+    /*
+     * The n closest nodes of the sector, plus those tied with the n-th
+     */
+    private Stream<Node<T>> closestInSector(final List<Tuple2<Double, Node<T>>> sector) {
+        sector.sort((a, b) -> Double.compare(a.v1(), b.v1()));
+        if (sector.size() <= n) {
+            return sector.stream().map(Tuple2::v2);
+        }
+        final double threshold = sector.get(n - 1).v1();
+        return sector.stream().filter(it -> it.v1() <= threshold).map(Tuple2::v2);
     }
 
     /**
@@ -217,4 +396,83 @@ public class ClosestN<T, P extends Position<P>> implements LinkingRule<T, P> {
         return n;
     }
 
+    /*
+     * The closest n last computed for each node, the nodes having each node among their closest n (its reverse
+     * closest n), and how far the n-th closest of each node was: NaN if unknown, infinite (unbounded) if less than n
+     * nodes could be linked. The environment recomputes the neighborhood of every node that moves, which refreshes all the nodes
+     * having it among their closest n: hence, the recorded reach of a node is never shorter than the actual one, and
+     * only the nodes whose reach includes the center may have it among their closest n.
+     */
+    private static final class ReverseIndex<T> {
+        private final Map<Node<T>, List<Node<T>>> forward = new HashMap<>();
+        private final Map<Node<T>, Set<Node<T>>> reverse = new HashMap<>();
+        private final Map<Node<T>, Double> reachByNode = new HashMap<>();
+        private final TreeMultiset<Double> finiteReaches = TreeMultiset.create();
+        private final Set<Node<T>> unbounded = new LinkedHashSet<>();
+
+        private void record(final Node<T> node, final List<Node<T>> closest, final double reach) {
+            forget(node);
+            forward.put(node, closest);
+            for (final Node<T> neighbor : closest) {
+                reverse.computeIfAbsent(neighbor, it -> new LinkedHashSet<>()).add(node);
+            }
+            reachByNode.put(node, reach);
+            if (reach == Double.POSITIVE_INFINITY) {
+                unbounded.add(node);
+            } else if (!Double.isNaN(reach)) {
+                finiteReaches.add(reach);
+            }
+        }
+
+        private void forget(final Node<T> node) {
+            final List<Node<T>> previous = forward.remove(node);
+            if (previous != null) {
+                for (final Node<T> neighbor : previous) {
+                    final Set<Node<T>> reverseOfNeighbor = reverse.get(neighbor);
+                    reverseOfNeighbor.remove(node);
+                    if (reverseOfNeighbor.isEmpty()) {
+                        reverse.remove(neighbor);
+                    }
+                }
+                final double previousReach = reachByNode.remove(node);
+                if (previousReach == Double.POSITIVE_INFINITY) {
+                    unbounded.remove(node);
+                } else if (!Double.isNaN(previousReach)) {
+                    finiteReaches.remove(previousReach);
+                }
+            }
+        }
+
+        private boolean contains(final Node<T> node) {
+            return forward.containsKey(node);
+        }
+
+        private int size() {
+            return forward.size();
+        }
+
+        private Set<Node<T>> reverseOf(final Node<T> node) {
+            return reverse.getOrDefault(node, Collections.emptySet());
+        }
+
+        private double reachOf(final Node<T> node) {
+            return reachByNode.getOrDefault(node, Double.NaN);
+        }
+
+        private Set<Node<T>> unbounded() {
+            return unbounded;
+        }
+
+        private double farthestReach() {
+            return finiteReaches.isEmpty() ? Double.NaN : finiteReaches.lastEntry().getElement();
+        }
+
+        private List<Node<T>> nodesNotIn(final Collection<Node<T>> nodes) {
+            final Set<Node<T>> present = new HashSet<>(nodes);
+            return forward.keySet().stream()
+                .filter(node -> !present.contains(node))
+                .collect(Collectors.toList());
+        }
+    }
+
 }
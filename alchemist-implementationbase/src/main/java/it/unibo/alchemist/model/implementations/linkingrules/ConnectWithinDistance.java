@@ -9,6 +9,7 @@ package it.unibo.alchemist.model.implementations.linkingrules;
 
 import it.unibo.alchemist.model.implementations.neighborhoods.Neighborhoods;
 import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.LinkingRule;
 import it.unibo.alchemist.model.interfaces.Neighborhood;
 import it.unibo.alchemist.model.interfaces.Node;
 import it.unibo.alchemist.model.interfaces.Position;
@@ -45,8 +46,21 @@ public class ConnectWithinDistance<T, P extends Position<P>> extends AbstractLoc
     /**
      * @return the range
      */
-    protected final double getRange() {
+    public final double getRange() {
         return range;
     }
 
+    /**
+     * Environments may update the neighborhoods of the nodes moving under rules linking all and only the nodes
+     * within range incrementally, and index the nodes according to such range. Subclasses may compute the
+     * neighborhoods differently, hence only this exact class qualifies.
+     *
+     * @param rule
+     *            the linking rule
+     * @return true if the rule is exactly a {@link ConnectWithinDistance}
+     */
+    public static boolean linksOnlyWithinRange(final LinkingRule<?, ?> rule) {
+        return rule != null && rule.getClass() == ConnectWithinDistance.class;
+    }
+
 }
@@ -112,7 +112,7 @@ public abstract class AbstractReaction<T> implements Reaction<T> {
 
     @Override
     public final int compareTo(final Reaction<T> o) {
-        return getTau().compareTo(o.getTau());
+        return Double.compare(getTauAsDouble(), o.getTauAsDouble());
     }
 
     @Override
@@ -193,6 +193,11 @@ public abstract class AbstractReaction<T> implements Reaction<T> {
         return timeDistribution.getNextOccurence();
     }
 
+    @Override
+    public final double getTauAsDouble() {
+        return timeDistribution.getNextOccurenceAsDouble();
+    }
+
     @Override
     public final TimeDistribution<T> getTimeDistribution() {
         return timeDistribution;
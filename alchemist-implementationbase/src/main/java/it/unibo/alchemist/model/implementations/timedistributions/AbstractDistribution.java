@@ -22,6 +22,7 @@ public abstract class AbstractDistribution<T> implements TimeDistribution<T> {
 
     private static final long serialVersionUID = -8906648194668569179L;
     private Time tau;
+    private double tauAsDouble;
     private boolean schedulable;
     private final Time startTime;
 
@@ -30,7 +31,7 @@ public abstract class AbstractDistribution<T> implements TimeDistribution<T> {
      *            initial time
      */
     public AbstractDistribution(final Time start) {
-        tau = start;
+        setNextOccurrence(start);
         startTime = start;
     }
 
@@ -42,6 +43,7 @@ public abstract class AbstractDistribution<T> implements TimeDistribution<T> {
      */
     protected final void setNextOccurrence(final Time t) {
         this.tau = t;
+        this.tauAsDouble = t.toDouble();
     }
 
     @Override
@@ -70,6 +72,11 @@ public abstract class AbstractDistribution<T> implements TimeDistribution<T> {
         return tau;
     }
 
+    @Override
+    public final double getNextOccurenceAsDouble() {
+        return tauAsDouble;
+    }
+
     /**
      * Implement this method to update the distribution's internal status.
      * 
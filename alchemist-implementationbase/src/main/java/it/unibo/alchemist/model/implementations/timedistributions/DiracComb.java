@@ -41,6 +41,11 @@ public class DiracComb<T> extends AbstractDistribution<T> {
         this(new DoubleTime(), rate);
     }
 
+    @Override
+    public final boolean isPeriodic() {
+        return true;
+    }
+
     @Override
     public final double getRate() {
         return 1 / timeInterval;
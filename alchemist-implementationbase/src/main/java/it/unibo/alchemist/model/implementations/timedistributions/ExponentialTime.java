@@ -14,9 +14,12 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import it.unibo.alchemist.model.implementations.times.DoubleTime;
 import it.unibo.alchemist.model.interfaces.Environment;
 import it.unibo.alchemist.model.interfaces.Time;
+import it.unibo.alchemist.model.math.XoshiroBlockGenerator;
 
 /**
  * Markovian events.
+ * If the {@link RandomGenerator} is a {@link XoshiroBlockGenerator}, the intervals are drawn from its
+ * buffer of exponential variates, otherwise they are computed by inversion from a uniform number.
  * 
  * @param <T> concentration type
  */
@@ -75,13 +78,12 @@ public class ExponentialTime<T> extends AbstractDistribution<T> {
         assert !Double.isNaN(newpropensity);
         assert !Double.isNaN(oldPropensity);
         if (isMu) {
-            final Time dt = genTime(newpropensity);
-            setNextOccurrence(curTime.plus(dt));
+            setNextOccurrence(new DoubleTime(curTime.toDouble() + genTime(newpropensity).toDouble()));
         } else {
             if (oldPropensity != newpropensity) {
-                final Time sub = getNextOccurence().minus(curTime);
-                final Time mul = sub.times(oldPropensity / newpropensity);
-                setNextOccurrence(mul.plus(curTime));
+                final double current = curTime.toDouble();
+                final double next = (getNextOccurenceAsDouble() - current) * (oldPropensity / newpropensity) + current;
+                setNextOccurrence(Double.isInfinite(next) ? Time.INFINITY : new DoubleTime(next));
             }
         }
     }
@@ -97,6 +99,9 @@ public class ExponentialTime<T> extends AbstractDistribution<T> {
     }
 
     private double uniformToExponential(final double lambda) {
+        if (rand instanceof XoshiroBlockGenerator) {
+            return ((XoshiroBlockGenerator) rand).nextExponential() / lambda;
+        }
         return -FastMath.log1p(-rand.nextDouble()) / lambda;
     }
 
@@ -16,9 +16,12 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import it.unibo.alchemist.model.implementations.times.DoubleTime;
 import it.unibo.alchemist.model.interfaces.Environment;
 import it.unibo.alchemist.model.interfaces.Time;
+import it.unibo.alchemist.model.math.XoshiroBlockGenerator;
 
 /**
  * Weibull distributed events.
+ * If the {@link RandomGenerator} is a {@link XoshiroBlockGenerator}, the samples are computed in closed form
+ * from its buffer of exponential variates.
  * 
  * @param <T> concentration type
  */
@@ -97,6 +100,10 @@ public class WeibullTime<T> extends AbstractDistribution<T> {
      * @return a sample from the distribution
      */
     protected double genSample() {
+        if (rand instanceof XoshiroBlockGenerator) {
+            final double exponential = ((XoshiroBlockGenerator) rand).nextExponential();
+            return dist.getScale() * FastMath.pow(exponential, 1 / dist.getShape()) + offset;
+        }
         return dist.inverseCumulativeProbability(rand.nextDouble()) + offset;
     }
 
@@ -53,16 +53,8 @@ public final class DoubleTime implements Time {
 
     @Override
     public int compareTo(final Time o) {
-        final boolean inf = isInfinite();
-        final boolean oinf = o.isInfinite();
-        if (inf && oinf) {
-            return 0;
-        } else if (inf) {
-            return 1;
-        } else if (oinf) {
-            return -1;
-        }
-        return Double.compare(toDouble(), o.toDouble());
+        // Infinite times are represented by positive infinity, which Double.compare sorts last
+        return Double.compare(t, o.toDouble());
     }
 
     @Override
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.math;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.special.Gamma;
+
+import java.io.Serializable;
+
+/**
+ * Draws Poisson-distributed numbers of arbitrary mean from a single {@link RandomGenerator}.
+ * Differently from {@link org.apache.commons.math3.distribution.PoissonDistribution}, whose mean is fixed at
+ * construction time, one sampler serves every mean, so that users whose mean changes at each sample (e.g., the
+ * firings of a leap) need not allocate a distribution per sample.
+ * Small means are sampled by inversion, larger ones by the transformed rejection with squeeze (PTRS) of
+ * W. Hörmann, "The transformed rejection method for generating Poisson random variables" (1993),
+ * whose cost does not grow with the mean.
+ */
+public final class PoissonSampler implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    /*
+     * Below this mean, inversion is faster than PTRS
+     */
+    private static final double INVERSION_THRESHOLD = 10;
+    /*
+     * Coefficients of PTRS, as published by Hörmann
+     */
+    private static final double B_OFFSET = 0.931;
+    private static final double B_SLOPE = 2.53;
+    private static final double A_OFFSET = -0.059;
+    private static final double A_SLOPE = 0.02483;
+    private static final double INVERSE_ALPHA_OFFSET = 1.1239;
+    private static final double INVERSE_ALPHA_SLOPE = 1.1328;
+    private static final double INVERSE_ALPHA_POLE = 3.4;
+    private static final double SQUEEZE_OFFSET = 0.9277;
+    private static final double SQUEEZE_SLOPE = 3.6224;
+    private static final double SQUEEZE_POLE = 2;
+    private static final double SHIFT = 0.43;
+    private static final double SQUEEZE_MIN_US = 0.07;
+    private static final double REJECTION_MAX_US = 0.013;
+    private static final double HALF = 0.5;
+    @SuppressFBWarnings(value = "SE_BAD_FIELD", justification = "All the random engines provided by Apache are Serializable")
+    private final RandomGenerator random;
+
+    /**
+     * @param random
+     *            the {@link RandomGenerator} consumed by every sample
+     */
+    public PoissonSampler(final RandomGenerator random) {
+        this.random = random;
+    }
+
+    /**
+     * @param mean
+     *            the mean of the distribution, non negative
+     * @return a number drawn from a Poisson distribution with the provided mean
+     */
+    public long sample(final double mean) {
+        if (mean < 0 || Double.isNaN(mean)) {
+            throw new IllegalArgumentException("The mean of a Poisson distribution must be non negative, got " + mean);
+        }
+        if (mean == 0) {
+            return 0;
+        }
+        return mean < INVERSION_THRESHOLD ? inversion(mean) : transformedRejection(mean);
+    }
+
+    private long inversion(final double mean) {
+        final double uniform = random.nextDouble();
+        double probability = Math.exp(-mean);
+        double cumulative = probability;
+        long result = 0;
+        while (uniform > cumulative && probability > 0) {
+            result++;
+            probability *= mean / result;
+            cumulative += probability;
+        }
+        return result;
+    }
+
+    private long transformedRejection(final double mean) {
+        final double logMean = Math.log(mean);
+        final double b = B_OFFSET + B_SLOPE * Math.sqrt(mean);
+        final double a = A_OFFSET + A_SLOPE * b;
+        final double logInverseAlpha = Math.log(INVERSE_ALPHA_OFFSET + INVERSE_ALPHA_SLOPE / (b - INVERSE_ALPHA_POLE));
+        final double squeeze = SQUEEZE_OFFSET - SQUEEZE_SLOPE / (b - SQUEEZE_POLE);
+        while (true) {
+            final double u = random.nextDouble() - HALF;
+            final double v = random.nextDouble();
+            final double us = HALF - Math.abs(u);
+            final long k = (long) Math.floor((2 * a / us + b) * u + mean + SHIFT);
+            if (us >= SQUEEZE_MIN_US && v <= squeeze) {
+                return k;
+            }
+            if (k >= 0 && (us >= REJECTION_MAX_US || v <= us)
+                && Math.log(v) + logInverseAlpha - Math.log(a / (us * us) + b)
+                    <= -mean + k * logMean - Gamma.logGamma(k + 1)) {
+                return k;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[random=" + random + ']';
+    }
+
+}
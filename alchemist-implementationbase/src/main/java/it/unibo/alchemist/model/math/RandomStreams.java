@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.math;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * Independent streams of random numbers, split from a single seed in the style of SplittableRandom:
+ * the seed of each stream is obtained by mixing the root seed with the coordinates identifying the user of the
+ * stream (e.g., the index of a node and of one of its reactions).
+ * A stream only depends on the root seed and on its coordinates, and not on the order in which the streams are
+ * requested or used: entities owning distinct streams can consume them concurrently and still produce
+ * reproducible results.
+ */
+public final class RandomStreams {
+
+    /*
+     * Each stream is usually consumed by a single reaction: small blocks keep the memory footprint low
+     */
+    private static final int BLOCK = 16;
+    private final long seed;
+
+    /**
+     * @param seed
+     *            the root seed
+     */
+    public RandomStreams(final long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param coordinates
+     *            the coordinates of the stream
+     * @return a new {@link RandomGenerator} producing the stream with the provided coordinates
+     */
+    public RandomGenerator get(final long... coordinates) {
+        long key = XoshiroBlockGenerator.mix(seed);
+        for (final long coordinate : coordinates) {
+            key = XoshiroBlockGenerator.mix(key ^ XoshiroBlockGenerator.mix(coordinate));
+        }
+        return new XoshiroBlockGenerator(key, BLOCK);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[seed=" + seed + ']';
+    }
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.math;
+
+import org.apache.commons.math3.random.BitsStreamGenerator;
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * A fast {@link org.apache.commons.math3.random.RandomGenerator}, implementing xoshiro256++
+ * (D. Blackman, S. Vigna, 2018), which generates its numbers in blocks:
+ * raw 64-bit outputs and exponentially distributed variates are produced a few hundreds at a time in tight loops
+ * filling primitive buffers, and then consumed one by one.
+ * Exponential variates are generated with the ziggurat method (G. Marsaglia, W. W. Tsang, 2000), which in most
+ * cases needs a single multiplication instead of a logarithm.
+ *
+ * The sequences are reproducible given the seed, but differ from those of the
+ * {@link org.apache.commons.math3.random.MersenneTwister} used by default:
+ * the time distributions that can take advantage of this generator (e.g.,
+ * {@link it.unibo.alchemist.model.implementations.timedistributions.ExponentialTime}) use it only if it is
+ * explicitly selected as the simulation random generator.
+ */
+public final class XoshiroBlockGenerator extends BitsStreamGenerator {
+
+    private static final long serialVersionUID = 1L;
+    private static final int DEFAULT_BLOCK = 256;
+    /*
+     * Ziggurat for the exponential distribution
+     */
+    private static final int LAYERS = 256;
+    private static final double TAIL = 7.697117470131487;
+    private static final double VOLUME = 3.949659822581572e-3;
+    private static final double TWO_TO_32 = 4_294_967_296.0;
+    private static final long[] KE = new long[LAYERS];
+    private static final double[] WE = new double[LAYERS];
+    private static final double[] FE = new double[LAYERS];
+    /*
+     * SplitMix64 constants, used to expand the seeds
+     */
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final long MIX_1 = 0xbf58476d1ce4e5b9L;
+    private static final long MIX_2 = 0x94d049bb133111ebL;
+    private static final int SHIFT_1 = 30;
+    private static final int SHIFT_2 = 27;
+    private static final int SHIFT_3 = 31;
+    /*
+     * xoshiro256++ constants
+     */
+    private static final int ROTATION_OUTPUT = 23;
+    private static final int SHIFT_STATE = 17;
+    private static final int ROTATION_STATE = 45;
+    private static final int DOUBLE_SHIFT = 11;
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+    private static final int LONG_SIZE = 64;
+    private static final int INT_SIZE = 32;
+
+    static {
+        double de = TAIL;
+        double te = de;
+        final double q = VOLUME / FastMath.exp(-de);
+        KE[0] = (long) (de / q * TWO_TO_32);
+        KE[1] = 0;
+        WE[0] = q / TWO_TO_32;
+        WE[LAYERS - 1] = de / TWO_TO_32;
+        FE[0] = 1;
+        FE[LAYERS - 1] = FastMath.exp(-de);
+        for (int i = LAYERS - 2; i >= 1; i--) {
+            de = -FastMath.log(VOLUME / de + FastMath.exp(-de));
+            KE[i + 1] = (long) (de / te * TWO_TO_32);
+            te = de;
+            FE[i] = FastMath.exp(-de);
+            WE[i] = de / TWO_TO_32;
+        }
+    }
+
+    private final long[] outputs;
+    private final double[] exponentials;
+    private long s0;
+    private long s1;
+    private long s2;
+    private long s3;
+    private int nextOutput;
+    private int nextExponential;
+
+    /**
+     * @param seed
+     *            the initial seed
+     */
+    public XoshiroBlockGenerator(final long seed) {
+        this(seed, DEFAULT_BLOCK);
+    }
+
+    /**
+     * @param seed
+     *            the initial seed
+     */
+    public XoshiroBlockGenerator(final int[] seed) {
+        this(0, DEFAULT_BLOCK);
+        setSeed(seed);
+    }
+
+    /**
+     * @param seed
+     *            the initial seed
+     * @param blockSize
+     *            how many numbers get generated at a time. Smaller blocks save memory when many generators are used
+     */
+    public XoshiroBlockGenerator(final long seed, final int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Invalid block size: " + blockSize);
+        }
+        outputs = new long[blockSize];
+        exponentials = new double[blockSize];
+        setSeed(seed);
+    }
+
+    @Override
+    public void setSeed(final int seed) {
+        setSeed((long) seed);
+    }
+
+    @Override
+    public void setSeed(final int[] seed) {
+        long combined = 0;
+        for (final int value : seed) {
+            combined = combined * GOLDEN_GAMMA + value;
+        }
+        setSeed(combined);
+    }
+
+    /**
+     * Expands the seed into the 256 bits of state with SplitMix64, and discards the buffered numbers.
+     *
+     * @param seed
+     *            the new seed
+     */
+    @Override
+    public void setSeed(final long seed) {
+        long x = seed;
+        x += GOLDEN_GAMMA;
+        s0 = mix(x);
+        x += GOLDEN_GAMMA;
+        s1 = mix(x);
+        x += GOLDEN_GAMMA;
+        s2 = mix(x);
+        x += GOLDEN_GAMMA;
+        s3 = mix(x);
+        nextOutput = outputs.length;
+        nextExponential = exponentials.length;
+        clear();
+    }
+
+    @Override
+    protected int next(final int bits) {
+        return (int) (nextLong() >>> (LONG_SIZE - bits));
+    }
+
+    @Override
+    public int nextInt() {
+        return (int) (nextLong() >>> INT_SIZE);
+    }
+
+    @Override
+    public long nextLong() {
+        if (nextOutput == outputs.length) {
+            fillOutputs();
+        }
+        return outputs[nextOutput++];
+    }
+
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> DOUBLE_SHIFT) * DOUBLE_UNIT;
+    }
+
+    /**
+     * @return an exponentially distributed number with unit rate
+     */
+    public double nextExponential() {
+        if (nextExponential == exponentials.length) {
+            for (int i = 0; i < exponentials.length; i++) {
+                exponentials[i] = sampleExponential();
+            }
+            nextExponential = 0;
+        }
+        return exponentials[nextExponential++];
+    }
+
+    private void fillOutputs() {
+        long a = s0;
+        long b = s1;
+        long c = s2;
+        long d = s3;
+        for (int i = 0; i < outputs.length; i++) {
+            outputs[i] = Long.rotateLeft(a + d, ROTATION_OUTPUT) + a;
+            final long t = b << SHIFT_STATE;
+            c ^= a;
+            d ^= b;
+            b ^= c;
+            a ^= d;
+            c ^= t;
+            d = Long.rotateLeft(d, ROTATION_STATE);
+        }
+        s0 = a;
+        s1 = b;
+        s2 = c;
+        s3 = d;
+        nextOutput = 0;
+    }
+
+    private double sampleExponential() {
+        long jz = nextLong() >>> INT_SIZE;
+        int iz = (int) (jz & (LAYERS - 1));
+        while (jz >= KE[iz]) {
+            if (iz == 0) {
+                return TAIL - FastMath.log1p(-nextDouble());
+            }
+            final double x = jz * WE[iz];
+            if (FE[iz] + nextDouble() * (FE[iz - 1] - FE[iz]) < FastMath.exp(-x)) {
+                return x;
+            }
+            jz = nextLong() >>> INT_SIZE;
+            iz = (int) (jz & (LAYERS - 1));
+        }
+        return jz * WE[iz];
+    }
+
+    /**
+     * SplitMix64 finalizer: a bijective function whose outputs look independent even for consecutive inputs.
+     *
+     * @param seed
+     *            the value to mix
+     * @return the mixed value
+     */
+    static long mix(final long seed) {
+        long z = seed;
+        z = (z ^ (z >>> SHIFT_1)) * MIX_1;
+        z = (z ^ (z >>> SHIFT_2)) * MIX_2;
+        return z ^ (z >>> SHIFT_3);
+    }
+
+}
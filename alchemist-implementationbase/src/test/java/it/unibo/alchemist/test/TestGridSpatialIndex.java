@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.test;
+
+import it.unibo.alchemist.model.implementations.environments.GridSpatialIndex;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks {@link GridSpatialIndex} against a brute force search.
+ */
+public class TestGridSpatialIndex {
+
+    private static final int ELEMENTS = 500;
+    private static final int OPERATIONS = 2000;
+    private static final double SIDE = 100;
+    private static final double CELL = 3;
+    private static final double[] RANGES = {0.5, CELL, 10, 1000};
+    private static final int REMOVAL_ODDS = 10;
+    private static final int LARGE_K_ODDS = 10;
+
+    /**
+     * Random insertions, moves and removals, checking every kind of query.
+     */
+    @Test
+    public void testAgainstBruteForce() {
+        final RandomGenerator random = new MersenneTwister(1);
+        final GridSpatialIndex<Integer> index = new GridSpatialIndex<>(2, CELL);
+        final double[][] positions = new double[ELEMENTS][];
+        for (int i = 0; i < ELEMENTS; i++) {
+            positions[i] = randomPosition(random);
+            index.insert(i, positions[i]);
+        }
+        for (int operation = 0; operation < OPERATIONS; operation++) {
+            final int element = random.nextInt(ELEMENTS);
+            if (positions[element] == null) {
+                positions[element] = randomPosition(random);
+                index.insert(element, positions[element]);
+            } else if (random.nextInt(REMOVAL_ODDS) == 0) {
+                assertTrue(index.remove(element, positions[element]));
+                positions[element] = null;
+            } else {
+                final double[] destination = random.nextBoolean()
+                    ? new double[] {positions[element][0] + random.nextDouble(), positions[element][1]}
+                    : randomPosition(random);
+                assertTrue(index.move(element, positions[element], destination));
+                positions[element] = destination;
+            }
+            final double[] center = randomPosition(random);
+            final double range = RANGES[operation % RANGES.length];
+            final double[][] box = {
+                {center[0] - range, center[1] + range},
+                {center[0] + range, center[1] - range},
+            };
+            final Set<Integer> expected = IntStream.range(0, ELEMENTS)
+                .filter(i -> positions[i] != null
+                    && Math.abs(positions[i][0] - center[0]) <= range
+                    && Math.abs(positions[i][1] - center[1]) <= range)
+                .boxed()
+                .collect(Collectors.toSet());
+            assertEquals(expected, new HashSet<>(index.query(box)));
+        }
+    }
+
+    /**
+     * The area entered by a moving ball contains the elements in range of its new center only.
+     */
+    @Test
+    public void testEnteredArea() {
+        final RandomGenerator random = new MersenneTwister(2);
+        final GridSpatialIndex<Integer> index = new GridSpatialIndex<>(2, CELL);
+        final double[][] positions = new double[ELEMENTS][];
+        for (int i = 0; i < ELEMENTS; i++) {
+            positions[i] = randomPosition(random);
+            index.insert(i, positions[i]);
+        }
+        for (int operation = 0; operation < OPERATIONS; operation++) {
+            final double[] start = randomPosition(random);
+            final double[] end = random.nextBoolean()
+                ? new double[] {start[0] + random.nextDouble(), start[1] - random.nextDouble()}
+                : randomPosition(random);
+            final double range = RANGES[operation % RANGES.length];
+            final Set<Integer> expected = IntStream.range(0, ELEMENTS)
+                .filter(i -> distance(positions[i], end) <= range && distance(positions[i], start) > range)
+                .boxed()
+                .collect(Collectors.toSet());
+            final List<Integer> entered = index.queryEntered(start, end, range);
+            assertEquals(expected.size(), entered.size());
+            assertEquals(expected, new HashSet<>(entered));
+        }
+    }
+
+    /**
+     * The nearest elements are the first ones sorted by distance, also when far from the occupied cells.
+     */
+    @Test
+    public void testNearest() {
+        final RandomGenerator random = new MersenneTwister(3);
+        final GridSpatialIndex<Integer> index = new GridSpatialIndex<>(2, CELL);
+        final double[][] positions = new double[ELEMENTS][];
+        for (int i = 0; i < ELEMENTS; i++) {
+            positions[i] = randomPosition(random);
+            index.insert(i, positions[i]);
+        }
+        for (int operation = 0; operation < OPERATIONS; operation++) {
+            final double[] center = randomPosition(random);
+            if (operation % 2 == 0) {
+                center[0] *= SIDE;
+            }
+            final int k = 1 + random.nextInt(operation % LARGE_K_ODDS == 0 ? 2 * ELEMENTS : LARGE_K_ODDS);
+            final List<Integer> expected = IntStream.range(0, ELEMENTS)
+                .boxed()
+                .sorted(Comparator.comparingDouble(i -> distance(positions[i], center)))
+                .limit(k)
+                .collect(Collectors.toList());
+            assertEquals(expected, index.queryNearest(center, k));
+        }
+    }
+
+    /**
+     * Removing or moving missing elements fails without side effects, wrong cell sizes are rejected.
+     */
+    @Test
+    public void testMissingElements() {
+        final GridSpatialIndex<String> index = new GridSpatialIndex<>(2, CELL);
+        final double[] origin = {0, 0};
+        final double[] far = {SIDE, SIDE};
+        index.insert("a", origin);
+        assertFalse(index.remove("b", origin));
+        assertFalse(index.remove("a", far));
+        assertFalse(index.move("a", far, origin));
+        assertEquals(1, index.query(origin, origin).size());
+        assertThrows(IllegalArgumentException.class, () -> new GridSpatialIndex<>(2, 0));
+        assertThrows(IllegalArgumentException.class, () -> new GridSpatialIndex<>(2, Double.NaN));
+    }
+
+    private static double distance(final double[] first, final double[] second) {
+        return Math.hypot(first[0] - second[0], first[1] - second[1]);
+    }
+
+    private static double[] randomPosition(final RandomGenerator random) {
+        return new double[] {random.nextDouble() * SIDE - SIDE / 2, random.nextDouble() * SIDE - SIDE / 2};
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.test;
+
+import it.unibo.alchemist.model.math.PoissonSampler;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a single {@link PoissonSampler} draws the expected moments for means in both its regimes.
+ */
+public class TestPoissonSampler {
+
+    private static final int SAMPLES = 200_000;
+    private static final double TOLERANCE = 0.02;
+    private static final double[] MEANS = {0.1, 3, 9.99, 10, 42.5, 1e4};
+
+    /**
+     * Poisson numbers are non negative, and their mean equals their variance.
+     */
+    @Test
+    public void testMoments() {
+        final PoissonSampler sampler = new PoissonSampler(new MersenneTwister(0));
+        for (final double mean : MEANS) {
+            final SummaryStatistics statistics = new SummaryStatistics();
+            for (int i = 0; i < SAMPLES; i++) {
+                statistics.addValue(sampler.sample(mean));
+            }
+            assertTrue(statistics.getMin() >= 0);
+            assertEquals(mean, statistics.getMean(), mean * TOLERANCE, () -> "mean of " + mean);
+            assertEquals(mean, statistics.getVariance(), 2 * mean * TOLERANCE, () -> "variance of " + mean);
+        }
+    }
+
+    /**
+     * A null mean always draws zero, a negative one is rejected.
+     */
+    @Test
+    public void testDegenerateMeans() {
+        final PoissonSampler sampler = new PoissonSampler(new MersenneTwister(1));
+        assertEquals(0, sampler.sample(0));
+        assertThrows(IllegalArgumentException.class, () -> sampler.sample(-1));
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.test;
+
+import it.unibo.alchemist.model.math.RandomStreams;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that {@link RandomStreams} only depend on the seed and on their coordinates.
+ */
+public class TestRandomStreams {
+
+    private static final int STREAMS = 100;
+    private static final int SEQUENCE = 100;
+
+    /**
+     * Streams requested and consumed in different orders produce the same numbers.
+     */
+    @Test
+    public void testOrderIndependence() {
+        final RandomStreams streams = new RandomStreams(1);
+        final long[][] forward = new long[STREAMS][];
+        for (int i = 0; i < STREAMS; i++) {
+            forward[i] = sequence(streams.get(i, 0));
+        }
+        final RandomStreams again = new RandomStreams(1);
+        for (int i = STREAMS - 1; i >= 0; i--) {
+            assertArrayEquals(forward[i], sequence(again.get(i, 0)));
+        }
+    }
+
+    /**
+     * Distinct coordinates and distinct seeds produce distinct streams.
+     */
+    @Test
+    public void testDistinctStreams() {
+        final RandomStreams streams = new RandomStreams(1);
+        final RandomStreams other = new RandomStreams(2);
+        final long[] firsts = LongStream.range(0, STREAMS)
+            .flatMap(i -> LongStream.of(
+                streams.get(i, 0).nextLong(),
+                streams.get(i, 1).nextLong(),
+                other.get(i, 0).nextLong()
+            ))
+            .toArray();
+        assertEquals(firsts.length, LongStream.of(firsts).distinct().count());
+    }
+
+    private static long[] sequence(final RandomGenerator random) {
+        final long[] result = new long[SEQUENCE];
+        for (int i = 0; i < SEQUENCE; i++) {
+            result[i] = random.nextLong();
+        }
+        return result;
+    }
+
+}
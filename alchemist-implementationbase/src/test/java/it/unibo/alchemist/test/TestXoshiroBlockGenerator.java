@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.test;
+
+import it.unibo.alchemist.model.math.XoshiroBlockGenerator;
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the distributions and the reproducibility of the {@link XoshiroBlockGenerator}.
+ */
+public class TestXoshiroBlockGenerator {
+
+    private static final int SAMPLES = 1_000_000;
+    private static final int SEQUENCE = 1000;
+    private static final double TOLERANCE = 0.01;
+    private static final double UNIFORM_MEAN = 0.5;
+    private static final double UNIFORM_VARIANCE = 1.0 / 12;
+
+    /**
+     * Uniform numbers are in [0, 1) with the expected mean and variance.
+     */
+    @Test
+    public void testUniform() {
+        final XoshiroBlockGenerator random = new XoshiroBlockGenerator(0);
+        final SummaryStatistics statistics = new SummaryStatistics();
+        for (int i = 0; i < SAMPLES; i++) {
+            statistics.addValue(random.nextDouble());
+        }
+        assertTrue(statistics.getMin() >= 0);
+        assertTrue(statistics.getMax() < 1);
+        assertEquals(UNIFORM_MEAN, statistics.getMean(), UNIFORM_MEAN * TOLERANCE);
+        assertEquals(UNIFORM_VARIANCE, statistics.getVariance(), UNIFORM_VARIANCE * TOLERANCE);
+    }
+
+    /**
+     * Exponential numbers have unit mean and variance.
+     */
+    @Test
+    public void testExponential() {
+        final XoshiroBlockGenerator random = new XoshiroBlockGenerator(1);
+        final SummaryStatistics statistics = new SummaryStatistics();
+        for (int i = 0; i < SAMPLES; i++) {
+            statistics.addValue(random.nextExponential());
+        }
+        assertTrue(statistics.getMin() >= 0);
+        assertEquals(1, statistics.getMean(), TOLERANCE);
+        assertEquals(1, statistics.getVariance(), 2 * TOLERANCE);
+    }
+
+    /**
+     * Reseeding discards the buffered numbers, and the same seed produces the same sequence.
+     */
+    @Test
+    public void testReproducibility() {
+        final XoshiroBlockGenerator random = new XoshiroBlockGenerator(2);
+        final double[] reference = sequence(random);
+        random.setSeed(2L);
+        assertArrayEquals(reference, sequence(random));
+        assertArrayEquals(reference, sequence(new XoshiroBlockGenerator(2)));
+    }
+
+    private static double[] sequence(final XoshiroBlockGenerator random) {
+        final double[] result = new double[SEQUENCE];
+        for (int i = 0; i < SEQUENCE; i++) {
+            result[i] = i % 2 == 0 ? random.nextDouble() : random.nextExponential();
+        }
+        return result;
+    }
+
+}
@@ -45,6 +45,13 @@ public final class ChangeBiomolConcentrationInCell extends AbstractActionOnSingl
         super.getNode().setConcentration(getMolecule(), super.getNode().getConcentration(getMolecule()) + deltaC);
     }
 
+    /**
+     * @return the change in concentration applied at each execution
+     */
+    public double getDeltaConcentration() {
+        return deltaC;
+    }
+
     @Override
     public Context getContext() {
         return Context.LOCAL; 
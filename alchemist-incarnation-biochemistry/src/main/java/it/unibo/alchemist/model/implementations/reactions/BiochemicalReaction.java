@@ -10,12 +10,18 @@ package it.unibo.alchemist.model.implementations.reactions;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import it.unibo.alchemist.model.implementations.actions.AbstractNeighborAction;
+import it.unibo.alchemist.model.implementations.actions.ChangeBiomolConcentrationInCell;
 import it.unibo.alchemist.model.implementations.conditions.AbstractNeighborCondition;
+import it.unibo.alchemist.model.implementations.conditions.BiomolPresentInCell;
+import it.unibo.alchemist.model.implementations.timedistributions.TauLeapingTime;
+import it.unibo.alchemist.model.interfaces.Action;
 import it.unibo.alchemist.model.interfaces.Condition;
 import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Molecule;
 import it.unibo.alchemist.model.interfaces.Node;
 import it.unibo.alchemist.model.interfaces.Time;
 import it.unibo.alchemist.model.interfaces.TimeDistribution;
+import it.unibo.alchemist.model.math.PoissonSampler;
 import org.apache.commons.math3.distribution.EnumeratedDistribution;
 import org.apache.commons.math3.random.RandomGenerator;
 import org.apache.commons.math3.util.Pair;
@@ -30,6 +36,11 @@ import static java.util.stream.Collectors.toMap;
 
 /** 
  * A biochemical Reaction.
+ *
+ * If driven by a {@link TauLeapingTime}, a reaction whose conditions and actions only involve the
+ * concentrations of its own cell executes in leaps: its conditions and actions are used as stoichiometry to
+ * compute the length of each leap and, at the end of the leap, the reaction fires a Poisson-distributed number
+ * of times at once. Reactions with other conditions or actions are always executed exactly.
  */
 public final class BiochemicalReaction extends ChemicalReaction<Double> {
 
@@ -46,6 +57,17 @@ public final class BiochemicalReaction extends ChemicalReaction<Double> {
      * - If only neighbor actions are present the target node must be randomly choose.
      */
     private boolean neighborConditionsPresent;
+    private final TauLeapingTime leaping;
+    /*
+     * Draws the firings of each leap from the simulation random generator
+     */
+    private final PoissonSampler firings;
+    /*
+     * Amount of each molecule required by the conditions, and net change of each molecule per firing.
+     * Changes are null if the reaction can't leap.
+     */
+    private Map<Molecule, Double> requirements = new LinkedHashMap<>();
+    private Map<Molecule, Double> changes;
 
     /**
      * @param node
@@ -66,6 +88,8 @@ public final class BiochemicalReaction extends ChemicalReaction<Double> {
         super(node, timeDistribution);
         this.environment = environment;
         random = randomGenerator;
+        leaping = timeDistribution instanceof TauLeapingTime ? (TauLeapingTime) timeDistribution : null;
+        firings = leaping == null ? null : new PoissonSampler(randomGenerator);
     }
 
     @Override
@@ -93,11 +117,63 @@ public final class BiochemicalReaction extends ChemicalReaction<Double> {
                 ));
         }
         super.updateInternalStatus(currentTime, hasBeenExecuted, environment);
+        if (leaping != null) {
+            leaping.setLeap(computeLeap());
+        }
+    }
+
+    /*
+     * Largest leap such that the expected change of every consumed species is bounded by epsilon times its
+     * concentration (at least one molecule), and so is its standard deviation. Reactions consuming nothing are
+     * bounded by the products instead. Zero if the reaction must be executed exactly.
+     */
+    private double computeLeap() {
+        final double propensity = getRate();
+        if (changes == null || propensity == 0 || maxFirings() < leaping.getCriticalFirings()) {
+            return 0;
+        }
+        final boolean consumes = changes.values().stream().anyMatch(delta -> delta < 0);
+        double leap = Double.POSITIVE_INFINITY;
+        for (final Map.Entry<Molecule, Double> change : changes.entrySet()) {
+            final double delta = change.getValue();
+            if (consumes ? delta < 0 : delta > 0) {
+                final double bound = Math.max(leaping.getEpsilon() * getNode().getConcentration(change.getKey()), 1);
+                final double meanBound = bound / (Math.abs(delta) * propensity);
+                final double varianceBound = bound * bound / (delta * delta * propensity);
+                leap = Math.min(leap, Math.min(meanBound, varianceBound));
+            }
+        }
+        return Double.isInfinite(leap) ? 0 : leap;
+    }
+
+    /*
+     * Number of times the reaction could fire in a row before its conditions stop holding
+     */
+    private double maxFirings() {
+        double max = Double.POSITIVE_INFINITY;
+        for (final Map.Entry<Molecule, Double> change : changes.entrySet()) {
+            if (change.getValue() < 0) {
+                final double consumed = -change.getValue();
+                final double required = Math.max(consumed, requirements.getOrDefault(change.getKey(), 0d));
+                final double available = getNode().getConcentration(change.getKey());
+                max = Math.min(max, Math.floor((available - required) / consumed) + 1);
+            }
+        }
+        return Math.max(max, 0);
     }
 
     @Override 
     public void execute() {
-        if (neighborConditionsPresent) {
+        if (leaping != null && leaping.getLeap() > 0) {
+            /*
+             * The propensity is frozen for the whole leap: the one at its start determines the expected firings
+             */
+            final double mean = leaping.getLeapPropensity() * leaping.getLeap();
+            final double fired = Math.min(firings.sample(mean), maxFirings());
+            changes.forEach((molecule, delta) ->
+                getNode().setConcentration(molecule, getNode().getConcentration(molecule) + fired * delta)
+            );
+        } else if (neighborConditionsPresent) {
             final List<Pair<Node<Double>, Double>> neighborsList = validNeighbors.entrySet().stream()
                     .map(e -> new Pair<>(e.getKey(), e.getValue()))
                     .collect(toList());
@@ -121,6 +197,34 @@ public final class BiochemicalReaction extends ChemicalReaction<Double> {
     public void setConditions(final List<Condition<Double>> conditions) {
         super.setConditions(conditions);
         neighborConditionsPresent = conditions.stream().anyMatch(it -> it instanceof AbstractNeighborCondition);
+        computeStoichiometry();
+    }
+
+    @Override
+    public void setActions(final List<Action<Double>> actions) {
+        super.setActions(actions);
+        computeStoichiometry();
+    }
+
+    private void computeStoichiometry() {
+        requirements = new LinkedHashMap<>();
+        changes = new LinkedHashMap<>();
+        for (final Condition<Double> condition : getConditions()) {
+            if (!(condition instanceof BiomolPresentInCell)) {
+                changes = null;
+                return;
+            }
+            final BiomolPresentInCell presence = (BiomolPresentInCell) condition;
+            requirements.merge(presence.getMolecule(), presence.getQuantity(), Math::max);
+        }
+        for (final Action<Double> action : getActions()) {
+            if (!(action instanceof ChangeBiomolConcentrationInCell)) {
+                changes = null;
+                return;
+            }
+            final ChangeBiomolConcentrationInCell change = (ChangeBiomolConcentrationInCell) action;
+            changes.merge(change.getMolecule(), change.getDeltaConcentration(), Double::sum);
+        }
     }
 
     private static final class Container {
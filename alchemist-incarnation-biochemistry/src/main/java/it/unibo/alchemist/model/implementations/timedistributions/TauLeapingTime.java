@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+
+package it.unibo.alchemist.model.implementations.timedistributions;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import it.unibo.alchemist.model.implementations.reactions.BiochemicalReaction;
+import it.unibo.alchemist.model.implementations.times.DoubleTime;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Time;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * Markovian events which get approximated by tau-leaping (D. T. Gillespie, 2001) when the
+ * {@link BiochemicalReaction} they drive involves enough molecules.
+ *
+ * While leaping, the reaction is not scheduled at the time of its next single firing: it is scheduled after a
+ * leap, an interval chosen by the reaction so that the expected relative change of the species it involves is
+ * bounded by the error-control parameter epsilon (Y. Cao, D. T. Gillespie, L. R. Petzold, 2006), and then fires
+ * a Poisson-distributed number of times. A reaction that could fire less than a critical number of times before
+ * exhausting its reactants does not leap, and this distribution falls back to the exact stochastic simulation,
+ * behaving exactly like an {@link ExponentialTime}.
+ */
+public final class TauLeapingTime extends AbstractDistribution<Double> {
+
+    /**
+     * Reactions that can fire less than this number of times before exhausting a reactant are executed exactly.
+     */
+    public static final int DEFAULT_CRITICAL_FIRINGS = 10;
+    private static final long serialVersionUID = 1L;
+    @SuppressFBWarnings(value = "SE_BAD_FIELD", justification = "All the random engines provided by Apache are Serializable")
+    private final RandomGenerator random;
+    private final double rate;
+    private final double epsilon;
+    private final int criticalFirings;
+    private double oldPropensity = -1;
+    /*
+     * The leap requested by the reaction at its last update, zero if it should be executed exactly
+     */
+    private double requestedLeap;
+    /*
+     * Start of the leap ending at the next occurrence, NaN if the next occurrence is an exact firing
+     */
+    private double leapStart = Double.NaN;
+    /*
+     * Propensity of the reaction at the start of the leap ending at the next occurrence
+     */
+    private double leapPropensity;
+
+    /**
+     * @param markovianRate
+     *            Markovian rate for this distribution
+     * @param epsilon
+     *            the error-control parameter, namely the maximum expected relative change of the concentration of
+     *            each species involved in the reaction during a leap. Must be in (0, 1)
+     * @param random
+     *            {@link RandomGenerator} used internally
+     */
+    public TauLeapingTime(final double markovianRate, final double epsilon, final RandomGenerator random) {
+        this(markovianRate, epsilon, DEFAULT_CRITICAL_FIRINGS, random);
+    }
+
+    /**
+     * @param markovianRate
+     *            Markovian rate for this distribution
+     * @param epsilon
+     *            the error-control parameter, namely the maximum expected relative change of the concentration of
+     *            each species involved in the reaction during a leap. Must be in (0, 1)
+     * @param criticalFirings
+     *            reactions that can fire less than this number of times before exhausting a reactant are executed
+     *            exactly
+     * @param random
+     *            {@link RandomGenerator} used internally
+     */
+    public TauLeapingTime(
+            final double markovianRate,
+            final double epsilon,
+            final int criticalFirings,
+            final RandomGenerator random
+    ) {
+        super(Time.ZERO);
+        if (!(epsilon > 0 && epsilon < 1)) {
+            throw new IllegalArgumentException("The error-control parameter must be in (0, 1), got " + epsilon);
+        }
+        if (criticalFirings < 1) {
+            throw new IllegalArgumentException("The critical number of firings must be positive, got " + criticalFirings);
+        }
+        rate = markovianRate;
+        this.epsilon = epsilon;
+        this.criticalFirings = criticalFirings;
+        this.random = random;
+    }
+
+    /**
+     * @return the error-control parameter
+     */
+    public double getEpsilon() {
+        return epsilon;
+    }
+
+    /**
+     * @return the minimum number of firings the reactants must allow for the reaction to leap
+     */
+    public int getCriticalFirings() {
+        return criticalFirings;
+    }
+
+    /**
+     * Must be called by the reaction before each update of this distribution.
+     *
+     * @param leap
+     *            the length of the next leap, or zero if the reaction should be executed exactly
+     */
+    public void setLeap(final double leap) {
+        if (leap < 0 || Double.isNaN(leap)) {
+            throw new IllegalArgumentException("Invalid leap: " + leap);
+        }
+        requestedLeap = leap;
+    }
+
+    /**
+     * @return the length of the leap ending at the next occurrence, or zero if the next occurrence is a single
+     *         exact firing
+     */
+    public double getLeap() {
+        return Double.isNaN(leapStart) ? 0 : getNextOccurenceAsDouble() - leapStart;
+    }
+
+    /**
+     * @return the propensity of the reaction when the leap ending at the next occurrence started, which determines
+     *         the expected number of firings of the leap, or zero if the next occurrence is a single exact firing
+     */
+    public double getLeapPropensity() {
+        return Double.isNaN(leapStart) ? 0 : leapPropensity;
+    }
+
+    @Override
+    @SuppressFBWarnings("FE_FLOATING_POINT_EQUALITY")
+    protected void updateStatus(
+            final Time currentTime,
+            final boolean executed,
+            final double propensity,
+            final Environment<Double, ?> environment
+    ) {
+        assert !Double.isNaN(propensity);
+        final double now = currentTime.toDouble();
+        final boolean leaping = !Double.isNaN(leapStart);
+        if (propensity == 0) {
+            leapStart = Double.NaN;
+            setNextOccurrence(Time.INFINITY);
+        } else if (executed || oldPropensity <= 0 || leaping && requestedLeap == 0) {
+            /*
+             * New schedule, also when a leaping reaction is no longer allowed to leap
+             */
+            if (requestedLeap > 0) {
+                leapStart = now;
+                leapPropensity = propensity;
+                setNextOccurrence(new DoubleTime(now + requestedLeap));
+            } else {
+                leapStart = Double.NaN;
+                setNextOccurrence(new DoubleTime(now - FastMath.log1p(-random.nextDouble()) / propensity));
+            }
+        } else if (leaping) {
+            /*
+             * The leap can only get shorter, if the reactants changed enough to tighten the error bound
+             */
+            if (now + requestedLeap < getNextOccurenceAsDouble()) {
+                setNextOccurrence(new DoubleTime(now + requestedLeap));
+            }
+        } else if (oldPropensity != propensity) {
+            final double next = (getNextOccurenceAsDouble() - now) * (oldPropensity / propensity) + now;
+            setNextOccurrence(Double.isInfinite(next) ? Time.INFINITY : new DoubleTime(next));
+        }
+        oldPropensity = propensity;
+    }
+
+    @Override
+    public TauLeapingTime clone(final Time currentTime) {
+        return new TauLeapingTime(rate, epsilon, criticalFirings, random);
+    }
+
+    @Override
+    public double getRate() {
+        return rate;
+    }
+
+}
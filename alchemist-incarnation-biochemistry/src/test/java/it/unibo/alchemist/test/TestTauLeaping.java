@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.test;
+
+import it.unibo.alchemist.core.implementations.Engine;
+import it.unibo.alchemist.core.interfaces.Simulation;
+import it.unibo.alchemist.model.BiochemistryIncarnation;
+import it.unibo.alchemist.model.implementations.environments.BioRect2DEnvironment;
+import it.unibo.alchemist.model.implementations.linkingrules.NoLinks;
+import it.unibo.alchemist.model.implementations.molecules.Biomolecule;
+import it.unibo.alchemist.model.implementations.nodes.CellNodeImpl;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.implementations.timedistributions.TauLeapingTime;
+import it.unibo.alchemist.model.implementations.times.DoubleTime;
+import it.unibo.alchemist.model.interfaces.CellNode;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Time;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.util.FastMath;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that reactions driven by a {@link TauLeapingTime} leap when many molecules are available,
+ * and get executed exactly otherwise.
+ */
+public class TestTauLeaping {
+
+    private static final BiochemistryIncarnation<Euclidean2DPosition> INCARNATION = new BiochemistryIncarnation<>();
+    private static final Biomolecule A = new Biomolecule("A");
+    private static final Biomolecule B = new Biomolecule("B");
+    private static final double EPSILON = 0.03;
+    private static final double TOLERANCE = 0.03;
+    private static final double MANY = 100_000;
+    private static final double FEW = 5;
+    /*
+     * With epsilon = 0.03, about 35 leaps are needed to reach time 1
+     */
+    private static final long MAX_LEAPS = 100;
+
+    /**
+     * A decay of many molecules follows the exponential law, with much less steps than molecules.
+     */
+    @Test
+    public void testDecayLeaps() {
+        final Environment<Double, Euclidean2DPosition> environment = new BioRect2DEnvironment();
+        final CellNode<Euclidean2DPosition> node = createDecay(environment, MANY);
+        final Simulation<Double, Euclidean2DPosition> simulation =
+            new Engine<>(environment, Long.MAX_VALUE, new DoubleTime(1));
+        run(simulation);
+        final double expected = MANY * FastMath.exp(-1);
+        assertEquals(expected, node.getConcentration(A), expected * TOLERANCE);
+        assertEquals(MANY, node.getConcentration(A) + node.getConcentration(B));
+        assertTrue(simulation.getStep() < MAX_LEAPS, "Too many steps: " + simulation.getStep());
+    }
+
+    /**
+     * A decay of a few molecules is simulated exactly: each step consumes exactly one molecule.
+     */
+    @Test
+    public void testExactFallback() {
+        final Environment<Double, Euclidean2DPosition> environment = new BioRect2DEnvironment();
+        final CellNode<Euclidean2DPosition> node = createDecay(environment, FEW);
+        final Simulation<Double, Euclidean2DPosition> simulation = new Engine<>(environment, (long) FEW, Time.INFINITY);
+        run(simulation);
+        assertEquals(0, node.getConcentration(A));
+        assertEquals(FEW, node.getConcentration(B));
+    }
+
+    private static CellNode<Euclidean2DPosition> createDecay(
+        final Environment<Double, Euclidean2DPosition> environment,
+        final double molecules
+    ) {
+        environment.setLinkingRule(new NoLinks<>());
+        final RandomGenerator random = new MersenneTwister(0);
+        final CellNode<Euclidean2DPosition> node = new CellNodeImpl<>(environment);
+        node.addReaction(INCARNATION.createReaction(
+            random, environment, node, new TauLeapingTime(1, EPSILON, random), "[A] --> [B]"
+        ));
+        node.setConcentration(A, molecules);
+        node.setConcentration(B, 0d);
+        environment.addNode(node, new Euclidean2DPosition(0, 0));
+        return node;
+    }
+
+    private static void run(final Simulation<Double, Euclidean2DPosition> simulation) {
+        simulation.play();
+        simulation.run();
+        assertTrue(simulation.getError().isEmpty());
+    }
+
+}
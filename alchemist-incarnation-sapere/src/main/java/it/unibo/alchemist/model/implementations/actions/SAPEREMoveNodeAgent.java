@@ -109,4 +109,12 @@ public abstract class SAPEREMoveNodeAgent<P extends Position<? extends P>> exten
             environment.moveNodeToPosition(getNode(), myPosition.plus(direction.getCoordinates()));
         }
     }
+
+    /**
+     * @return true, as the agent can {@link #move(Position)} its node
+     */
+    @Override
+    public boolean mayChangeTopology() {
+        return true;
+    }
 }
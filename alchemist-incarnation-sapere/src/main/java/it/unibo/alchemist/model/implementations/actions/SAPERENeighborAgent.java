@@ -105,6 +105,14 @@ public abstract class SAPERENeighborAgent<P extends Position<P>> extends SAPEREA
         return Context.NEIGHBORHOOD;
     }
 
+    /**
+     * @return true, as the agent can {@link #move(Position)} its node
+     */
+    @Override
+    public boolean mayChangeTopology() {
+        return true;
+    }
+
     /**
      * @return the current position of the node
      */
@@ -11,6 +11,9 @@ import it.unibo.alchemist.model.interfaces.Node;
 import it.unibo.alchemist.model.interfaces.Reaction;
 import org.danilopianini.util.ListSet;
 
+import java.util.Collection;
+import java.util.function.Consumer;
+
 /**
  * This interface allows to separate the usage of a dependency graph from its
  * implementation.
@@ -42,6 +45,20 @@ public interface DependencyGraph<T> {
      */
     void createDependencies(Reaction<T> rh);
 
+    /**
+     * Creates the dependencies of many reactions at once, with the same result of
+     * calling {@link #createDependencies(Reaction)} on each of them, in iteration
+     * order. The default implementation does exactly so: implementations can
+     * override it to build the dependencies in bulk (e.g., in parallel), as far
+     * as the result does not change.
+     *
+     * @param reactions
+     *            the reactions whose dependencies should be calculated
+     */
+    default void createAllDependencies(final Collection<? extends Reaction<T>> reactions) {
+        reactions.forEach(this::createDependencies);
+    }
+
     /**
      * This method removes all the dependencies (both in and out dependencies) for a
      * given reaction handler. This method is meant to be used in order to keep the
@@ -73,6 +90,21 @@ public interface DependencyGraph<T> {
      */
     ListSet<Reaction<T>> outboundDependencies(Reaction<T> reaction);
 
+    /**
+     * Performs the provided action on each reaction that may be influenced by
+     * the provided reaction, in the same order of
+     * {@link #outboundDependencies(Reaction)}. The action must not modify the
+     * dependency graph. The default implementation iterates over the result of
+     * {@link #outboundDependencies(Reaction)}: implementations able to iterate
+     * their internal structure without allocating should override it.
+     *
+     * @param reaction the input reaction
+     * @param action the action to perform on each reaction influenced by the input one
+     */
+    default void forEachOutboundDependency(final Reaction<T> reaction, final Consumer<? super Reaction<T>> action) {
+        outboundDependencies(reaction).forEach(action);
+    }
+
     /**
      *
      * @return the set of all reactions with a {@link it.unibo.alchemist.model.interfaces.Context#GLOBAL} input context
@@ -10,6 +10,9 @@ package it.unibo.alchemist.core.interfaces;
 
 import it.unibo.alchemist.model.interfaces.Reaction;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * The type which describes the concentration of a molecule
  * 
@@ -35,6 +38,22 @@ public interface Scheduler<T> {
      */
     Reaction<T> getNext();
 
+    /**
+     * Allows to access all the reactions scheduled at the very same time of
+     * the next one (which is included in the result). The order of the
+     * returned reactions is unspecified, and the structure is not modified.
+     * The default implementation only returns the result of
+     * {@link #getNext()}: implementations able to efficiently retrieve all the
+     * simultaneous reactions should override this method.
+     *
+     * @return the list of reactions scheduled at the same time of the next
+     *         one, or an empty list if there are no reactions
+     */
+    default List<Reaction<T>> getNextBatch() {
+        final Reaction<T> next = getNext();
+        return next == null ? Collections.emptyList() : Collections.singletonList(next);
+    }
+
     /**
      * Removes a reaction from the structure. If the reaction is not present,
      * nothing is done and an Exception is thrown.
@@ -53,4 +72,19 @@ public interface Scheduler<T> {
      */
     void updateReaction(Reaction<T> r);
 
+    /**
+     * Notifies the structure that all the provided reactions have changed.
+     * The default implementation updates them one by one: implementations
+     * able to rearrange themselves more efficiently when many reactions
+     * change at once should override this method.
+     * 
+     * @param reactions
+     *            the reactions which have changed
+     */
+    default void updateReactions(final List<Reaction<T>> reactions) {
+        for (final Reaction<T> r : reactions) {
+            updateReaction(r);
+        }
+    }
+
 }
@@ -8,6 +8,8 @@
 
 package it.unibo.alchemist.core.interfaces;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
@@ -36,6 +38,24 @@ public interface Simulation<T, P extends Position<? extends P>> extends Runnable
      */
     void addOutputMonitor(OutputMonitor<T, P> op);
 
+    /**
+     * Writes a compressed binary snapshot of the simulation (environment,
+     * time and step) to the provided stream, from which the simulation can
+     * later be resumed. {@link OutputMonitor}s are not part of the snapshot.
+     * The stream is not closed.
+     *
+     * A consistent snapshot can only be taken between two steps: while the
+     * simulation is running, this method must be invoked through
+     * {@link #schedule(CheckedRunnable)}; it can be invoked by any thread
+     * before the simulation gets started or after it terminated.
+     *
+     * @param output the stream to write the snapshot to
+     * @throws IOException if the snapshot cannot be written
+     * @throws IllegalStateException if the simulation is running and the
+     *             method is not invoked between two steps
+     */
+    void checkpoint(OutputStream output) throws IOException;
+
     /**
      * Allows to access the current environment.
      *
@@ -49,4 +49,17 @@ public interface Action<T> extends Serializable {
      */
     ListSet<? extends Dependency> getOutboundDependencies();
 
+    /**
+     * Engines executing reactions concurrently rely on this method to keep those that change the topology of the
+     * environment (adding or removing nodes, moving them, or changing their links) away from the others. By default,
+     * an action may change the topology if it declares a dependency to {@link Dependency#MOVEMENT} or to
+     * {@link Dependency#EVERYTHING}: actions changing the topology without such a declaration must override it.
+     *
+     * @return true if executing this action may change the topology of the environment
+     */
+    default boolean mayChangeTopology() {
+        final ListSet<? extends Dependency> dependencies = getOutboundDependencies();
+        return dependencies.contains(Dependency.MOVEMENT) || dependencies.contains(Dependency.EVERYTHING);
+    }
+
 }
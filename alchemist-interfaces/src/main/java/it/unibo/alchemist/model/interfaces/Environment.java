@@ -8,11 +8,15 @@
 package it.unibo.alchemist.model.interfaces;
 
 import it.unibo.alchemist.core.interfaces.Simulation;
+import org.danilopianini.util.ArrayListSet;
 import org.danilopianini.util.ListSet;
+import org.danilopianini.util.ListSets;
 
 import java.io.Serializable;
+import java.util.Comparator;
 import java.util.Optional;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 /**
  * Interface for an environment. Every environment must implement this
@@ -109,6 +113,28 @@ public interface Environment<T, P extends Position<? extends P>> extends Seriali
      */
     Neighborhood<T> getNeighborhood(Node<T> center);
 
+    /**
+     * Finds the k nodes closest to the provided one. Ties at the k-th distance are broken arbitrarily.
+     * The default implementation sorts all the nodes by distance: implementations indexing their nodes should
+     * override it.
+     *
+     * @param center
+     *            the node to consider as center (excluded from the result)
+     * @param k
+     *            how many nodes to find
+     * @return the (up to) k nodes closest to center, sorted by increasing distance
+     */
+    default ListSet<Node<T>> getKNearest(final Node<T> center, final int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("At least one node must be requested (provided: " + k + ")");
+        }
+        return ListSets.unmodifiableListSet(getNodes().stream()
+            .filter(node -> !node.equals(center))
+            .sorted(Comparator.comparingDouble(node -> getDistanceBetweenNodes(center, node)))
+            .limit(k)
+            .collect(Collectors.toCollection(ArrayListSet::new)));
+    }
+
     /**
      * Allows to access a node known its id. Depending on the implementation, this method may or not be optimized
      * (namely, id could run in constant or linear time with the number of nodes).
@@ -122,6 +122,15 @@ public interface Reaction<T> extends Comparable<Reaction<T>>, Serializable {
      */
     Time getTau();
 
+    /**
+     * @return the global time at which this reaction is scheduled to be
+     *         executed, as a double. Used by the engine and the schedulers
+     *         in place of {@link #getTau()} to avoid comparing {@link Time}s.
+     */
+    default double getTauAsDouble() {
+        return getTau().toDouble();
+    }
+
     /**
      * @return the {@link TimeDistribution} for this {@link Reaction}
      */
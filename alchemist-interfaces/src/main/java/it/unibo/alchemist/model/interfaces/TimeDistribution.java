@@ -36,6 +36,24 @@ public interface TimeDistribution<T> extends Cloneable, Serializable {
      */
     Time getNextOccurence();
 
+    /**
+     * @return the next time at which the event will occur, as a double. Implementations should
+     *         override this method if they can provide the value without going through {@link Time}.
+     */
+    default double getNextOccurenceAsDouble() {
+        return getNextOccurence().toDouble();
+    }
+
+    /**
+     * @return true if the next occurrence only moves, by a fixed period, when the event gets executed, and
+     *         it is not affected by the updates caused by other events (as for a Dirac comb). Simultaneous
+     *         events with periodic distributions can be processed together, as their scheduling does not
+     *         depend on the order of execution.
+     */
+    default boolean isPeriodic() {
+        return false;
+    }
+
     /**
      * @return how many times per time unit the event will happen on average
      */
@@ -61,6 +61,24 @@ public interface Loader extends Serializable {
      */
     <T, P extends Position<P>> InitializedEnvironment<T, P> getWith(Map<String, ?> values);
 
+    /**
+     * Resolves the variables at the specified values, without building the environment, in order to fork a
+     * simulation from a checkpoint of the environment built with the default values. The forked simulation is the
+     * one it claims to be only if the values change nothing in the model but the seed of the simulation random
+     * generator: everything else, including the scenario seed, has already been used to build the checkpoint.
+     *
+     * @param values
+     *            a map specifying name-value bindings for the variables in this
+     *            scenario
+     * @param <T>
+     *            concentration type
+     * @return a {@link ForkedModel} with the seed of the simulation random generator, the data extractors,
+     *         and the scheduler
+     * @throws IllegalArgumentException
+     *             if the values change the model beyond the seed of the simulation random generator
+     */
+    <T> ForkedModel<T> forkWith(Map<String, ?> values);
+
     /**
      * Allows to access the currently defined constants, namely variables defined in the simulation file whose value is
      * constant and does not depend on the value of any free variable (directly or indirectly).
@@ -9,9 +9,11 @@
 
 package it.unibo.alchemist.loader
 
+import it.unibo.alchemist.core.interfaces.Scheduler
 import it.unibo.alchemist.loader.export.Extractor
 import it.unibo.alchemist.model.interfaces.Environment
 import it.unibo.alchemist.model.interfaces.Position
+import org.apache.commons.math3.random.RandomGenerator
 
 /**
  * Pair-like implementation of [InitializedEnvironment].
@@ -19,4 +21,8 @@ import it.unibo.alchemist.model.interfaces.Position
 data class EnvironmentAndExports<T, P : Position<P>>(
     override val environment: Environment<T, P>,
     override val dataExtractors: List<Extractor>,
+    override val scheduler: Scheduler<T>? = null,
+    override val engine: String? = null,
+    override val simulationRandomGenerator: RandomGenerator? = null,
+    override val randomStreams: Boolean = false,
 ) : InitializedEnvironment<T, P>
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2010-2021, Danilo Pianini and contributors
+ * listed in the main project's alchemist/build.gradle.kts file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+
+package it.unibo.alchemist.loader
+
+import it.unibo.alchemist.core.interfaces.Scheduler
+import it.unibo.alchemist.loader.export.Extractor
+
+/**
+ * What is required to fork a simulation from a checkpoint of the model built with the default variable values,
+ * namely the only part of the model the variables are allowed to change (the seed of the simulation random generator),
+ * and fresh instances of the data extractors and the scheduler.
+ */
+data class ForkedModel<T>(
+    /**
+     * The seed of the simulation random generator, or null if the generator is not described by a seed.
+     */
+    val seed: Long?,
+    /**
+     * The data extractors for the forked simulation.
+     */
+    val dataExtractors: List<Extractor>,
+    /**
+     * The scheduler to be used for the forked simulation, or null if the default one should be used.
+     */
+    val scheduler: Scheduler<T>? = null,
+    /**
+     * The name of the engine requested by the model, or null if the default one should be used.
+     */
+    val engine: String? = null,
+)
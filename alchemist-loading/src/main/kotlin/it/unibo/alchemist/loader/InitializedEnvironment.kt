@@ -9,13 +9,15 @@
 
 package it.unibo.alchemist.loader
 
+import it.unibo.alchemist.core.interfaces.Scheduler
 import it.unibo.alchemist.loader.export.Extractor
 import it.unibo.alchemist.model.interfaces.Environment
 import it.unibo.alchemist.model.interfaces.Position
+import org.apache.commons.math3.random.RandomGenerator
 
 /**
  * The result of the loading of an [environment] with all the free variables instanced,
- * also providing access to [dataExtractors].
+ * also providing access to [dataExtractors] and to the [scheduler] and [engine] requested for the simulation, if any.
  */
 interface InitializedEnvironment<T, P : Position<P>> {
 
@@ -28,4 +30,25 @@ interface InitializedEnvironment<T, P : Position<P>> {
      * The data extractors for this environment.
      */
     val dataExtractors: List<Extractor>
+
+    /**
+     * The scheduler to be used for simulating the environment, or null if the default one should be used.
+     */
+    val scheduler: Scheduler<T>?
+
+    /**
+     * The name of the engine to be used for simulating the environment, or null if the default one should be used.
+     */
+    val engine: String?
+
+    /**
+     * The random generator of the simulation (as opposed to the one used to build the scenario),
+     * for the engines drawing random numbers on their own.
+     */
+    val simulationRandomGenerator: RandomGenerator?
+
+    /**
+     * Whether every node and program draws from its own random stream, rather than from the simulation generator.
+     */
+    val randomStreams: Boolean
 }
@@ -11,6 +11,7 @@ package it.unibo.alchemist.loader
 
 import arrow.core.Either
 import it.unibo.alchemist.SupportedIncarnations
+import it.unibo.alchemist.core.interfaces.Scheduler
 import it.unibo.alchemist.loader.DocumentRoot.JavaType
 import it.unibo.alchemist.loader.deployments.Deployment
 import it.unibo.alchemist.loader.export.Extractor
@@ -39,6 +40,7 @@ import it.unibo.alchemist.model.interfaces.Node
 import it.unibo.alchemist.model.interfaces.Position
 import it.unibo.alchemist.model.interfaces.Reaction
 import it.unibo.alchemist.model.interfaces.TimeDistribution
+import it.unibo.alchemist.model.math.RandomStreams
 import org.apache.commons.math3.random.MersenneTwister
 import org.apache.commons.math3.random.RandomGenerator
 import org.danilopianini.jirf.Factory
@@ -456,6 +458,21 @@ object SimulationModel {
             ?: cantBuildWith<Reaction<T>>(root)
     }
 
+    private fun <T> visitScheduler(context: Context, root: Any?): Scheduler<T>? =
+        when (root) {
+            null -> null
+            is String -> visitScheduler(context, mapOf(JavaType.type to root))
+            else ->
+                visitBuilding<Scheduler<T>>(context, root)?.getOrThrow()
+                    ?: cantBuildWith<Scheduler<T>>(root, JavaType)
+        }
+
+    private fun visitEngine(root: Any?): String? =
+        root?.let {
+            require(it is String) { "Invalid ${DocumentRoot.engine} $it: expected the name of an engine" }
+            it
+        }
+
     private fun visitSeeds(context: Context, root: Any?): Seeds =
         when (root) {
             null -> makeDefaultRandomGenerator(0) to makeDefaultRandomGenerator(0)
@@ -493,6 +510,17 @@ object SimulationModel {
             )
         }
 
+    private fun visitStreams(root: Any?, simulationRNG: RandomGenerator): RandomStreams? =
+        (root as? Map<*, *>)?.get(DocumentRoot.Seeds.streams)
+            ?.let {
+                require(it is Boolean) {
+                    "Invalid ${DocumentRoot.Seeds.streams} value $it: expected true or false"
+                }
+                it
+            }
+            ?.takeIf { it }
+            ?.let { RandomStreams(simulationRNG.nextLong()) }
+
     private fun <P : Position<P>, T> visitTimeDistribution(
         incarnation: Incarnation<T, P>,
         simulationRNG: RandomGenerator,
@@ -676,29 +704,13 @@ object SimulationModel {
         private val context: Context = originalContext.child()
 
         override fun <T : Any?, P : Position<P>> getWith(values: Map<String, *>): EnvironmentAndExports<T, P> {
-            val unknownVariableNames = values.keys - variables.keys
-            require(unknownVariableNames.isEmpty()) {
-                "Unknown variables provided: $unknownVariableNames." +
-                    " Valid names: ${variables.keys}. Provided: ${values.keys}"
-            }
-            var root = originalRoot
-            // VARIABLE REIFICATION
-            val variableValues = this.variables.mapValues { (name, previous) ->
-                if (values.containsKey(name)) values[name] else previous.default
-            }
-            val knownValues: Map<String, Any?> = computeAllKnownValues(constants + variableValues)
-            logger.debug("Known values: {}", knownValues)
-            knownValues.forEach { (name, value) -> context.fixVariableValue(name, value) }
-            root = inject(context, root)
-            logger.debug("Complete simulation model: {}", root)
+            val root = resolve(values)
             // SEEDS
             val (scenarioRNG, simulationRNG) = visitSeeds(context, root[DocumentRoot.seeds])
             setCurrentRandomGenerator(simulationRNG)
+            val streams = visitStreams(root[DocumentRoot.seeds], simulationRNG)
             // INCARNATION
-            val incarnation = visitIncarnation<P, T>(root[DocumentRoot.incarnation])
-            registerSingleton<Incarnation<T, P>>(incarnation)
-            registerImplicit<String, Molecule>(incarnation::createMolecule)
-            registerImplicit<String, Any?>(incarnation::createConcentration)
+            val incarnation = registerIncarnation<T, P>(root)
             // ENVIRONMENT
             val environment: Environment<T, P> = visitEnvironment(incarnation, context, root[DocumentRoot.environment])
             logger.info("Created environment: {}", environment)
@@ -729,7 +741,7 @@ object SimulationModel {
                         setCurrentRandomGenerator(scenarioRNG)
                         visitBuilding<Deployment<P>>(context, element)?.onSuccess {
                             setCurrentRandomGenerator(simulationRNG)
-                            populateDisplacement(simulationRNG, incarnation, environment, it, element)
+                            populateDisplacement(simulationRNG, streams, incarnation, environment, it, element)
                         }
                     }
                 }
@@ -739,14 +751,72 @@ object SimulationModel {
                 logger.debug("Deployment descriptors: {}", deploymentDescriptors)
             }
             // EXPORTS
-            val exports = visitRecursively(context, root.getOrEmpty(DocumentRoot.export)) {
-                visitExports(incarnation, context, it)
+            val exports = visitAllExports(incarnation, root)
+            // SCHEDULER
+            val scheduler = visitScheduler<T>(context, root[DocumentRoot.scheduler])
+            // ENGINE
+            val engine = visitEngine(root[DocumentRoot.engine])
+            return EnvironmentAndExports(environment, exports, scheduler, engine, simulationRNG, streams != null)
+        }
+
+        override fun <T : Any?> forkWith(values: Map<String, *>): ForkedModel<T> {
+            val prefix = resolve(emptyMap<String, Any>()).forkable()
+            val root = resolve(values)
+            require(root.forkable() == prefix) {
+                "The values $values change the simulation model beyond the seed of the simulation random generator " +
+                    "(or they yield objects that can not be compared with those of the default model), " +
+                    "hence the simulation can not be forked from the model built with the default values"
             }
-            return EnvironmentAndExports(environment, exports)
+            val seed = (root[DocumentRoot.seeds] as? Map<*, *>)?.get(DocumentRoot.Seeds.simulation) ?: 0
+            val incarnation = registerIncarnation<T, Nothing>(root)
+            return ForkedModel(
+                visitBuilding<Long>(context, seed)?.getOrNull(),
+                visitAllExports(incarnation, root),
+                visitScheduler<T>(context, root[DocumentRoot.scheduler]),
+                visitEngine(root[DocumentRoot.engine]),
+            )
         }
 
+        private fun resolve(values: Map<String, *>): Map<String, Any> {
+            val unknownVariableNames = values.keys - variables.keys
+            require(unknownVariableNames.isEmpty()) {
+                "Unknown variables provided: $unknownVariableNames." +
+                    " Valid names: ${variables.keys}. Provided: ${values.keys}"
+            }
+            // VARIABLE REIFICATION
+            val variableValues = this.variables.mapValues { (name, previous) ->
+                if (values.containsKey(name)) values[name] else previous.default
+            }
+            val knownValues: Map<String, Any?> = computeAllKnownValues(constants + variableValues)
+            logger.debug("Known values: {}", knownValues)
+            knownValues.forEach { (name, value) -> context.fixVariableValue(name, value) }
+            return inject(context, originalRoot).also { logger.debug("Complete simulation model: {}", it) }
+        }
+
+        private fun <T, P : Position<P>> registerIncarnation(root: Map<String, *>): Incarnation<T, P> =
+            visitIncarnation<P, T>(root[DocumentRoot.incarnation]).also { incarnation ->
+                registerSingleton<Incarnation<T, P>>(incarnation)
+                registerImplicit<String, Molecule>(incarnation::createMolecule)
+                registerImplicit<String, Any?>(incarnation::createConcentration)
+            }
+
+        private fun visitAllExports(incarnation: Incarnation<*, *>, root: Map<String, *>): List<Extractor> =
+            visitRecursively(context, root.getOrEmpty(DocumentRoot.export)) {
+                visitExports(incarnation, context, it)
+            }
+
+        /*
+         * The part of the model that must not change among forks: everything but the variables themselves
+         * and the seed of the simulation random generator.
+         */
+        private fun Map<String, *>.forkable(): Map<String, *> = minus(DocumentRoot.variables)
+            .mapValues { (key, value) ->
+                if (key == DocumentRoot.seeds && value is Map<*, *>) value - DocumentRoot.Seeds.simulation else value
+            }
+
         private fun <T, P : Position<P>> populateDisplacement(
             simulationRNG: RandomGenerator,
+            streams: RandomStreams?,
             incarnation: Incarnation<T, P>,
             environment: Environment<T, P>,
             deployment: Deployment<P>,
@@ -773,7 +843,16 @@ object SimulationModel {
             val contents = visitContents(incarnation, context, descriptor)
             val programDescriptor = descriptor.getOrEmpty(DocumentRoot.Deployment.programs)
             deployment.stream().forEach { position ->
-                val node = visitNode(simulationRNG, incarnation, environment, context, nodeDescriptor)
+                /*
+                 * With random streams, each node and each of its programs get their own generator,
+                 * identified by the index of the node and by the position of the program
+                 */
+                val nodeIndex = environment.nodeCount.toLong()
+                var programIndex = 0L
+                fun generatorFor(index: Long) = streams?.get(nodeIndex, index)
+                    ?.also { setCurrentRandomGenerator(it) }
+                    ?: simulationRNG
+                val node = visitNode(generatorFor(programIndex), incarnation, environment, context, nodeDescriptor)
                 registerSingleton<Node<T>>(node)
                 // NODE CONTENTS
                 contents.forEach { (shapes, molecule, concentrationMaker) ->
@@ -787,7 +866,7 @@ object SimulationModel {
                 val programs = visitRecursively<Reaction<T>>(context, programDescriptor, ProgramSyntax) { program ->
                     requireNotNull(program) { "null is not a valid program in $descriptor. ${ProgramSyntax.guide}" }
                     (program as? Map<*, *>)?.let {
-                        visitProgram(simulationRNG, incarnation, environment, node, context, it)
+                        visitProgram(generatorFor(++programIndex), incarnation, environment, node, context, it)
                             ?.onSuccess(node::addReaction)
                     }
                 }
@@ -795,6 +874,7 @@ object SimulationModel {
                 environment.addNode(node, position)
                 logger.debug("Added node {} at {}", node.id, position)
                 factory.deregisterSingleton(node)
+                setCurrentRandomGenerator(simulationRNG)
             }
         }
 
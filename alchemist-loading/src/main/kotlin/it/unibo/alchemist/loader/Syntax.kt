@@ -194,8 +194,9 @@ internal object DocumentRoot : SyntaxElement {
     object Seeds : SyntaxElement {
         val scenario by OwnName()
         val simulation by OwnName()
+        val streams by OwnName()
         override val validDescriptors = setOf(
-            validDescriptor { optional(simulation, scenario) }
+            validDescriptor { optional(simulation, scenario, streams) }
         )
     }
     object Variable : SyntaxElement {
@@ -208,12 +209,14 @@ internal object DocumentRoot : SyntaxElement {
         )
     }
     val deployments by OwnName()
+    val engine by OwnName()
     val environment by OwnName()
     val export by OwnName()
     val incarnation by OwnName()
     val layers by OwnName()
     const val linkingRule = "network-model"
     const val remoteDependencies = "remote-dependencies"
+    val scheduler by OwnName()
     val seeds by OwnName()
     val variables by OwnName()
     override val validDescriptors = setOf(
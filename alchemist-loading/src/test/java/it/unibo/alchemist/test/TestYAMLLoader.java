@@ -9,8 +9,11 @@ package it.unibo.alchemist.test;
 
 import it.unibo.alchemist.ClassPathScanner;
 import it.unibo.alchemist.SupportedIncarnations;
+import it.unibo.alchemist.core.implementations.CalendarQueue;
 import it.unibo.alchemist.core.implementations.Engine;
+import it.unibo.alchemist.core.interfaces.Scheduler;
 import it.unibo.alchemist.core.interfaces.Simulation;
+import it.unibo.alchemist.loader.InitializedEnvironment;
 import it.unibo.alchemist.loader.LoadAlchemist;
 import it.unibo.alchemist.loader.Loader;
 import it.unibo.alchemist.loader.providers.YamlProvider;
@@ -21,6 +24,7 @@ import it.unibo.alchemist.model.interfaces.Incarnation;
 import it.unibo.alchemist.model.interfaces.Layer;
 import it.unibo.alchemist.model.interfaces.Molecule;
 import it.unibo.alchemist.model.interfaces.Position;
+import it.unibo.alchemist.model.interfaces.Time;
 import it.unibo.alchemist.test.util.TestNode;
 import org.junit.jupiter.api.Test;
 import org.kaikikm.threadresloader.ResourceLoader;
@@ -48,6 +52,28 @@ public class TestYAMLLoader {
      */
     private static final String ISAC_REGEX = ".*/\\d{2}-.*\\.yml";
 
+    /**
+     * Tests loading a custom scheduler, and checks that it produces the same evolution of the default one.
+     *
+     * @param <P> Used for internal consistency
+     */
+    @Test
+    public <P extends Position<P>> void testCustomScheduler() {
+        final Loader loader = LoadAlchemist.from(ResourceLoader.getResource("synthetic/customscheduler.yml"));
+        final InitializedEnvironment<Object, P> initialized = loader.getDefault();
+        final Scheduler<Object> scheduler = initialized.getScheduler();
+        assertTrue(scheduler instanceof CalendarQueue);
+        final Simulation<Object, P> custom = new Engine<>(initialized.getEnvironment(), 1000, Time.INFINITY, scheduler);
+        final Simulation<Object, P> reference = new Engine<>(loader.<Object, P>getDefault().getEnvironment(), 1000);
+        for (final Simulation<Object, P> sim : List.of(custom, reference)) {
+            sim.play();
+            sim.run();
+            sim.getError().ifPresent(e -> fail(e.getMessage()));
+        }
+        assertEquals(reference.getStep(), custom.getStep());
+        assertEquals(reference.getTime(), custom.getTime());
+    }
+
     /**
      * Tests building a custom implementation of time distribution.
      */
@@ -59,6 +85,24 @@ public class TestYAMLLoader {
         }));
     }
 
+    /**
+     * Tests that a simulation whose nodes and programs get their own random streams is reproducible.
+     *
+     * @param <P> Used for internal consistency
+     */
+    @Test
+    public <P extends Position<P>> void testRandomStreams() {
+        final Loader loader = LoadAlchemist.from(ResourceLoader.getResource("synthetic/randomstreams.yml"));
+        final Simulation<Object, P> first = new Engine<>(loader.<Object, P>getDefault().getEnvironment(), 1000);
+        final Simulation<Object, P> second = new Engine<>(loader.<Object, P>getDefault().getEnvironment(), 1000);
+        for (final Simulation<Object, P> sim : List.of(first, second)) {
+            sim.play();
+            sim.run();
+            sim.getError().ifPresent(e -> fail(e.getMessage()));
+        }
+        assertEquals(first.getTime(), second.getTime());
+    }
+
     /**
      * Test loading a custom node class.
      */
@@ -31,6 +31,7 @@ object SingleRunSwingUI : SimulationLauncher() {
             batch -> incompatibleWith("batch mode")
             variables.isNotEmpty() -> incompatibleWith("variable exploration mode")
             distributed != null -> incompatibleWith("distributed execution")
+            forkAt != null -> incompatibleWith("fork mode")
             GraphicsEnvironment.isHeadless() -> Invalid(
                 "The JVM graphic environment is marked as headless. Cannot show a graphical interface. "
             )
@@ -29,15 +29,20 @@ object Alchemist {
     private const val HEADLESS = "hl"
     private const val VARIABLES = "var"
     private const val BATCH = 'b'
+    private const val ENGINE = "eng"
     private const val EXPORT = 'e'
+    private const val FORK = "f"
     private const val FXUI = "fxui"
     private const val DISTRIBUTED = 'd'
     private const val GRAPHICS = 'g'
     private const val HELP = 'h'
-    private const val INTERVAL = 'i'
+    private const val INTERVAL = "i"
     private const val SERVER = 's'
-    private const val PARALLELISM = 'p'
-    private const val TIME = 't'
+    private const val SLICE = "slice"
+    private const val PARALLELISM = "p"
+    private const val PROFILE = "prof"
+    private const val SCHEDULER = "sched"
+    private const val TIME = "t"
     private const val YAML = 'y'
     private val logger = LoggerFactory.getLogger(Alchemist::class.java)
     private val launchers: List<Launcher> = ClassPathScanner
@@ -72,7 +77,7 @@ object Alchemist {
      */
     private var isNormalExecution = true
 
-    private inline fun <reified T : Number> CommandLine.hasNumeric(name: Char, converter: String.() -> T?): T? =
+    private inline fun <reified T : Number> CommandLine.hasNumeric(name: String, converter: String.() -> T?): T? =
         getOptionValue(name)?.let {
             val value = converter(it)
             when {
@@ -212,19 +217,24 @@ object Alchemist {
     private val CommandLine.toAlchemist: AlchemistExecutionOptions
         get() = AlchemistExecutionOptions(
             server = getOptionValue(SERVER),
+            slice = hasNumeric(SLICE, kotlin.String::toLongOrNull),
             help = hasOption(HELP),
             batch = hasOption(BATCH),
             distributed = getOptionValue(DISTRIBUTED),
             endTime = hasNumeric(TIME, kotlin.String::toDoubleOrNull)
                 ?: AlchemistExecutionOptions.defaultEndTime,
+            engine = getOptionValue(ENGINE),
             export = getOptionValue(EXPORT),
             graphics = getOptionValue(GRAPHICS),
+            forkAt = hasNumeric(FORK, kotlin.String::toDoubleOrNull),
             fxui = hasOption(FXUI),
             headless = hasOption(HEADLESS),
             interval = hasNumeric(INTERVAL, kotlin.String::toDoubleOrNull)
                 ?: AlchemistExecutionOptions.defaultInterval,
             parallelism = hasNumeric(PARALLELISM, kotlin.String::toIntOrNull)
                 ?: AlchemistExecutionOptions.defaultParallelism,
+            profile = hasOption(PROFILE),
+            scheduler = getOptionValue(SCHEDULER),
             variables = getOptionValues(VARIABLES)?.toList()
                 ?: emptyList(),
             configuration = getOptionValue(YAML)
@@ -25,6 +25,13 @@ package it.unibo.alchemist
  * @property server if launched as Alchemist grid node server, the path to the configuration file. Null otherwise.
  * @property parallelism parallel threads used for running locally. Defaults to [defaultParallelism]
  * @property endTime final simulation time. Defaults to [defaultEndTime]
+ * @property scheduler name of the scheduler implementation to use, or null to use the one in the simulation file
+ * @property engine name of the engine implementation to use, or null to use the one in the simulation file
+ * @property profile whether execution statistics should be collected and printed at the end of each simulation
+ * @property forkAt the time up to which a common prefix is simulated once, and then forked for each simulation,
+ * or null if every simulation starts from scratch (default)
+ * @property slice if not null, simulations are run in slices of this number of steps on a shared FIFO pool,
+ * rather than each on its own thread from start to end (default)
  */
 data class AlchemistExecutionOptions(
     val configuration: String? = null,
@@ -39,7 +46,12 @@ data class AlchemistExecutionOptions(
     val interval: Double = defaultInterval,
     val server: String? = null,
     val parallelism: Int = defaultParallelism,
-    val endTime: Double = defaultEndTime
+    val endTime: Double = defaultEndTime,
+    val scheduler: String? = null,
+    val engine: String? = null,
+    val profile: Boolean = false,
+    val forkAt: Double? = null,
+    val slice: Long? = null
 ) {
     /**
      * returns true if all options are set to their default value.
@@ -10,11 +10,17 @@
 package it.unibo.alchemist.launch
 
 import it.unibo.alchemist.AlchemistExecutionOptions
+import it.unibo.alchemist.core.implementations.Engine
 import it.unibo.alchemist.core.interfaces.Simulation
 import it.unibo.alchemist.loader.Loader
+import it.unibo.alchemist.model.interfaces.Position
 import java.awt.GraphicsEnvironment
+import java.util.Queue
 import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
 import java.util.concurrent.Executors
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
 import java.util.concurrent.TimeUnit
 
 /**
@@ -55,32 +61,118 @@ object HeadlessSimulationLauncher : SimulationLauncher() {
     }
 
     override fun launch(loader: Loader, parameters: AlchemistExecutionOptions) {
+        val errorQueue = ConcurrentLinkedQueue<Throwable>()
+        val configurations = loader.variables.cartesianProductOf(parameters.variables)
+        val prefix = parameters.forkAt?.let {
+            require(it < parameters.endTime) { "The fork time $it must precede the end time ${parameters.endTime}" }
+            // Fail before simulating the prefix if some configuration can not be forked from it
+            checkForkable(loader, parameters, configurations)
+            simulatePrefix<Any, Nothing>(loader, parameters, it)
+        }
+        when (val slice = parameters.slice) {
+            null -> runToCompletion(loader, parameters, configurations, prefix, errorQueue)
+            else -> {
+                require(slice > 0) { "The number of steps per slice must be positive, but was $slice" }
+                val simulations = configurations.map { variables ->
+                    { prepareSimulation<Any, Nothing>(loader, parameters, variables, prefix) }
+                }
+                runInSlices(simulations, parameters.parallelism, slice, errorQueue)
+            }
+        }
+        if (errorQueue.isNotEmpty()) {
+            throw errorQueue.reduce { previous, other ->
+                previous.addSuppressed(other)
+                previous
+            }
+        }
+    }
+
+    private fun runToCompletion(
+        loader: Loader,
+        parameters: AlchemistExecutionOptions,
+        configurations: List<Map<String, *>>,
+        prefix: ByteArray?,
+        errorQueue: Queue<Throwable>
+    ) {
         var count = 0
         val executor = Executors.newFixedThreadPool(parameters.parallelism) {
             Thread(it).apply { name = "alchemist-executor-${count++}" }
         }
-        val errorQueue = ConcurrentLinkedQueue<Throwable>()
-        loader.variables
-            .cartesianProductOf(parameters.variables)
-            .forEach { variables ->
-                executor.submit {
-                    val simulation: Simulation<Any, Nothing> = prepareSimulation(loader, parameters, variables)
-                    simulation.play()
-                    simulation.run()
-                    simulation.error.ifPresent {
-                        errorQueue.add(it)
-                        executor.shutdownNow()
-                    }
+        configurations.forEach { variables ->
+            executor.submit {
+                val simulation: Simulation<Any, Nothing> = prepareSimulation(loader, parameters, variables, prefix)
+                simulation.play()
+                simulation.run()
+                simulation.error.ifPresent {
+                    errorQueue.add(it)
+                    executor.shutdownNow()
                 }
             }
+        }
         executor.shutdown()
         executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS)
-        if (errorQueue.isNotEmpty()) {
-            throw errorQueue.reduce { previous, other ->
-                previous.addSuppressed(other)
-                previous
+    }
+
+    /**
+     * Runs the [simulations] on [parallelism] threads, [slice] steps at a time: after each slice, a simulation
+     * gets resubmitted to the tail of a FIFO queue shared by all the workers, yielding its worker to the other ones.
+     * Short simulations thus complete early, instead of waiting for a thread to be released by the long ones,
+     * and all the workers stay busy until the very last slice.
+     * Every simulation is prepared lazily by the worker running its first slice,
+     * so no environment gets built before the previously queued simulations started running.
+     * Errors are collected in the [errorQueue], and terminate all the simulations at the end of their current slice.
+     */
+    internal fun <T, P : Position<P>> runInSlices(
+        simulations: List<() -> Engine<T, P>>,
+        parallelism: Int,
+        slice: Long,
+        errorQueue: Queue<Throwable>
+    ) {
+        var count = 0
+        /*
+         * Unlike the work-stealing pools, whose workers push the tasks they submit on their own deque,
+         * a thread pool on a shared linked queue keeps every resubmission behind the tasks already waiting.
+         */
+        val executor = ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS, LinkedBlockingQueue()) {
+            Thread(it).apply { name = "alchemist-slicer-${count++}" }
+        }
+        val pending = CountDownLatch(simulations.size)
+        fun runSlice(simulation: Engine<T, P>) {
+            if (errorQueue.isNotEmpty()) {
+                /*
+                 * Another simulation failed: this one gets terminated, and runs until it processes the termination,
+                 * so that its output monitors (e.g., the exporters) get notified that it finished.
+                 */
+                simulation.terminate()
+                do {
+                    val running = simulation.runSlice(slice)
+                } while (running)
+                pending.countDown()
+            } else if (simulation.runSlice(slice)) {
+                executor.execute { runSlice(simulation) }
+            } else {
+                simulation.error.ifPresent { errorQueue.add(it) }
+                pending.countDown()
+            }
+        }
+        simulations.forEach { prepare ->
+            executor.execute {
+                when {
+                    errorQueue.isNotEmpty() -> pending.countDown()
+                    else -> runCatching { prepare() }
+                        .onSuccess {
+                            it.play()
+                            runSlice(it)
+                        }
+                        .onFailure {
+                            errorQueue.add(it)
+                            pending.countDown()
+                        }
+                }
             }
         }
+        pending.await()
+        executor.shutdown()
     }
 
     override val name = "Alchemist headless runner"
@@ -11,18 +11,34 @@ package it.unibo.alchemist.launch
 
 import com.google.common.collect.Lists
 import it.unibo.alchemist.AlchemistExecutionOptions
+import it.unibo.alchemist.ClassPathScanner
+import it.unibo.alchemist.boundary.interfaces.OutputMonitor
+import it.unibo.alchemist.core.implementations.ArrayIndexedPriorityQueue
+import it.unibo.alchemist.core.implementations.CompositionRejectionEngine
 import it.unibo.alchemist.core.implementations.Engine
+import it.unibo.alchemist.core.implementations.EngineProfiler
+import it.unibo.alchemist.core.implementations.ParallelEngine
+import it.unibo.alchemist.core.interfaces.Scheduler
 import it.unibo.alchemist.core.interfaces.Simulation
+import it.unibo.alchemist.loader.ForkedModel
 import it.unibo.alchemist.loader.InitializedEnvironment
 import it.unibo.alchemist.loader.LoadAlchemist
 import it.unibo.alchemist.loader.Loader
 import it.unibo.alchemist.loader.export.Exporter
 import it.unibo.alchemist.loader.variables.Variable
 import it.unibo.alchemist.model.implementations.times.DoubleTime
+import it.unibo.alchemist.model.interfaces.Environment
 import it.unibo.alchemist.model.interfaces.Position
+import it.unibo.alchemist.model.interfaces.Reaction
+import it.unibo.alchemist.model.interfaces.Time
 import org.kaikikm.threadresloader.ResourceLoader
+import org.slf4j.LoggerFactory
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
 import java.io.File
 import java.io.Serializable
+import java.lang.reflect.Modifier
+import java.util.concurrent.ForkJoinPool
 
 /**
  * A launcher stub for simulation execution.
@@ -63,13 +79,54 @@ abstract class SimulationLauncher : AbstractLauncher() {
             ?: listOf(emptyMap())
     }
 
+    /**
+     * Simulates the environment built with the default values of the variables up to the [time] (usually,
+     * the [AlchemistExecutionOptions.forkAt] time), and returns a checkpoint of the reached state,
+     * to be passed to [prepareSimulation] in order to fork simulations from it.
+     */
+    protected fun <T, P : Position<P>> simulatePrefix(
+        loader: Loader,
+        parameters: AlchemistExecutionOptions,
+        time: Double
+    ): ByteArray {
+        val initialized: InitializedEnvironment<T, P> = loader.getWith(emptyMap<String, Any>())
+        val scheduler = schedulerFor(initialized.scheduler, parameters)
+        val simulation = Engine(initialized.environment, Long.MAX_VALUE, DoubleTime(time), scheduler)
+        simulation.play()
+        simulation.run()
+        simulation.error.ifPresent { throw IllegalStateException("The simulation of the common prefix failed", it) }
+        return ByteArrayOutputStream().also { simulation.checkpoint(it) }.toByteArray()
+    }
+
+    /**
+     * Prepares a simulation of the environment built with the provided [variables], or, if a [prefix] checkpoint
+     * is provided, forks it from the checkpoint without building any environment.
+     * Forking requires the [variables] to only change the seed of the simulation random generator
+     * (see [Loader.forkWith]), and the default engine: the fork gets reseeded with such seed or,
+     * if the generator is not described by a seed, with a 64-bit mix of the [variables].
+     */
     protected fun <T, P : Position<P>> prepareSimulation(
         loader: Loader,
         parameters: AlchemistExecutionOptions,
-        variables: Map<String, *>
-    ): Simulation<T, P> {
-        val initialized: InitializedEnvironment<T, P> = loader.getWith(variables)
-        val simulation = Engine(initialized.environment, DoubleTime(parameters.endTime))
+        variables: Map<String, *>,
+        prefix: ByteArray? = null
+    ): Engine<T, P> {
+        val (simulation, dataExtractors) = when (prefix) {
+            null -> {
+                val initialized: InitializedEnvironment<T, P> = loader.getWith(variables)
+                engineFor(initialized, parameters) to initialized.dataExtractors
+            }
+            else -> {
+                val forked: ForkedModel<T> = forkedModel(loader, parameters, variables)
+                Engine.fork<T, P>(
+                    ByteArrayInputStream(prefix),
+                    Long.MAX_VALUE,
+                    DoubleTime(parameters.endTime),
+                    schedulerFor(forked.scheduler, parameters),
+                    forked.seed ?: seedOf(variables)
+                ) to forked.dataExtractors
+            }
+        }
         if (parameters.export != null) {
             val variablesDescriptor = variables
                 .map { (name, value) -> "$name-$value" }
@@ -79,11 +136,111 @@ abstract class SimulationLauncher : AbstractLauncher() {
                 .mapValues { (variableName, variable) -> variables[variableName] ?: variable.default }
                 .map { (variableName, variableValue) -> "$variableName = $variableValue" }
                 .joinToString()
-            simulation.addOutputMonitor(Exporter(filename, parameters.interval, header, initialized.dataExtractors))
+            simulation.addOutputMonitor(Exporter(filename, parameters.interval, header, dataExtractors))
+        }
+        if (parameters.profile) {
+            simulation.addOutputMonitor(ProfileSummaryPrinter(simulation.enableProfiling(), variables.toString()))
         }
         return simulation
     }
 
+    /**
+     * Checks that the simulations of all the [configurations] can be forked from a common prefix
+     * (see [prepareSimulation]), failing with an [IllegalArgumentException] otherwise.
+     */
+    protected fun checkForkable(
+        loader: Loader,
+        parameters: AlchemistExecutionOptions,
+        configurations: List<Map<String, *>>
+    ) = configurations.forEach { forkedModel<Any>(loader, parameters, it) }
+
+    private fun <T> forkedModel(
+        loader: Loader,
+        parameters: AlchemistExecutionOptions,
+        variables: Map<String, *>
+    ): ForkedModel<T> = loader.forkWith<T>(variables).also {
+        val engine = parameters.engine ?: it.engine
+        require(engineNamed(engine) == Engine::class.java) {
+            "Forked simulations are executed by the default engine, but $engine was requested"
+        }
+    }
+
+    /*
+     * Builds the engine requested on the command line or in the simulation file, defaulting to Engine.
+     */
+    private fun <T, P : Position<P>> engineFor(
+        initialized: InitializedEnvironment<T, P>,
+        parameters: AlchemistExecutionOptions
+    ): Engine<T, P> {
+        val environment = initialized.environment
+        val endTime = DoubleTime(parameters.endTime)
+        val scheduler = schedulerFor(initialized.scheduler, parameters)
+        return when (val engine = engineNamed(parameters.engine ?: initialized.engine)) {
+            Engine::class.java -> Engine(environment, Long.MAX_VALUE, endTime, scheduler)
+            ParallelEngine::class.java ->
+                ParallelEngine(environment, Long.MAX_VALUE, endTime, scheduler, ForkJoinPool.commonPool()).also {
+                    if (initialized.randomStreams) {
+                        it.declareIndependentRandomGenerators()
+                    } else {
+                        logger.warn(
+                            "{} executes every reaction sequentially unless the simulation enables random streams",
+                            engine.simpleName
+                        )
+                    }
+                }
+            CompositionRejectionEngine::class.java -> CompositionRejectionEngine(
+                environment,
+                Long.MAX_VALUE,
+                endTime,
+                requireNotNull(initialized.simulationRandomGenerator) {
+                    "${engine.simpleName} requires the random generator of the simulation"
+                }
+            )
+            else -> throw IllegalArgumentException("Unable to build a ${engine.name} from the simulation parameters")
+        }
+    }
+
+    private fun engineNamed(name: String?): Class<*> = when (name) {
+        null -> Engine::class.java
+        else -> {
+            val engines = ClassPathScanner.subTypesOf<Engine<*, *>>()
+                .filterNot { Modifier.isAbstract(it.modifiers) } + Engine::class.java
+            val candidates = engines.filter { name == it.name || name.equals(it.simpleName, ignoreCase = true) }
+            require(candidates.size == 1) {
+                "Unable to select a single engine named $name among ${engines.map { it.simpleName }}"
+            }
+            candidates.first()
+        }
+    }
+
+    private fun <T> schedulerFor(scheduler: Scheduler<T>?, parameters: AlchemistExecutionOptions) =
+        parameters.scheduler?.let { schedulerNamed<T>(it) }
+            ?: scheduler
+            ?: ArrayIndexedPriorityQueue<T>()
+
+    /*
+     * Mixes the textual representation of the variables, sorted by name, in a 64-bit seed,
+     * using the SplitMix64 finalizer at every character.
+     */
+    private fun seedOf(variables: Map<String, *>): Long =
+        variables.toSortedMap().toString().fold(0L) { seed, character ->
+            var mixed = seed + character.code + GOLDEN_GAMMA
+            mixed = (mixed xor (mixed ushr FIRST_SHIFT)) * FIRST_MULTIPLIER
+            mixed = (mixed xor (mixed ushr SECOND_SHIFT)) * SECOND_MULTIPLIER
+            mixed xor (mixed ushr THIRD_SHIFT)
+        }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun <T> schedulerNamed(name: String): Scheduler<T> {
+        val schedulers = ClassPathScanner.subTypesOf<Scheduler<*>>()
+            .filterNot { Modifier.isAbstract(it.modifiers) }
+        val candidates = schedulers.filter { name == it.name || name.equals(it.simpleName, ignoreCase = true) }
+        require(candidates.size == 1) {
+            "Unable to select a single scheduler named $name among ${schedulers.map { it.simpleName }}"
+        }
+        return candidates.first().getConstructor().newInstance() as Scheduler<T>
+    }
+
     /**
      * Launches a simulation using the provided [loader] and option [parameters].
      */
@@ -93,4 +250,32 @@ abstract class SimulationLauncher : AbstractLauncher() {
      * Allows subclasses to perform further checks before getting executed. Defaults to simply return [Validation.OK]
      */
     abstract fun additionalValidation(currentOptions: AlchemistExecutionOptions): Validation
+
+    private class ProfileSummaryPrinter<T, P : Position<out P>>(
+        private val profiler: EngineProfiler,
+        private val description: String
+    ) : OutputMonitor<T, P> {
+
+        override fun initialized(environment: Environment<T, P>) = Unit
+
+        override fun stepDone(environment: Environment<T, P>, reaction: Reaction<T>?, time: Time, step: Long) = Unit
+
+        override fun finished(environment: Environment<T, P>, time: Time, step: Long) = logger.info(
+            "Profile of simulation {}, {} steps up to time {}:\n{}",
+            description,
+            step,
+            time,
+            profiler.summary()
+        )
+    }
+
+    private companion object {
+        private val logger = LoggerFactory.getLogger(SimulationLauncher::class.java)
+        private const val GOLDEN_GAMMA = -0x61c8864680b583ebL
+        private const val FIRST_MULTIPLIER = -0x40a7b892e31b1a47L
+        private const val SECOND_MULTIPLIER = -0x6b2fb644ecceee15L
+        private const val FIRST_SHIFT = 30
+        private const val SECOND_SHIFT = 27
+        private const val THIRD_SHIFT = 31
+    }
 }
@@ -60,6 +60,32 @@ class TestCLI : StringSpec({
             status shouldBe 0
         }
     }
+    "execution of a batch forked from a common prefix should work" {
+        runWithOptions("-y", "simplesimulation.yml", "-b", "-var", "fiz,baz", "-t", "10", "--fork-at", "5") {
+            status shouldBe 0
+        }
+    }
+    "execution of a batch in step slices should work" {
+        runWithOptions("-y", "simplesimulation.yml", "-b", "-var", "fiz,baz", "-t", "10", "--step-slices", "100") {
+            status shouldBe 0
+        }
+    }
+    "execution with a custom scheduler should work" {
+        runWithOptions("-y", "simplesimulation.yml", "--scheduler", "CalendarQueue") {
+            status shouldBe 0
+        }
+    }
+    "execution with a custom engine should work" {
+        runWithOptions("-y", "simplesimulation.yml", "--engine", "ParallelEngine") {
+            status shouldBe 0
+        }
+    }
+    "profiling should print a summary" {
+        runWithOptions("-y", "simplesimulation.yml", "--profile") {
+            status shouldBe 0
+            output shouldContain "Profile of simulation"
+        }
+    }
     "execution with no option should print help" {
         runWithOptions {
             status shouldBe 1
@@ -0,0 +1,82 @@
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.collections.beEmpty
+import io.kotest.matchers.should
+import io.kotest.matchers.shouldBe
+import it.unibo.alchemist.boundary.interfaces.OutputMonitor
+import it.unibo.alchemist.core.implementations.Engine
+import it.unibo.alchemist.launch.HeadlessSimulationLauncher
+import it.unibo.alchemist.loader.LoadAlchemist
+import it.unibo.alchemist.model.interfaces.Environment
+import it.unibo.alchemist.model.interfaces.Reaction
+import it.unibo.alchemist.model.interfaces.Time
+import java.util.Collections
+import java.util.concurrent.ConcurrentLinkedQueue
+
+/*
+ * Copyright (C) 2010-2021, Danilo Pianini and contributors
+ * listed in the main project's alchemist/build.gradle.kts file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+
+private const val SIMULATIONS = 3
+private const val SLICES = 4
+private const val SLICE = 10
+
+class TestSlicedExecution : StringSpec({
+    "slices of different simulations should interleave in FIFO order, preparing each simulation lazily" {
+        val loader = LoadAlchemist.from(ClassLoader.getSystemResource("slices.yml"))
+        val trace: MutableList<String> = Collections.synchronizedList(mutableListOf())
+        val simulations = (0 until SIMULATIONS).map { id ->
+            {
+                trace.add("prepare $id")
+                Engine<Any, Nothing>(loader.getDefault<Any, Nothing>().environment, (SLICE * SLICES).toLong())
+                    .also { it.addOutputMonitor(StepRecorder(id, trace)) }
+            }
+        }
+        val errors = ConcurrentLinkedQueue<Throwable>()
+        HeadlessSimulationLauncher.runInSlices(simulations, 1, SLICE.toLong(), errors)
+        errors should beEmpty()
+        val slices = (0 until SLICES).flatMap { round ->
+            (0 until SIMULATIONS).flatMap { id ->
+                listOf("prepare $id").takeIf { round == 0 }.orEmpty() +
+                    List(SLICE) { "step of $id" } +
+                    listOf("finished $id").takeIf { round == SLICES - 1 }.orEmpty()
+            }
+        }
+        trace shouldBe slices
+    }
+    "a failure should terminate the other simulations, notifying their monitors" {
+        val loader = LoadAlchemist.from(ClassLoader.getSystemResource("slices.yml"))
+        val trace: MutableList<String> = Collections.synchronizedList(mutableListOf())
+        val simulations = (0 until SIMULATIONS).map { id ->
+            {
+                Engine<Any, Nothing>(loader.getDefault<Any, Nothing>().environment, (SLICE * SLICES).toLong())
+                    .also { it.addOutputMonitor(StepRecorder(id, trace, failAt = SLICE.toLong().takeIf { id == 0 })) }
+            }
+        }
+        val errors = ConcurrentLinkedQueue<Throwable>()
+        HeadlessSimulationLauncher.runInSlices(simulations, 1, SLICE.toLong(), errors)
+        errors.size shouldBe 1
+        (0 until SIMULATIONS).forEach { id ->
+            trace.count { it == "finished $id" } shouldBe 1
+        }
+    }
+})
+
+private class StepRecorder(
+    val id: Int,
+    val trace: MutableList<String>,
+    val failAt: Long? = null
+) : OutputMonitor<Any, Nothing> {
+    override fun initialized(environment: Environment<Any, Nothing>) = Unit
+    override fun stepDone(environment: Environment<Any, Nothing>, reaction: Reaction<Any>?, time: Time, step: Long) {
+        check(step != failAt) { "Simulation $id failed at step $step" }
+        trace.add("step of $id")
+    }
+    override fun finished(environment: Environment<Any, Nothing>, time: Time, step: Long) {
+        trace.add("finished $id")
+    }
+}